@@ -0,0 +1,71 @@
+package com.pullman.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class CsvImportConfig {
+
+    // Pool acotado para importaciones en segundo plano: si la cola se llena, se rechaza la petición
+    @Bean(name = "csvImportExecutor")
+    public ThreadPoolTaskExecutor csvImportExecutor(
+            @Value("${pullman.import.workers:2}") int workers,
+            @Value("${pullman.import.queue-capacity:10}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("csv-import-");
+        return executor;
+    }
+
+    // Pool compartido para parsear archivos grandes por tramos en paralelo (0 = un hilo por núcleo)
+    @Bean(name = "csvParsePool", destroyMethod = "shutdown")
+    public ForkJoinPool csvParsePool(@Value("${pullman.import.parse-parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    // Archivos de un zip que se importan a la vez; el trabajo del zip espera en su propio hilo de csvImportExecutor
+    @Bean(name = "csvBundleExecutor")
+    public ThreadPoolTaskExecutor csvBundleExecutor(@Value("${pullman.import.bundle.workers:3}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("csv-bundle-");
+        return executor;
+    }
+
+    // Decenas cuyas producciones se actualizan a la vez al terminar una importación (una transacción por decena)
+    @Bean(name = "productionGenerationExecutor")
+    public ThreadPoolTaskExecutor productionGenerationExecutor(@Value("${pullman.production.generation-workers:4}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("production-gen-");
+        return executor;
+    }
+
+    // Recálculos por cambio de porcentaje de una zona: un solo hilo, así se aplican en el orden en que se editaron
+    @Bean(name = "zoneRecalculationExecutor")
+    public ThreadPoolTaskExecutor zoneRecalculationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("zone-recalc-");
+        return executor;
+    }
+
+    // Archivos del directorio de spool que se importan a la vez
+    @Bean(name = "csvSpoolExecutor")
+    public ThreadPoolTaskExecutor csvSpoolExecutor(@Value("${pullman.import.spool.workers:1}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("csv-spool-");
+        return executor;
+    }
+}
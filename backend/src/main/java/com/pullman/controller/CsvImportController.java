@@ -1,14 +1,35 @@
 package com.pullman.controller;
 
+import com.pullman.domain.ImportRowResult;
+import com.pullman.service.CsvImportJob;
+import com.pullman.service.CsvImportJobService;
 import com.pullman.service.CsvImportService;
+import com.pullman.service.DuplicateAnalysisService;
+import com.pullman.service.ImportMode;
+import com.pullman.service.ImportResultService;
+import com.pullman.service.ImportStreams;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
@@ -21,21 +42,102 @@ public class CsvImportController {
     @Autowired
     private CsvImportService csvImportService;
 
-    // Importar viajes desde CSV
+    @Autowired
+    private CsvImportJobService csvImportJobService;
+
+    @Autowired
+    private ImportResultService importResultService;
+
+    @Autowired
+    private DuplicateAnalysisService duplicateAnalysisService;
+
+    // Importar viajes desde CSV en segundo plano: responde de inmediato con el id del trabajo
     @PostMapping("/import-trips")
-    public ResponseEntity<Map<String, Object>> importTripsFromCsv(@RequestParam("file") MultipartFile file) {
-        logger.info("Recibida petición de importación CSV. Archivo: {}, Tamaño: {} bytes", 
-                   file.getOriginalFilename(), file.getSize());
+    public ResponseEntity<Map<String, Object>> importTripsFromCsv(@RequestParam("file") MultipartFile file,
+                                                                  @RequestParam(value = "mode", defaultValue = "JPA") ImportMode mode) {
+        logger.info("Recibida petición de importación CSV. Archivo: {}, Tamaño: {} bytes, Modo: {}", 
+                   file.getOriginalFilename(), file.getSize(), mode);
         try {
-            Map<String, Object> result = csvImportService.importTripsAndUnconfiguredCities(file);
-            logger.info("Importación exitosa. {} viajes importados", ((java.util.List<?>)result.get("importedTrips")).size());
-            return ResponseEntity.ok(result);
+            CsvImportJob job = csvImportJobService.submit(file, mode);
+            logger.info("Importación encolada con id {}", job.getId());
+            return ResponseEntity.accepted().body(job.toMap());
+        } catch (TaskRejectedException e) {
+            logger.warn("Cola de importaciones llena, se rechaza el archivo {}", file.getOriginalFilename());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Hay demasiadas importaciones en curso, intenta nuevamente más tarde");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+        } catch (IOException e) {
+            logger.error("Error al recibir el archivo CSV", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Importar un zip con varios archivos de viajes (cierre de mes: decenas y correcciones) en segundo plano.
+    // Las producciones se generan una sola vez por decena al terminar todos los archivos
+    @PostMapping("/bundle")
+    public ResponseEntity<Map<String, Object>> importBundle(@RequestParam("file") MultipartFile file,
+                                                            @RequestParam(value = "mode", defaultValue = "JPA") ImportMode mode) {
+        logger.info("Recibido zip de importación. Archivo: {}, Tamaño: {} bytes, Modo: {}",
+                   file.getOriginalFilename(), file.getSize(), mode);
+        try {
+            CsvImportJob job = csvImportJobService.submitBundle(file, mode);
+            logger.info("Zip encolado con id {}", job.getId());
+            return ResponseEntity.accepted().body(job.toMap());
+        } catch (TaskRejectedException e) {
+            logger.warn("Cola de importaciones llena, se rechaza el zip {}", file.getOriginalFilename());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Hay demasiadas importaciones en curso, intenta nuevamente más tarde");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
         } catch (IOException e) {
-            logger.error("Error durante la importación CSV", e);
+            logger.error("Error al recibir el zip", e);
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // Importar viajes leyendo el cuerpo crudo de la petición (sin multipart), opcionalmente comprimido con gzip o zstd
+    // según Content-Encoding. El parseo y la escritura avanzan mientras llega el archivo, sin límite de tamaño.
+    // Responde al terminar con el estado del trabajo; su avance se puede consultar en /jobs/{id} mientras tanto.
+    @PostMapping("/stream")
+    public ResponseEntity<Map<String, Object>> importTripsFromStream(HttpServletRequest request,
+                                                                     @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String encoding,
+                                                                     @RequestParam(value = "fileName", defaultValue = "stream.csv") String fileName,
+                                                                     @RequestParam(value = "mode", defaultValue = "JPA") ImportMode mode) {
+        logger.info("Recibida importación en streaming. Archivo: {}, Tamaño: {} bytes, Codificación: {}, Modo: {}",
+                   fileName, request.getContentLengthLong(), encoding, mode);
+        InputStream body;
+        try {
+            body = ImportStreams.decode(request.getInputStream(), encoding);
+        } catch (IllegalArgumentException | IOException e) {
+            logger.warn("Cuerpo de importación no válido: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).body(errorResponse);
+        }
+        CsvImportJob job = csvImportJobService.runStreaming(fileName, request.getContentLengthLong(), body, mode);
+        logger.info("Importación en streaming {} terminada con estado {}", job.getId(), job.getStatus());
+        return job.getStatus() == CsvImportJob.Status.FAILED
+                ? ResponseEntity.badRequest().body(job.toMap())
+                : ResponseEntity.ok(job.toMap());
+    }
+
+    // Consultar el avance de una importación en segundo plano
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> getImportJob(@PathVariable String id) {
+        return csvImportJobService.findById(id)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Cancelar una importación en curso; se detiene al terminar el lote actual
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> cancelImportJob(@PathVariable String id) {
+        return csvImportJobService.cancel(id)
+                .map(job -> job.isFinished()
+                        ? ResponseEntity.status(HttpStatus.CONFLICT).body(job.toMap())
+                        : ResponseEntity.accepted().body(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // Obtener estadísticas de importación CSV
     @PostMapping("/stats")
     public ResponseEntity<Map<String, Object>> getImportStats(@RequestParam("file") MultipartFile file) {
@@ -58,13 +160,10 @@ public class CsvImportController {
         logger.info("Recibida petición de importación y generación de producciones. Archivo: {}, Tamaño: {} bytes", 
                    file.getOriginalFilename(), file.getSize());
         try {
-            java.util.List<com.pullman.domain.Trip> importedTrips = csvImportService.importTripsFromCsv(file);
-            logger.info("Importación y generación exitosa. {} viajes importados", importedTrips.size());
-            
-            Map<String, Object> result = new java.util.HashMap<>();
-            result.put("importedTrips", importedTrips);
+            Map<String, Object> result = csvImportService.importTripsFromCsv(file);
+            logger.info("Importación y generación exitosa. {} viajes importados (importId {})",
+                       result.get("totalImported"), result.get("importId"));
             result.put("message", "Importación y generación de producciones completada exitosamente");
-            result.put("totalImported", importedTrips.size());
             
             return ResponseEntity.ok(result);
         } catch (IOException e) {
@@ -72,4 +171,65 @@ public class CsvImportController {
             return ResponseEntity.badRequest().build();
         }
     }
-} 
\ No newline at end of file
+
+    // Analizar claves duplicadas (fecha, hora, origen, destino, bus) de un CSV antes de importarlo:
+    // repetidas dentro del archivo y ya existentes en la base. Los grupos vienen paginados
+    @PostMapping("/duplicates")
+    public ResponseEntity<Map<String, Object>> analyzeDuplicates(@RequestParam("file") MultipartFile file,
+                                                                 @RequestParam(value = "scope", defaultValue = "ALL") DuplicateAnalysisService.Scope scope,
+                                                                 @RequestParam(defaultValue = "0") int page,
+                                                                 @RequestParam(defaultValue = "50") int size) {
+        logger.info("Recibido análisis de duplicados. Archivo: {}, Tamaño: {} bytes", file.getOriginalFilename(), file.getSize());
+        try {
+            DuplicateAnalysisService.Analysis analysis = duplicateAnalysisService.analyze(file);
+            return ResponseEntity.ok(analysis.toMap(scope, page, size));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (IOException e) {
+            logger.error("Error al analizar duplicados", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Otras páginas de un análisis de duplicados ya hecho (se conserva una hora)
+    @GetMapping("/duplicates/{analysisId}")
+    public ResponseEntity<Map<String, Object>> getDuplicateAnalysis(@PathVariable String analysisId,
+                                                                    @RequestParam(value = "scope", defaultValue = "ALL") DuplicateAnalysisService.Scope scope,
+                                                                    @RequestParam(defaultValue = "0") int page,
+                                                                    @RequestParam(defaultValue = "50") int size) {
+        return duplicateAnalysisService.findById(analysisId)
+                .map(analysis -> ResponseEntity.ok(analysis.toMap(scope, page, size)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Resultado por línea de una importación, paginado y opcionalmente filtrado por resultado
+    @GetMapping("/results/{importId}")
+    public ResponseEntity<Map<String, Object>> getImportResults(@PathVariable String importId,
+                                                                @RequestParam(value = "outcome", required = false) ImportRowResult.Outcome outcome,
+                                                                @RequestParam(defaultValue = "0") int page,
+                                                                @RequestParam(defaultValue = "100") int size) {
+        Page<ImportRowResult> results = importResultService.findResults(importId, outcome, PageRequest.of(page, size));
+        Map<String, Object> response = new HashMap<>();
+        response.put("importId", importId);
+        response.put("counts", importResultService.countByOutcome(importId));
+        response.put("results", results);
+        return ResponseEntity.ok(response);
+    }
+
+    // Descarga del resultado por línea como CSV, leído en streaming desde la base
+    @GetMapping("/results/{importId}/csv")
+    public ResponseEntity<StreamingResponseBody> downloadImportResults(@PathVariable String importId,
+                                                                       @RequestParam(value = "outcome", required = false) ImportRowResult.Outcome outcome) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            importResultService.writeCsv(importId, outcome, writer);
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"import-" + importId + ".csv\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+}
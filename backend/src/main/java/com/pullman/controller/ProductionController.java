@@ -1,19 +1,16 @@
 package com.pullman.controller;
 
 import com.pullman.domain.Production;
-import com.pullman.domain.Trip;
-import com.pullman.domain.Zone;
-import com.pullman.domain.Route;
 import com.pullman.domain.Entrepreneur;
 import com.pullman.domain.User;
 import com.pullman.service.ProductionService;
+import com.pullman.service.ProductionAggregateService;
 import com.pullman.service.LiquidationService;
 import com.pullman.service.UserService;
-import com.pullman.repository.TripRepository;
-import com.pullman.repository.ZoneRepository;
-import com.pullman.repository.RouteRepository;
+import com.pullman.service.ZoneSimulationService;
 import com.pullman.repository.EntrepreneurRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,8 +19,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.stream.Collectors;
-import java.time.format.DateTimeFormatter;
-import java.text.Normalizer;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -37,15 +32,6 @@ public class ProductionController {
     @Autowired
     private ProductionService productionService;
     
-    @Autowired
-    private TripRepository tripRepository;
-    
-    @Autowired
-    private ZoneRepository zoneRepository;
-    
-    @Autowired
-    private RouteRepository routeRepository;
-    
     @Autowired
     private EntrepreneurRepository entrepreneurRepository;
 
@@ -58,11 +44,27 @@ public class ProductionController {
     @Autowired
     private NotificacionService notificacionService;
 
+    @Autowired
+    private ZoneSimulationService zoneSimulationService;
+
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+
     @GetMapping
     public List<Production> getAll() {
         return productionService.findAll();
     }
 
+    // Estado de los totales por empresa y decena: 503 mientras se preparan o si fallaron al arrancar
+    @GetMapping("/aggregates/status")
+    public ResponseEntity<Map<String, Object>> getAggregatesStatus() {
+        Map<String, Object> status = productionAggregateService.getStartStatus();
+        if (!productionAggregateService.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(status);
+        }
+        return ResponseEntity.ok(status);
+    }
+
     @GetMapping("/paged")
     public Page<Production> getAllPaged(@PageableDefault(size = 20) Pageable pageable) {
         return productionService.findAll(pageable);
@@ -91,75 +93,19 @@ public class ProductionController {
     @PostMapping("/generate")
     public ResponseEntity<Map<String, Object>> generateProductions(@RequestParam String decena) {
         try {
-            // Calcular rango de fechas de la decena
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            int decenaNum = Integer.parseInt(decena.substring(0, 1));
-            int mes = Integer.parseInt(decena.substring(1, 3));
-            int anio = Integer.parseInt(decena.substring(3));
-            int diaInicio = 1;
-            int diaFin = 10;
-            if (decenaNum == 2) {
-                diaInicio = 11;
-                diaFin = 20;
-            } else if (decenaNum == 3) {
-                diaInicio = 21;
-                // último día del mes
-                diaFin = java.time.YearMonth.of(anio, mes).lengthOfMonth();
-            }
-            LocalDate desde = LocalDate.of(anio, mes, diaInicio);
-            LocalDate hasta = LocalDate.of(anio, mes, diaFin);
-
-            // Obtener viajes optimizados por rango de fechas
-            List<Trip> tripsInDecena = tripRepository.findByTravelDateBetween(desde, hasta);
+            // Ganancia por empresa sumada sobre el snapshot columnar de la decena, sin cargar viajes
+            Map<String, Double> gananciaByEntrepreneur = productionService.gananciaByNormalizedCompany(decena);
 
-            // Obtener todas las zonas y rutas
-            List<Zone> zones = zoneRepository.findAll();
-            List<Route> routes = routeRepository.findAll();
             // Obtener todos los empresarios
             List<Entrepreneur> entrepreneurs = entrepreneurRepository.findAll();
             // Crear mapa de empresarios por nombre
             Map<String, Entrepreneur> entrepreneurMap = entrepreneurs.stream()
                 .collect(Collectors.toMap(Entrepreneur::getNombre, e -> e));
-            // Agrupar viajes por empresario usando normalización
-            Map<String, List<Trip>> tripsByEntrepreneur = tripsInDecena.stream()
-                .filter(trip -> trip.getCompanyName() != null && !trip.getCompanyName().isEmpty())
-                .collect(Collectors.groupingBy(trip -> normalize(trip.getCompanyName())));
-            // Mapa para mostrar el nombre original de la empresa
-            Map<String, String> originalNames = new HashMap<>();
-            tripsInDecena.stream()
-                .filter(trip -> trip.getCompanyName() != null && !trip.getCompanyName().isEmpty())
-                .forEach(trip -> {
-                    String norm = normalize(trip.getCompanyName());
-                    if (!originalNames.containsKey(norm)) {
-                        originalNames.put(norm, trip.getCompanyName());
-                    }
-                });
             int generatedCount = 0;
-            // Para cada empresario, calcular y guardar producción
-            for (Map.Entry<String, List<Trip>> entry : tripsByEntrepreneur.entrySet()) {
-                String entrepreneurNameNorm = entry.getKey();
-                String entrepreneurName = originalNames.getOrDefault(entrepreneurNameNorm, entrepreneurNameNorm);
-                List<Trip> trips = entry.getValue();
-                double totalIngresos = 0;
-                double totalGanancia = 0;
-                for (Trip trip : trips) {
-                    double branchRevenue = trip.getBranchRevenue() != null ? trip.getBranchRevenue().doubleValue() : 0;
-                    double roadRevenue = trip.getRoadRevenue() != null ? trip.getRoadRevenue().doubleValue() : 0;
-                    double manualIncome = 0;
-                    if (trip.getManualIncome() != null && !trip.getManualIncome().isEmpty()) {
-                        try {
-                            manualIncome = Double.parseDouble(trip.getManualIncome().replaceAll("[^\\d.-]", ""));
-                        } catch (NumberFormatException e) {
-                            manualIncome = 0;
-                        }
-                    }
-                    double tripTotal = branchRevenue + roadRevenue + manualIncome;
-                    totalIngresos += tripTotal;
-                    Zone zone = findZoneForTrip(trip, routes);
-                    if (zone != null) {
-                        totalGanancia += tripTotal * (zone.getPorcentaje() / 100.0);
-                    }
-                }
+            // Para cada empresario, guardar su producción
+            for (Map.Entry<String, Double> entry : gananciaByEntrepreneur.entrySet()) {
+                String entrepreneurName = entry.getKey();
+                double totalGanancia = entry.getValue();
                 Entrepreneur entrepreneur = entrepreneurMap.get(entrepreneurName);
                 if (entrepreneur == null) {
                     entrepreneur = new Entrepreneur();
@@ -202,6 +148,33 @@ public class ProductionController {
         }
     }
 
+    // Simula en memoria cuánto pagaría cada empresa de la decena con otros porcentajes de zona; no guarda nada.
+    // Body: { "decena": "1072025", "porcentajes": { "3": 12.5, "5": 8 } } (id de zona -> porcentaje)
+    @PostMapping("/simulate")
+    public ResponseEntity<Map<String, Object>> simulate(@RequestBody Map<String, Object> payload) {
+        try {
+            Map<Long, Double> porcentajes = new HashMap<>();
+            Object raw = payload.get("porcentajes");
+            if (raw instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) raw).entrySet()) {
+                    Object value = entry.getValue();
+                    Double porcentaje = null;
+                    if (value instanceof Number) {
+                        porcentaje = ((Number) value).doubleValue();
+                    } else if (value != null) {
+                        porcentaje = Double.valueOf(String.valueOf(value));
+                    }
+                    porcentajes.put(Long.valueOf(String.valueOf(entry.getKey())), porcentaje);
+                }
+            }
+            return ResponseEntity.ok(zoneSimulationService.simulate((String) payload.get("decena"), porcentajes));
+        } catch (IllegalArgumentException | ClassCastException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Simulación inválida: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
     @PostMapping("/pendientes/{id}/validate")
     public ResponseEntity<?> validarProduccion(
             @PathVariable Long id,
@@ -292,44 +265,6 @@ public class ProductionController {
         return saved;
     }
 
-    private Zone findZoneForTrip(Trip trip, List<Route> routes) {
-        if (trip.getOrigin() == null || trip.getDestination() == null) {
-            return null;
-        }
-        
-        String normalizedOrigin = normalizeString(trip.getOrigin());
-        String normalizedDestination = normalizeString(trip.getDestination());
-        
-        for (Route route : routes) {
-            String routeOrigin = normalizeString(route.getOrigen());
-            String routeDestination = normalizeString(route.getDestino());
-            
-            if ((routeOrigin.equals(normalizedOrigin) && routeDestination.equals(normalizedDestination)) ||
-                (routeOrigin.equals(normalizedDestination) && routeDestination.equals(normalizedOrigin))) {
-                return route.getZona();
-            }
-        }
-        
-        return null;
-    }
-    
-    private String normalizeString(String str) {
-        if (str == null) return "";
-        return Normalizer.normalize(str.toLowerCase(), Normalizer.Form.NFD)
-            .replaceAll("[\\p{InCombiningDiacriticalMarks}]", "")
-            .replaceAll("\\s+", " ")
-            .trim();
-    }
-
-    private static String normalize(String str) {
-        if (str == null) return "";
-        String n = java.text.Normalizer.normalize(str.toLowerCase(), java.text.Normalizer.Form.NFD)
-            .replaceAll("[\\p{InCombiningDiacriticalMarks}]+", "")
-            .replaceAll("\\s+", " ")
-            .trim();
-        return n;
-    }
-
     @PutMapping("/{id}")
     public ResponseEntity<Production> update(@PathVariable Long id, @RequestBody Production production) {
         return productionService.findById(id)
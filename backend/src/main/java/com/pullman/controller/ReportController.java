@@ -0,0 +1,40 @@
+package com.pullman.controller;
+
+import com.pullman.service.DecenaSnapshotCache;
+import com.pullman.service.ReportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    // Reporte de una decena por empresario y zona: recorridos, ingresos y monto con los porcentajes actuales
+    @GetMapping
+    public ResponseEntity<?> getReports(@RequestParam(required = false) String decena,
+                                        @RequestParam(required = false) String zona,
+                                        @RequestParam(required = false) String empresario) {
+        try {
+            return ResponseEntity.ok(reportService.report(decena, zona, empresario));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Error al obtener reportes: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    // Decenas en memoria y su tamaño estimado
+    @GetMapping("/snapshots")
+    public Map<String, Object> getSnapshots() {
+        return decenaSnapshotCache.stats();
+    }
+}
@@ -3,10 +3,12 @@ package com.pullman.controller;
 import com.pullman.domain.Trip;
 import com.pullman.service.TripService;
 import com.pullman.service.CsvImportService;
+import com.pullman.service.ImportMode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -165,15 +167,33 @@ public class TripController {
     
     // Endpoint para importar viajes desde CSV
     @PostMapping("/import-csv")
-    public ResponseEntity<Map<String, Object>> importTripsFromCsv(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Map<String, Object>> importTripsFromCsv(@RequestParam("file") MultipartFile file,
+                                                                  @RequestParam(value = "mode", defaultValue = "JPA") ImportMode mode) {
         try {
-            Map<String, Object> result = csvImportService.importTripsAndUnconfiguredCities(file);
+            Map<String, Object> result = csvImportService.importTripsAndUnconfiguredCities(file, mode);
             return ResponseEntity.ok(result);
         } catch (IOException e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    // Endpoint para importar un archivo ya verificado en /import-csv/stats, con el token que devolvió la verificación
+    @PostMapping("/import-csv/commit")
+    public ResponseEntity<Map<String, Object>> commitCsvImport(@RequestParam("token") String token,
+                                                               @RequestParam(value = "mode", defaultValue = "JPA") ImportMode mode) {
+        try {
+            return csvImportService.commitPreflight(token, mode)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> {
+                    Map<String, Object> errorResponse = new java.util.HashMap<>();
+                    errorResponse.put("error", "La verificación no existe o expiró; vuelve a subir el archivo");
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+                });
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     // Endpoint para limpiar la base de datos
     @DeleteMapping("/clear-database")
     public ResponseEntity<Map<String, Object>> clearDatabase() {
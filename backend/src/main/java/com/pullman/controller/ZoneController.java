@@ -1,6 +1,8 @@
 package com.pullman.controller;
 
 import com.pullman.domain.Zone;
+import com.pullman.service.ZoneRecalculationJob;
+import com.pullman.service.ZoneRecalculationService;
 import com.pullman.service.ZoneService;
 import com.pullman.repository.TripRepository;
 import com.pullman.repository.RouteRepository;
@@ -34,6 +36,9 @@ public class ZoneController {
     @Autowired
     private RouteRepository routeRepository;
 
+    @Autowired
+    private ZoneRecalculationService zoneRecalculationService;
+
     private String normalize(String input) {
         if (input == null) return "";
         String normalized = Normalizer.normalize(input.trim().toLowerCase(), Normalizer.Form.NFD)
@@ -119,12 +124,36 @@ public class ZoneController {
     public ResponseEntity<Zone> update(@PathVariable Long id, @RequestBody Zone zone) {
         return zoneService.findById(id)
                 .map(existing -> {
+                    double porcentajeAnterior = existing.getPorcentaje();
                     zone.setId(id);
-                    return ResponseEntity.ok(zoneService.save(zone));
+                    Zone saved = zoneService.save(zone);
+                    // Si cambió el porcentaje, las producciones afectadas se recalculan en segundo plano;
+                    // el id del recálculo va en un header para no cambiar el cuerpo de la respuesta
+                    if (saved.getPorcentaje() != porcentajeAnterior) {
+                        ZoneRecalculationJob job = zoneRecalculationService.submit(saved, porcentajeAnterior);
+                        return ResponseEntity.ok().header("X-Zone-Recalculation-Id", job.getId()).body(saved);
+                    }
+                    return ResponseEntity.ok(saved);
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Estado y reporte (total anterior y nuevo por producción) de un recálculo por cambio de porcentaje
+    @GetMapping("/recalculations/{recalculationId}")
+    public ResponseEntity<Map<String, Object>> getRecalculation(@PathVariable String recalculationId) {
+        return zoneRecalculationService.findById(recalculationId)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Último recálculo de la zona
+    @GetMapping("/{id}/recalculation")
+    public ResponseEntity<Map<String, Object>> getLatestRecalculation(@PathVariable Long id) {
+        return zoneRecalculationService.findLatestByZone(id)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
         if (zoneService.findById(id).isPresent()) {
@@ -0,0 +1,108 @@
+package com.pullman.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Resultado de cada línea de una importación de viajes; se consulta paginado o como CSV
+@Entity
+@Table(name = "import_row_results",
+       indexes = {
+           @Index(name = "ix_import_row_results_import_line", columnList = "import_id, line_number"),
+           @Index(name = "ix_import_row_results_created_at", columnList = "created_at")
+       })
+public class ImportRowResult {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "import_id", nullable = false, length = 36)
+    private String importId;
+
+    @Column(name = "line_number", nullable = false)
+    private Long lineNumber;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "outcome", nullable = false, length = 16)
+    private Outcome outcome;
+
+    @Column(name = "trip_id")
+    private Long tripId;
+
+    @Column(name = "message", length = 500)
+    private String message;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public enum Outcome {
+        INSERTED, UPDATED, UNCHANGED, SKIPPED, ERROR
+    }
+
+    public ImportRowResult() {
+    }
+
+    public ImportRowResult(String importId, long lineNumber, Outcome outcome, Long tripId, String message) {
+        this.importId = importId;
+        this.lineNumber = lineNumber;
+        this.outcome = outcome;
+        this.tripId = tripId;
+        this.message = message;
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public void setImportId(String importId) {
+        this.importId = importId;
+    }
+
+    public Long getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(Long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(Outcome outcome) {
+        this.outcome = outcome;
+    }
+
+    public Long getTripId() {
+        return tripId;
+    }
+
+    public void setTripId(Long tripId) {
+        this.tripId = tripId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pullman.domain;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Huella de cada archivo importado: un archivo idéntico (mismo SHA-256) se reconoce sin volver a leerlo
+@Entity
+@Table(name = "imported_files")
+public class ImportedFile {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sha256", nullable = false, unique = true, length = 64)
+    private String sha256;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "import_id", nullable = false, length = 36)
+    private String importId;
+
+    @Column(name = "imported_at", nullable = false)
+    private LocalDateTime importedAt;
+
+    public ImportedFile() {
+    }
+
+    public ImportedFile(String sha256, String fileName, Long fileSize, String importId) {
+        this.sha256 = sha256;
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.importId = importId;
+        this.importedAt = LocalDateTime.now();
+    }
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public void setImportId(String importId) {
+        this.importId = importId;
+    }
+
+    public LocalDateTime getImportedAt() {
+        return importedAt;
+    }
+
+    public void setImportedAt(LocalDateTime importedAt) {
+        this.importedAt = importedAt;
+    }
+}
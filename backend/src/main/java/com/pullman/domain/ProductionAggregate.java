@@ -0,0 +1,93 @@
+package com.pullman.domain;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Totales acumulados de los viajes de una empresa en una decena (viajes, ingresos y ganancia según la zona de cada tramo).
+// Se mantienen por diferencias al escribir viajes (ProductionAggregateService), sin volver a recorrer la decena
+@Entity
+@Table(name = "production_aggregates",
+       uniqueConstraints = @UniqueConstraint(name = "uk_production_aggregates_company_decena", columnNames = {"company_name", "decena"}),
+       indexes = @Index(name = "ix_production_aggregates_decena", columnList = "decena"))
+public class ProductionAggregate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "company_name", nullable = false)
+    private String companyName;
+
+    @Column(name = "decena", nullable = false, length = 7)
+    private String decena;
+
+    @Column(name = "trip_count", nullable = false)
+    private long tripCount;
+
+    // numeric sin escala: las sumas y restas sucesivas no acumulan redondeo
+    @Column(name = "revenue", nullable = false, columnDefinition = "numeric")
+    private BigDecimal revenue;
+
+    @Column(name = "ganancia", nullable = false, columnDefinition = "numeric")
+    private BigDecimal ganancia;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Getters y setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public String getDecena() {
+        return decena;
+    }
+
+    public void setDecena(String decena) {
+        this.decena = decena;
+    }
+
+    public long getTripCount() {
+        return tripCount;
+    }
+
+    public void setTripCount(long tripCount) {
+        this.tripCount = tripCount;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+
+    public BigDecimal getGanancia() {
+        return ganancia;
+    }
+
+    public void setGanancia(BigDecimal ganancia) {
+        this.ganancia = ganancia;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -1,10 +1,12 @@
 package com.pullman.domain;
 
+import com.pullman.util.NameNormalizer;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "routes")
+@Table(name = "routes",
+       indexes = @Index(name = "ix_routes_norm", columnList = "origen_norm, destino_norm"))
 public class Route {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -13,6 +15,13 @@ public class Route {
     private LocalDate fecha;
     private String origen;
     private String destino;
+
+    // Origen y destino normalizados (NameNormalizer), calculados al guardar
+    @Column(name = "origen_norm")
+    private String origenNorm;
+
+    @Column(name = "destino_norm")
+    private String destinoNorm;
     private String horario;
     private String tipologia;
     private Double kilometraje;
@@ -55,6 +64,12 @@ public class Route {
     public void setDestino(String destino) {
         this.destino = destino;
     }
+    public String getOrigenNorm() {
+        return origenNorm;
+    }
+    public String getDestinoNorm() {
+        return destinoNorm;
+    }
     public String getHorario() {
         return horario;
     }
@@ -97,4 +112,11 @@ public class Route {
     public void setCreadoPor(User creadoPor) {
         this.creadoPor = creadoPor;
     }
+
+    @PrePersist
+    @PreUpdate
+    void fillNormalizedKeys() {
+        origenNorm = NameNormalizer.normalize(origen);
+        destinoNorm = NameNormalizer.normalize(destino);
+    }
 } 
\ No newline at end of file
@@ -1,12 +1,19 @@
 package com.pullman.domain;
 
+import com.pullman.util.NameNormalizer;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
 @Entity
-@Table(name = "trips")
+@Table(name = "trips",
+       indexes = {
+           @Index(name = "ix_trips_route_norm", columnList = "origin_norm, destination_norm"),
+           @Index(name = "ix_trips_company_norm_date", columnList = "company_norm, travel_date"),
+           // Clave de un viaje; en bases con viajes repetidos se crea con docs/migrate_trips_unique_key.sql
+           @Index(name = "ux_trips_unique_key", columnList = "travel_date, departure_time, origin, destination, bus_number", unique = true)
+       })
 public class Trip {
     
     @Id
@@ -88,6 +95,21 @@ public class Trip {
     @Column(name = "manual_income")
     private String manualIncome;
     
+    // Hash del contenido importado (ver TripContentHash); permite omitir filas sin cambios al reimportar
+    @Column(name = "content_hash")
+    private Long contentHash;
+    
+    // Origen, destino y empresa normalizados (NameNormalizer) para cruzar con rutas y agrupar por empresa en SQL.
+    // Se completan al guardar; cambiar el valor original los vuelve a calcular
+    @Column(name = "origin_norm")
+    private String originNorm;
+    
+    @Column(name = "destination_norm")
+    private String destinationNorm;
+    
+    @Column(name = "company_norm")
+    private String companyNorm;
+    
     // Constructors
     public Trip() {}
     
@@ -122,6 +144,7 @@ public class Trip {
     
     public void setOrigin(String origin) {
         this.origin = origin;
+        this.originNorm = null;
     }
     
     public String getDestination() {
@@ -130,6 +153,7 @@ public class Trip {
     
     public void setDestination(String destination) {
         this.destination = destination;
+        this.destinationNorm = null;
     }
     
     public String getRouteName() {
@@ -250,6 +274,7 @@ public class Trip {
     
     public void setCompanyName(String companyName) {
         this.companyName = companyName;
+        this.companyNorm = null;
     }
     
     public String getDriverName() {
@@ -299,4 +324,46 @@ public class Trip {
     public void setManualIncome(String manualIncome) {
         this.manualIncome = manualIncome;
     }
+    
+    public Long getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(Long contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public String getOriginNorm() {
+        return originNorm;
+    }
+    
+    public String getDestinationNorm() {
+        return destinationNorm;
+    }
+    
+    public String getCompanyNorm() {
+        return companyNorm;
+    }
+    
+    // La importación los trae ya calculados (una vez por valor distinto); no hay setters sueltos
+    // para que un JSON recibido no pueda dejarlos desalineados con el valor original
+    public void setNormalizedKeys(String originNorm, String destinationNorm, String companyNorm) {
+        this.originNorm = originNorm;
+        this.destinationNorm = destinationNorm;
+        this.companyNorm = companyNorm;
+    }
+    
+    @PrePersist
+    @PreUpdate
+    void fillNormalizedKeys() {
+        if (originNorm == null) {
+            originNorm = NameNormalizer.normalize(origin);
+        }
+        if (destinationNorm == null) {
+            destinationNorm = NameNormalizer.normalize(destination);
+        }
+        if (companyNorm == null) {
+            companyNorm = NameNormalizer.normalize(companyName);
+        }
+    }
 } 
\ No newline at end of file
@@ -3,5 +3,9 @@ package com.pullman.repository;
 import com.pullman.domain.Entrepreneur;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface EntrepreneurRepository extends JpaRepository<Entrepreneur, Long> {
-} 
\ No newline at end of file
+    List<Entrepreneur> findByNombreIn(Collection<String> nombres);
+}
@@ -0,0 +1,39 @@
+package com.pullman.repository;
+
+import com.pullman.domain.ImportRowResult;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ImportRowResultRepository extends JpaRepository<ImportRowResult, Long> {
+
+    // Resultados de una importación en orden de línea
+    @Query(value = "SELECT r FROM ImportRowResult r WHERE r.importId = :importId ORDER BY r.lineNumber, r.id",
+           countQuery = "SELECT COUNT(r) FROM ImportRowResult r WHERE r.importId = :importId")
+    Page<ImportRowResult> findByImportId(@Param("importId") String importId, Pageable pageable);
+
+    // Resultados de una importación filtrados por resultado (por ejemplo solo errores)
+    @Query(value = "SELECT r FROM ImportRowResult r WHERE r.importId = :importId AND r.outcome = :outcome ORDER BY r.lineNumber, r.id",
+           countQuery = "SELECT COUNT(r) FROM ImportRowResult r WHERE r.importId = :importId AND r.outcome = :outcome")
+    Page<ImportRowResult> findByImportIdAndOutcome(@Param("importId") String importId,
+                                                   @Param("outcome") ImportRowResult.Outcome outcome,
+                                                   Pageable pageable);
+
+    // Conteo por resultado de una importación
+    @Query("SELECT r.outcome, COUNT(r) FROM ImportRowResult r WHERE r.importId = :importId GROUP BY r.outcome")
+    List<Object[]> countByOutcome(@Param("importId") String importId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ImportRowResult r WHERE r.createdAt < :limit")
+    int deleteCreatedBefore(@Param("limit") LocalDateTime limit);
+}
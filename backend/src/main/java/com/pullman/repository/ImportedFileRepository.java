@@ -0,0 +1,17 @@
+package com.pullman.repository;
+
+import com.pullman.domain.ImportedFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ImportedFileRepository extends JpaRepository<ImportedFile, Long> {
+
+    // Archivo ya importado con el mismo contenido
+    @Query("SELECT f FROM ImportedFile f WHERE f.sha256 = :sha256")
+    Optional<ImportedFile> findBySha256(@Param("sha256") String sha256);
+}
@@ -0,0 +1,22 @@
+package com.pullman.repository;
+
+import com.pullman.domain.ProductionAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductionAggregateRepository extends JpaRepository<ProductionAggregate, Long> {
+
+    // Totales de una decena para un grupo de empresas (las que cambiaron en una escritura)
+    @Query("SELECT a FROM ProductionAggregate a WHERE a.decena = :decena AND a.companyName IN :companyNames")
+    List<ProductionAggregate> findByDecenaAndCompanyNames(@Param("decena") String decena, @Param("companyNames") Collection<String> companyNames);
+
+    // Totales de todas las empresas de una decena
+    @Query("SELECT a FROM ProductionAggregate a WHERE a.decena = :decena ORDER BY a.companyName")
+    List<ProductionAggregate> findByDecena(@Param("decena") String decena);
+}
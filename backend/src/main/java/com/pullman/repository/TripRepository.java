@@ -52,6 +52,15 @@ public interface TripRepository extends JpaRepository<Trip, Long> {
         String busNumber
     );
     
+    // Claves únicas, id y hash de contenido de los viajes de un rango de fechas, para el índice de deduplicación de la importación
+    @Query("SELECT t.id, t.travelDate, t.departureTime, t.origin, t.destination, t.busNumber, t.contentHash FROM Trip t " +
+           "WHERE t.travelDate BETWEEN :startDate AND :endDate AND t.busNumber IS NOT NULL ORDER BY t.id")
+    List<Object[]> findUniqueKeysBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    // Claves únicas de viajes puntuales, para confirmar coincidencias del análisis de duplicados por lotes de ids
+    @Query("SELECT t.id, t.travelDate, t.departureTime, t.origin, t.destination, t.busNumber FROM Trip t WHERE t.id IN :ids")
+    List<Object[]> findUniqueKeysByIdIn(@Param("ids") List<Long> ids);
+    
     // Consulta personalizada para obtener estadísticas de ingresos
     @Query("SELECT SUM(t.branchRevenue + t.roadRevenue) FROM Trip t WHERE t.travelDate = :date")
     Double getTotalRevenueByDate(@Param("date") LocalDate date);
@@ -66,6 +75,40 @@ public interface TripRepository extends JpaRepository<Trip, Long> {
     @Query("SELECT t.companyName, SUM(t.branchRevenue + t.roadRevenue) FROM Trip t WHERE t.travelDate BETWEEN :startDate AND :endDate GROUP BY t.companyName")
     List<Object[]> getRevenueByCompanyBetweenDates(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
     
+    // Ingresos y ganancia por empresa de un rango de fechas, calculados en la base de datos.
+    // Primero se suman los viajes por empresa y tramo; cada tramo toma la zona de la ruta origen->destino
+    // o, si no existe, la de la ruta inversa (la de menor id si hay varias), comparando las columnas
+    // normalizadas igual que RouteZoneIndex. El ingreso manual se limpia
+    // igual que en FieldDecoders.decodeManualIncome: solo dígitos, punto y signo; cero si no queda un número.
+    @Query(value = "WITH tramos AS (" +
+           "  SELECT t.company_name, t.origin_norm, t.destination_norm," +
+           "         SUM(COALESCE(t.branch_revenue, 0) + COALESCE(t.road_revenue, 0) +" +
+           "             CASE WHEN regexp_replace(t.manual_income, '[^0-9.-]', '', 'g') ~ '^-{0,1}([0-9]+[.]{0,1}[0-9]*|[.][0-9]+)$'" +
+           "                  THEN CAST(regexp_replace(t.manual_income, '[^0-9.-]', '', 'g') AS numeric) ELSE 0 END) AS ingresos" +
+           "  FROM trips t" +
+           "  WHERE t.travel_date BETWEEN :startDate AND :endDate AND t.company_name IS NOT NULL AND t.company_name <> ''" +
+           "  GROUP BY t.company_name, t.origin_norm, t.destination_norm" +
+           ") " +
+           "SELECT tr.company_name," +
+           "       CAST(SUM(tr.ingresos) AS double precision)," +
+           "       CAST(COALESCE(SUM(CAST(tr.ingresos AS double precision) * (z.porcentaje / 100.0)), 0) AS double precision) " +
+           "FROM tramos tr " +
+           "LEFT JOIN LATERAL (" +
+           "  SELECT r.zona_id FROM routes r" +
+           "  WHERE (r.origen_norm = tr.origin_norm AND r.destino_norm = tr.destination_norm)" +
+           "     OR (r.origen_norm = tr.destination_norm AND r.destino_norm = tr.origin_norm)" +
+           "  ORDER BY CASE WHEN r.origen_norm = tr.origin_norm AND r.destino_norm = tr.destination_norm THEN 0 ELSE 1 END, r.id" +
+           "  LIMIT 1" +
+           ") ruta ON true " +
+           "LEFT JOIN zones z ON z.id = ruta.zona_id " +
+           "GROUP BY tr.company_name",
+           nativeQuery = true)
+    List<Object[]> sumRevenueAndProfitByCompanyBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    // Empresas con viajes en un rango de fechas
+    @Query("SELECT DISTINCT t.companyName FROM Trip t WHERE t.travelDate BETWEEN :startDate AND :endDate AND t.companyName IS NOT NULL AND t.companyName <> ''")
+    List<String> findDistinctCompanyNamesBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
     // Consulta optimizada para obtener viajes únicos por empresa y fecha
     @Query("SELECT DISTINCT t.companyName, t.travelDate FROM Trip t WHERE t.travelDate BETWEEN :startDate AND :endDate")
     List<Object[]> getUniqueTripsByCompanyAndDate(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
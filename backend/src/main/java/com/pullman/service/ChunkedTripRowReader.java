@@ -0,0 +1,425 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+// Parseo en paralelo de un CSV en disco.
+// 1) Se recorre el archivo por rangos de bytes en paralelo contando saltos de línea. Como no se sabe si un rango
+//    empieza dentro de un campo entre comillas, se sigue a la vez el estado del tokenizador (CsvTokenizer) para cada
+//    estado inicial posible: el primer salto de línea fuera de comillas y el estado al final del rango.
+// 2) Encadenando el estado final de cada rango se elige en cada uno el primer salto de línea fuera de comillas:
+//    ahí empieza un tramo, y el conteo de saltos previos da su número de línea inicial.
+// 3) Cada tramo se mapea en memoria y se convierte a viajes en el ForkJoinPool; los tramos se entregan en orden
+//    y solo hay una ventana acotada de tramos en vuelo.
+public class ChunkedTripRowReader implements TripRowReader {
+
+    private static final byte QUOTE = '"';
+    private static final byte DELIMITER = ',';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    // Estados del tokenizador entre bytes: al inicio de un campo, en medio de un campo sin comillas,
+    // justo después de la comilla de cierre y dentro de un campo entre comillas
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int AFTER_CLOSE = 2;
+    private static final int QUOTED = 3;
+    private static final int STATES = 4;
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final ForkJoinPool pool;
+    private final TripBindingPlan plan;
+    private final List<Chunk> chunks;
+    private final int window;
+    private final ArrayDeque<ForkJoinTask<ParsedChunk>> inFlight = new ArrayDeque<>();
+    private int nextChunk;
+    private ParsedChunk current;
+    private int index;
+
+    private ChunkedTripRowReader(FileChannel channel, Charset charset, ForkJoinPool pool,
+                                 TripBindingPlan plan, List<Chunk> chunks) {
+        this.channel = channel;
+        this.charset = charset;
+        this.pool = pool;
+        this.plan = plan;
+        this.chunks = chunks;
+        this.window = pool.getParallelism() + 1;
+    }
+
+    // Si el archivo no se puede partir por bytes (codificación no compatible con ASCII, saltos de línea solo con \r
+    // o un registro más largo que CsvTokenizer.MAX_RECORD_CHARS, que el tokenizador descarta y retoma en el siguiente
+    // salto de línea sin importar las comillas) se lee de forma secuencial
+    public static TripRowReader open(Path file, Charset charset, ForkJoinPool pool, int chunkBytes,
+                                     Function<CsvTokenizer, TripBindingPlan> planCompiler) throws IOException {
+        if (!Arrays.equals("\n\"".getBytes(charset), new byte[] { LF, QUOTE })) {
+            return new StreamTripRowReader(Files.newInputStream(file), charset, planCompiler);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            List<RangeScan> scans = scanRanges(channel, size, chunkBytes, pool);
+            for (RangeScan scan : scans) {
+                if (scan.bareCarriageReturn) {
+                    channel.close();
+                    return new StreamTripRowReader(Files.newInputStream(file), charset, planCompiler);
+                }
+            }
+            if (hasOversizedRecord(scans, size)) {
+                channel.close();
+                return new StreamTripRowReader(Files.newInputStream(file), charset, planCompiler);
+            }
+
+            TripBindingPlan plan;
+            long headerLines;
+            try (CsvTokenizer header = new CsvTokenizer(new InputStreamReader(Files.newInputStream(file), charset))) {
+                if (!header.next()) {
+                    return new ChunkedTripRowReader(channel, charset, pool, null, List.of());
+                }
+                plan = planCompiler.apply(header);
+                headerLines = header.linesRead();
+            }
+            long dataStart = offsetAfterLines(channel, scans, headerLines, size);
+            List<Chunk> chunks = splitChunks(scans, dataStart, headerLines + 1, size);
+            return new ChunkedTripRowReader(channel, charset, pool, plan, chunks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (current == null || index + 1 >= current.size) {
+            current = null;
+            fillWindow();
+            if (inFlight.isEmpty()) {
+                return false;
+            }
+            current = await(inFlight.poll());
+            index = -1;
+            fillWindow();
+        }
+        index++;
+        return true;
+    }
+
+    @Override
+    public Trip trip() {
+        if (current.errors != null && current.errors[index] != null) {
+            throw new IllegalArgumentException(current.errors[index]);
+        }
+        return current.trips[index];
+    }
+
+    @Override
+    public long lineNumber() {
+        return current.lines[index];
+    }
+
+    @Override
+    public List<String> headerWarnings() {
+        return plan != null ? plan.getWarnings() : List.of();
+    }
+
+    @Override
+    public ImportStringDictionary dictionary() {
+        return plan != null ? plan.getDictionary() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ForkJoinTask<ParsedChunk> task : inFlight) {
+            task.cancel(true);
+        }
+        inFlight.clear();
+        channel.close();
+    }
+
+    private void fillWindow() {
+        while (inFlight.size() < window && nextChunk < chunks.size()) {
+            Chunk chunk = chunks.get(nextChunk++);
+            inFlight.add(pool.submit(() -> parseChunk(chunk)));
+        }
+    }
+
+    private ParsedChunk await(ForkJoinTask<ParsedChunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parseo interrumpido");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Error parseando el archivo: " + cause.getMessage(), cause);
+        }
+    }
+
+    private ParsedChunk parseChunk(Chunk chunk) {
+        ParsedChunk parsed = new ParsedChunk();
+        try {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+            CsvTokenizer row = new CsvTokenizer(
+                new InputStreamReader(new ByteBufferInputStream(bytes), charset), CHAR_BUFFER_SIZE, chunk.firstLine);
+            while (row.next()) {
+                if (row.isOversized()) {
+                    parsed.addError(row.oversizedMessage(), row.lineNumber());
+                } else {
+                    parsed.add(plan.bind(row, row.lineNumber()), row.lineNumber());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return parsed;
+    }
+
+    // Paso 1: por cada rango, saltos de línea y, para cada estado inicial, el primer salto fuera de comillas y el estado final
+    private static List<RangeScan> scanRanges(FileChannel channel, long size, int rangeBytes, ForkJoinPool pool)
+            throws IOException {
+        List<ForkJoinTask<RangeScan>> tasks = new ArrayList<>();
+        for (long start = 0; start < size; start += rangeBytes) {
+            long rangeStart = start;
+            long rangeEnd = Math.min(size, start + rangeBytes);
+            tasks.add(pool.submit(() -> scanRange(channel, rangeStart, rangeEnd, size)));
+        }
+        List<RangeScan> scans = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<RangeScan> task : tasks) {
+                scans.add(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parseo interrumpido");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Error recorriendo el archivo: " + e.getCause().getMessage(), e.getCause());
+        }
+        return scans;
+    }
+
+    private static RangeScan scanRange(FileChannel channel, long start, long end, long size) {
+        RangeScan scan = new RangeScan(start, end);
+        try {
+            // Un byte extra para saber si un \r al final del rango va seguido de \n
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, end + 1) - start);
+            int length = (int) (end - start);
+            int[] state = { FIELD_START, UNQUOTED, AFTER_CLOSE, QUOTED };
+            for (int i = 0; i < length; i++) {
+                byte b = bytes.get(i);
+                if (b == LF) {
+                    for (int s = 0; s < STATES; s++) {
+                        if (state[s] == QUOTED) {
+                            continue;
+                        }
+                        if (scan.firstLineEnd[s] < 0) {
+                            scan.firstLineEnd[s] = start + i;
+                            scan.lineEndsBefore[s] = scan.lineEnds;
+                        } else {
+                            scan.longestRecord[s] = Math.max(scan.longestRecord[s], start + i - scan.lastLineEnd[s] - 1);
+                        }
+                        scan.lastLineEnd[s] = start + i;
+                    }
+                    scan.lineEnds++;
+                } else if (b == CR && (i + 1 >= bytes.limit() || bytes.get(i + 1) != LF)) {
+                    scan.bareCarriageReturn = true;
+                }
+                for (int s = 0; s < STATES; s++) {
+                    state[s] = nextState(state[s], b);
+                }
+            }
+            scan.endState = state;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return scan;
+    }
+
+    // Mismas reglas que CsvTokenizer.readRecord: una comilla abre un campo solo al inicio del campo (o escapada,
+    // justo después de la comilla de cierre); un separador o salto de línea fuera de comillas empieza otro campo
+    private static int nextState(int state, byte b) {
+        if (state == QUOTED) {
+            return b == QUOTE ? AFTER_CLOSE : QUOTED;
+        }
+        if (b == QUOTE) {
+            return state == UNQUOTED ? UNQUOTED : QUOTED;
+        }
+        if (b == DELIMITER || b == LF || b == CR) {
+            return FIELD_START;
+        }
+        return state == FIELD_START && (b == ' ' || b == '\t') ? FIELD_START : UNQUOTED;
+    }
+
+    // Algún registro (en bytes, que nunca son menos que sus caracteres) llega a CsvTokenizer.MAX_RECORD_CHARS
+    private static boolean hasOversizedRecord(List<RangeScan> scans, long size) {
+        long recordStart = 0;
+        int state = FIELD_START;
+        for (RangeScan scan : scans) {
+            long lineEnd = scan.firstLineEnd[state];
+            if (lineEnd >= 0) {
+                if (lineEnd - recordStart >= CsvTokenizer.MAX_RECORD_CHARS
+                        || scan.longestRecord[state] >= CsvTokenizer.MAX_RECORD_CHARS) {
+                    return true;
+                }
+                recordStart = scan.lastLineEnd[state] + 1;
+            }
+            state = scan.endState[state];
+        }
+        return size - recordStart >= CsvTokenizer.MAX_RECORD_CHARS;
+    }
+
+    // Posición justo después del salto de línea número 'lines'; el tamaño del archivo si no hay tantos
+    private static long offsetAfterLines(FileChannel channel, List<RangeScan> scans, long lines, long size)
+            throws IOException {
+        long remaining = lines;
+        for (RangeScan scan : scans) {
+            if (remaining > scan.lineEnds) {
+                remaining -= scan.lineEnds;
+                continue;
+            }
+            // El encabezado termina en este rango: se busca el salto exacto
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, scan.start, scan.end - scan.start);
+            for (int i = 0; i < bytes.limit(); i++) {
+                if (bytes.get(i) == LF && --remaining == 0) {
+                    return scan.start + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    // Paso 2: un tramo empieza después del primer salto de línea fuera de comillas de cada rango
+    private static List<Chunk> splitChunks(List<RangeScan> scans, long dataStart, long dataFirstLine, long size) {
+        List<Chunk> chunks = new ArrayList<>();
+        long chunkStart = dataStart;
+        long chunkFirstLine = dataFirstLine;
+        long lineEndsBefore = 0;
+        int state = FIELD_START;
+        for (RangeScan scan : scans) {
+            long lineEnd = scan.firstLineEnd[state];
+            if (scan.start > dataStart && lineEnd >= 0 && lineEnd + 1 < size) {
+                chunks.add(new Chunk(chunkStart, lineEnd + 1, chunkFirstLine));
+                chunkStart = lineEnd + 1;
+                chunkFirstLine = lineEndsBefore + scan.lineEndsBefore[state] + 2;
+            }
+            lineEndsBefore += scan.lineEnds;
+            state = scan.endState[state];
+        }
+        if (chunkStart < size) {
+            chunks.add(new Chunk(chunkStart, size, chunkFirstLine));
+        }
+        return chunks;
+    }
+
+    private static final class Chunk {
+        final long start;
+        final long end;
+        final long firstLine;
+
+        Chunk(long start, long end, long firstLine) {
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+    }
+
+    private static final class RangeScan {
+        final long start;
+        final long end;
+        long lineEnds;
+        // Por estado inicial del rango (FIELD_START, UNQUOTED, AFTER_CLOSE, QUOTED)
+        int[] endState;
+        final long[] firstLineEnd = { -1, -1, -1, -1 };
+        final long[] lineEndsBefore = new long[STATES];
+        final long[] lastLineEnd = { -1, -1, -1, -1 };
+        // Registro más largo entre dos saltos de línea del rango, sin contar el salto
+        final long[] longestRecord = new long[STATES];
+        boolean bareCarriageReturn;
+
+        RangeScan(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class ParsedChunk {
+        Trip[] trips = new Trip[1024];
+        long[] lines = new long[1024];
+        // Solo si alguna fila no se pudo leer
+        String[] errors;
+        int size;
+
+        void add(Trip trip, long line) {
+            if (size == trips.length) {
+                trips = Arrays.copyOf(trips, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+                if (errors != null) {
+                    errors = Arrays.copyOf(errors, size * 2);
+                }
+            }
+            trips[size] = trip;
+            lines[size] = line;
+            size++;
+        }
+
+        void addError(String message, long line) {
+            if (errors == null) {
+                errors = new String[trips.length];
+            }
+            add(null, line);
+            errors[size - 1] = message;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
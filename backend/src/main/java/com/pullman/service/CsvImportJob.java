@@ -0,0 +1,191 @@
+package com.pullman.service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Estado y contadores de una importación CSV ejecutada en segundo plano
+public class CsvImportJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String fileName;
+    private final long fileSize;
+    // Trabajo del zip al que pertenece este archivo: comparte la cancelación y suma sus contadores
+    private final CsvImportJob parent;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+    private volatile Map<String, Object> result;
+
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsSaved = new AtomicLong();
+    private final AtomicLong rowsSkipped = new AtomicLong();
+    private final AtomicLong rowsErrored = new AtomicLong();
+
+    public CsvImportJob(String fileName, long fileSize) {
+        this(fileName, fileSize, null);
+    }
+
+    public CsvImportJob(String fileName, long fileSize, CsvImportJob parent) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.parent = parent;
+    }
+
+    public void markRunning() {
+        startNanos = System.nanoTime();
+        status = Status.RUNNING;
+    }
+
+    public void markFinished(Map<String, Object> result) {
+        this.result = result;
+        finish(isCancelRequested() ? Status.CANCELLED : Status.COMPLETED);
+    }
+
+    public void markFailed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status finalStatus) {
+        endNanos = System.nanoTime();
+        finishedAt = Instant.now();
+        status = finalStatus;
+    }
+
+    // La cancelación se respeta entre lotes: lo ya guardado permanece en la base de datos
+    public void requestCancel() {
+        cancelRequested = true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested || (parent != null && parent.isCancelRequested());
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public void addParsed(long count) {
+        rowsParsed.addAndGet(count);
+        if (parent != null) {
+            parent.addParsed(count);
+        }
+    }
+
+    public void addSaved(long count) {
+        rowsSaved.addAndGet(count);
+        if (parent != null) {
+            parent.addSaved(count);
+        }
+    }
+
+    public void addSkipped(long count) {
+        rowsSkipped.addAndGet(count);
+        if (parent != null) {
+            parent.addSkipped(count);
+        }
+    }
+
+    public void addErrored(long count) {
+        rowsErrored.addAndGet(count);
+        if (parent != null) {
+            parent.addErrored(count);
+        }
+    }
+
+    public double getRowsPerSecond() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        double seconds = (end - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? rowsParsed.get() / seconds : 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Map<String, Object> getResult() {
+        return result;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsSaved() {
+        return rowsSaved.get();
+    }
+
+    public long getRowsSkipped() {
+        return rowsSkipped.get();
+    }
+
+    public long getRowsErrored() {
+        return rowsErrored.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", id);
+        map.put("fileName", fileName);
+        map.put("fileSize", fileSize);
+        map.put("status", status);
+        map.put("cancelRequested", cancelRequested);
+        map.put("createdAt", createdAt);
+        map.put("finishedAt", finishedAt);
+        map.put("rowsParsed", rowsParsed.get());
+        map.put("rowsSaved", rowsSaved.get());
+        map.put("rowsSkipped", rowsSkipped.get());
+        map.put("rowsErrored", rowsErrored.get());
+        map.put("rowsPerSecond", Math.round(getRowsPerSecond()));
+        if (errorMessage != null) {
+            map.put("error", errorMessage);
+        }
+        if (result != null) {
+            map.put("result", result);
+        }
+        return map;
+    }
+}
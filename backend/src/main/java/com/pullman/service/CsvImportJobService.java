@@ -0,0 +1,130 @@
+package com.pullman.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class CsvImportJobService {
+
+    // Tiempo que se conservan los trabajos terminados para poder consultar su resultado
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    @Autowired
+    private CsvImportService csvImportService;
+
+    @Autowired
+    @Qualifier("csvImportExecutor")
+    private TaskExecutor csvImportExecutor;
+
+    private final Map<String, CsvImportJob> jobs = new ConcurrentHashMap<>();
+
+    // Copia el archivo a disco (el multipart se elimina al terminar la petición) y encola la importación
+    public CsvImportJob submit(MultipartFile file, ImportMode mode) throws IOException {
+        return enqueue(file, ".csv", (job, path) -> csvImportService.importTripsAndUnconfiguredCities(path, job, mode));
+    }
+
+    // Zip con varios archivos: sus archivos se importan en paralelo y las producciones se generan una vez al final
+    public CsvImportJob submitBundle(MultipartFile file, ImportMode mode) throws IOException {
+        return enqueue(file, ".zip", (job, path) -> csvImportService.importBundle(path, job, mode));
+    }
+
+    // Importa el cuerpo de la petición en el mismo hilo que lo recibe: el parseo avanza a medida que llegan los bytes.
+    // El trabajo se registra igual que los encolados para poder consultar el avance o cancelarlo
+    public CsvImportJob runStreaming(String fileName, long size, InputStream body, ImportMode mode) {
+        evictFinishedJobs();
+        CsvImportJob job = new CsvImportJob(fileName, size);
+        jobs.put(job.getId(), job);
+        job.markRunning();
+        try {
+            job.markFinished(csvImportService.importTripsAndUnconfiguredCities(body, job, mode));
+        } catch (Exception e) {
+            System.err.println("Error en importación " + job.getId() + ": " + e.getMessage());
+            job.markFailed(e.getMessage());
+        }
+        return job;
+    }
+
+    // Importa un archivo local en el hilo que llama (directorio de spool); el archivo no se elimina
+    public CsvImportJob runFile(Path file, ImportMode mode) throws IOException {
+        evictFinishedJobs();
+        CsvImportJob job = new CsvImportJob(file.getFileName().toString(), Files.size(file));
+        jobs.put(job.getId(), job);
+        execute(job, file, (j, path) -> csvImportService.importTripsAndUnconfiguredCities(path, j, mode));
+        return job;
+    }
+
+    public Optional<CsvImportJob> findById(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Optional<CsvImportJob> cancel(String id) {
+        CsvImportJob job = jobs.get(id);
+        if (job != null && !job.isFinished()) {
+            job.requestCancel();
+        }
+        return Optional.ofNullable(job);
+    }
+
+    private CsvImportJob enqueue(MultipartFile file, String suffix, FileImport task) throws IOException {
+        evictFinishedJobs();
+        Path tempFile = Files.createTempFile("csv-import-", suffix);
+        file.transferTo(tempFile);
+
+        CsvImportJob job = new CsvImportJob(file.getOriginalFilename(), file.getSize());
+        jobs.put(job.getId(), job);
+        try {
+            csvImportExecutor.execute(() -> run(job, tempFile, task));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return job;
+    }
+
+    private void run(CsvImportJob job, Path tempFile, FileImport task) {
+        try {
+            execute(job, tempFile, task);
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                System.err.println("No se pudo eliminar el archivo temporal " + tempFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void execute(CsvImportJob job, Path file, FileImport task) {
+        job.markRunning();
+        try {
+            job.markFinished(task.run(job, file));
+        } catch (Exception e) {
+            System.err.println("Error en importación " + job.getId() + ": " + e.getMessage());
+            job.markFailed(e.getMessage());
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant limit = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(limit));
+    }
+
+    // Importación sobre un archivo en disco ejecutada por un trabajo
+    private interface FileImport {
+        Map<String, Object> run(CsvImportJob job, Path file) throws IOException;
+    }
+}
@@ -1,26 +1,47 @@
 package com.pullman.service;
 
 import com.pullman.domain.Trip;
+import com.pullman.repository.ImportedFileRepository;
 import com.pullman.repository.TripRepository;
 import com.pullman.repository.ZoneRepository;
-import com.pullman.repository.RouteRepository;
-import com.pullman.repository.EntrepreneurRepository;
 import com.pullman.service.ProductionService;
-import com.pullman.domain.Route;
 import com.pullman.domain.Zone;
 import com.pullman.domain.Entrepreneur;
+import com.pullman.domain.ImportRowResult;
+import com.pullman.domain.ImportedFile;
+import com.pullman.util.NameNormalizer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 @Service
 public class CsvImportService {
@@ -32,185 +53,755 @@ public class CsvImportService {
     private ZoneRepository zoneRepository;
 
     @Autowired
-    private RouteRepository routeRepository;
+    private ProductionService productionService;
     @Autowired
-    private EntrepreneurRepository entrepreneurRepository;
+    private TransactionTemplate transactionTemplate;
     @Autowired
-    private ProductionService productionService;
+    private ProductionAggregateService productionAggregateService;
+    @Autowired
+    private TripCopyWriter tripCopyWriter;
+    @Autowired
+    private ImportResultService importResultService;
+    @Autowired
+    private ImportedFileRepository importedFileRepository;
+    @Autowired
+    @Qualifier("csvParsePool")
+    private ForkJoinPool csvParsePool;
+
+    @Autowired
+    @Qualifier("csvBundleExecutor")
+    private TaskExecutor csvBundleExecutor;
+
+    @Autowired
+    @Qualifier("productionGenerationExecutor")
+    private TaskExecutor productionGenerationExecutor;
+
+    @Value("${pullman.import.parse-chunk-bytes:2097152}")
+    private int parseChunkBytes;
+    // Codificación de los CSV subidos; la misma para todos los lectores (por tramos, en streaming y el recorrido de decenas)
+    @Value("${pullman.import.charset:UTF-8}")
+    private Charset csvCharset;
+    @Value("${pullman.import.writer-threads:2}")
+    private int writerThreads;
+    @Value("${pullman.import.write-target-millis:250}")
+    private long writeTargetMillis;
+    @Value("${pullman.import.string-dictionary-size:8192}")
+    private int stringDictionarySize;
+    @Value("${pullman.import.preflight.dir:}")
+    private String preflightDirectory;
+    @Value("${pullman.import.preflight.ttl-minutes:60}")
+    private long preflightTtlMinutes;
 
-    private static final int BATCH_SIZE = 1000; // Procesar en lotes de 1000 registros
+    private static final int COPY_CANCEL_CHECK_INTERVAL = 1000; // Revisar cancelación cada 1000 filas en modo COPY
     private static final int PROGRESS_UPDATE_INTERVAL = 5000; // Actualizar progreso cada 5000 registros
+    private static final int ERROR_SAMPLE_SIZE = 20; // Filas omitidas o con error incluidas en el resumen
+    private static final String PREFLIGHT_SUFFIX = ".spill";
+    private static final String INVALID_ROW_MESSAGE = "Fila inválida: sin fecha de viaje válida o con muy pocos campos";
 
-    public List<Trip> importTripsFromCsv(MultipartFile file) throws IOException {
-        List<Trip> allTrips = new ArrayList<>();
-        List<Trip> batchTrips = new ArrayList<>();
-        int totalProcessed = 0;
-        int totalSaved = 0;
-        int totalSkipped = 0;
-        int totalErrors = 0;
-        Set<String> decenasImportadas = new HashSet<>();
-        
+    // Devuelve un resumen compacto; el detalle por línea queda en import_row_results bajo el importId
+    public Map<String, Object> importTripsFromCsv(MultipartFile file) throws IOException {
+        CsvImportJob job = new CsvImportJob(file.getOriginalFilename(), file.getSize());
+        job.markRunning();
+        Path tempFile = copyToTempFile(file);
+        try {
+            String sha256 = sha256(tempFile);
+            Optional<ImportedFile> previous = importedFileRepository.findBySha256(sha256);
+            if (previous.isPresent()) {
+                return unchangedFileSummary(previous.get(), job, ImportMode.JPA);
+            }
+            Map<String, Object> result;
+            try (TripRowReader rows = openRows(tempFile)) {
+                result = importTripsFromCsv(rows, job);
+            }
+            rememberFile(sha256, job);
+            return result;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Map<String, Object> importTripsFromCsv(TripRowReader rows, CsvImportJob job) throws IOException {
         System.out.println("=== INICIANDO IMPORTACIÓN DE CSV ===");
-        System.out.println("Archivo: " + file.getOriginalFilename());
-        System.out.println("Tamaño: " + file.getSize() + " bytes");
-        
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String line;
-            boolean isFirstLine = true;
-            Map<String, Integer> columnMapping = new HashMap<>();
-            int lineNumber = 0;
-            
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
-                
-                // Saltar líneas vacías
-                if (line.trim().isEmpty()) {
-                    System.out.println("Línea " + lineNumber + ": Línea vacía, saltando...");
+        System.out.println("Archivo: " + job.getFileName());
+        System.out.println("Tamaño: " + job.getFileSize() + " bytes");
+
+        ImportOutcome outcome = processCsv(rows, job, ImportMode.JPA);
+
+        // Actualizar producciones solo para las empresas y decenas que cambiaron
+        Map<String, Object> productions = null;
+        if (!job.isCancelRequested()) {
+            productions = actualizarProducciones(outcome.decenas, outcome.changedAggregates);
+        }
+
+        System.out.println("=== RESUMEN DE IMPORTACIÓN ===");
+        System.out.println("Total líneas procesadas: " + outcome.totalProcessed);
+        System.out.println("Total guardados: " + outcome.totalSaved);
+        System.out.println("Total omitidos: " + outcome.totalSkipped);
+        System.out.println("Total errores: " + outcome.totalErrors);
+        System.out.println("Total líneas leídas (incluyendo header): " + (outcome.totalProcessed + outcome.totalSkipped + outcome.totalErrors + 1));
+        System.out.println("Diferencia (procesados - guardados): " + (outcome.totalProcessed - outcome.totalSaved));
+        System.out.println("Decenas procesadas: " + outcome.decenas);
+
+        // Análisis detallado de la diferencia
+        if (outcome.totalProcessed != outcome.totalSaved) {
+            System.out.println("⚠️ ADVERTENCIA: Hay diferencia entre procesados y guardados!");
+            System.out.println("Posibles causas:");
+            System.out.println("- Viajes duplicados que se actualizaron en lugar de crear nuevos");
+            System.out.println("- Errores en el guardado por lotes");
+            System.out.println("- Problemas de validación en la base de datos");
+            System.out.println("- Importación cancelada antes de terminar");
+        }
+
+        Map<String, Object> result = summarize(outcome, job, ImportMode.JPA);
+        if (productions != null) {
+            result.put("productions", productions);
+        }
+        return result;
+    }
+
+    // Importa un zip con varios archivos de viajes (.csv o .xlsx) en el pool de csvBundleExecutor.
+    // Los archivos que tocan una misma decena se importan uno tras otro en el orden del zip (por ejemplo la decena
+    // y sus correcciones); el resto, en paralelo. Las producciones se generan al final, una vez por decena.
+    public Map<String, Object> importBundle(Path zip, CsvImportJob job, ImportMode mode) throws IOException {
+        System.out.println("=== INICIANDO IMPORTACIÓN DE ZIP: " + job.getFileName() + " ===");
+        Path dir = Files.createTempDirectory("csv-bundle-");
+        try {
+            List<String> ignored = new ArrayList<>();
+            List<BundleFile> files = extractBundle(zip, dir, ignored);
+            List<BundleFile> pending = new ArrayList<>();
+            for (BundleFile file : files) {
+                if (file.result == null) {
+                    pending.add(file);
+                }
+            }
+            // Con un solo archivo por importar no hay nada que ordenar
+            if (pending.size() > 1) {
+                for (BundleFile file : pending) {
+                    file.decenas = scanDecenas(file.path);
+                }
+            }
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                BundleFile file = pending.get(i);
+                List<CompletableFuture<Void>> previous = new ArrayList<>();
+                for (int j = 0; j < i; j++) {
+                    if (file.conflictsWith(pending.get(j))) {
+                        previous.add(futures.get(j));
+                    }
+                }
+                // Un archivo anterior que falló no impide importar los siguientes
+                futures.add(CompletableFuture.allOf(previous.toArray(new CompletableFuture[0]))
+                    .exceptionally(e -> null)
+                    .thenRunAsync(() -> importBundleFile(file, job, mode), csvBundleExecutor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+            Set<String> decenas = new TreeSet<>();
+            Set<ProductionAggregateService.Key> changedAggregates = new HashSet<>();
+            Map<String, Integer> totals = new LinkedHashMap<>();
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (BundleFile file : files) {
+                if (file.outcome != null) {
+                    decenas.addAll(file.outcome.decenas);
+                    changedAggregates.addAll(file.outcome.changedAggregates);
+                    totals.merge("totalImported", file.outcome.totalSaved, Integer::sum);
+                    totals.merge("inserted", file.outcome.totalInserted, Integer::sum);
+                    totals.merge("updated", file.outcome.totalUpdated, Integer::sum);
+                    totals.merge("unchanged", file.outcome.totalUnchanged, Integer::sum);
+                    totals.merge("skipped", file.outcome.totalSkipped, Integer::sum);
+                    totals.merge("errors", file.outcome.totalErrors, Integer::sum);
+                }
+                results.add(file.result);
+            }
+
+            // Una sola pasada de producciones para todo lo que cambiaron los archivos
+            Map<String, Object> productions = null;
+            if (!job.isCancelRequested()) {
+                productions = actualizarProducciones(decenas, changedAggregates);
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("importId", job.getId());
+            result.put("mode", mode);
+            for (String key : List.of("totalImported", "inserted", "updated", "unchanged", "skipped", "errors")) {
+                result.put(key, totals.getOrDefault(key, 0));
+            }
+            result.put("decenas", decenas);
+            result.put("files", results);
+            result.put("ignoredEntries", ignored);
+            if (productions != null) {
+                result.put("productions", productions);
+            }
+            System.out.println("=== ZIP IMPORTADO: " + files.size() + " archivos, decenas " + decenas + " ===");
+            return result;
+        } finally {
+            try (var paths = Files.list(dir)) {
+                for (Path path : paths.toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Copia a disco cada archivo del zip (con nombre propio, nunca la ruta de la entrada) y descarta los ya importados
+    private List<BundleFile> extractBundle(Path zip, Path dir, List<String> ignored) throws IOException {
+        List<BundleFile> files = new ArrayList<>();
+        Map<String, BundleFile> bySha256 = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                String baseName = name.substring(name.lastIndexOf('/') + 1);
+                if (entry.isDirectory() || name.startsWith("__MACOSX/") || baseName.startsWith(".")) {
                     continue;
                 }
-                
-                if (isFirstLine) {
-                    System.out.println("Línea " + lineNumber + ": Procesando encabezados...");
-                    columnMapping = createColumnMapping(line);
-                    System.out.println("Mapeo de columnas: " + columnMapping);
-                    isFirstLine = false;
+                String lower = baseName.toLowerCase();
+                if (!lower.endsWith(".csv") && !lower.endsWith(".xlsx")) {
+                    ignored.add(name);
                     continue;
                 }
-                
+                Path path = dir.resolve("entry-" + files.size());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    Files.copy(in, path);
+                }
+                BundleFile file = new BundleFile(name, path, Files.size(path), sha256(path));
+                BundleFile repeated = bySha256.putIfAbsent(file.sha256, file);
+                Optional<ImportedFile> previous = importedFileRepository.findBySha256(file.sha256);
+                if (repeated != null) {
+                    file.result = bundleFileResult(file, "DUPLICATE");
+                    file.result.put("duplicateOf", repeated.name);
+                } else if (previous.isPresent()) {
+                    file.result = bundleFileResult(file, "UNCHANGED");
+                    file.result.put("previousImportId", previous.get().getImportId());
+                }
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    // Recorrido rápido de la columna de fecha (sin armar viajes) para saber qué decenas toca un CSV.
+    // En una planilla no se hace: se considera que puede tocar cualquier decena
+    private Set<String> scanDecenas(Path file) throws IOException {
+        if (XlsxTripRowReader.isXlsx(file)) {
+            return null;
+        }
+        Set<String> decenas = new HashSet<>();
+        try (CsvTokenizer row = new CsvTokenizer(new InputStreamReader(Files.newInputStream(file), csvCharset))) {
+            TripBindingPlan plan = null;
+            while (row.next()) {
+                if (plan == null) {
+                    plan = TripBindingPlan.compile(row);
+                    continue;
+                }
+                LocalDate travelDate = plan.travelDate(row);
+                if (travelDate != null) {
+                    decenas.add(calcularDecena(travelDate));
+                }
+            }
+        }
+        return decenas;
+    }
+
+    // Cada archivo es una importación propia (con su importId para consultar sus resultados por línea)
+    // que suma su avance al trabajo del zip y se cancela junto con él
+    private void importBundleFile(BundleFile file, CsvImportJob bundleJob, ImportMode mode) {
+        CsvImportJob fileJob = new CsvImportJob(file.name, file.size, bundleJob);
+        if (bundleJob.isCancelRequested()) {
+            file.result = bundleFileResult(file, "CANCELLED");
+            return;
+        }
+        fileJob.markRunning();
+        try (TripRowReader rows = openRows(file.path)) {
+            System.out.println("Importando " + file.name + " del zip (importación " + fileJob.getId() + ")");
+            ImportOutcome outcome = processCsv(rows, fileJob, mode);
+            rememberFile(file.sha256, fileJob);
+            Map<String, Object> result = summarize(outcome, fileJob, mode);
+            fileJob.markFinished(result);
+            file.outcome = outcome;
+            file.result = bundleFileResult(file, fileJob.getStatus().name());
+            file.result.putAll(result);
+        } catch (Exception e) {
+            System.err.println("Error importando " + file.name + " del zip: " + e.getMessage());
+            fileJob.markFailed(e.getMessage());
+            file.result = bundleFileResult(file, "FAILED");
+            file.result.put("error", e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> bundleFileResult(BundleFile file, String status) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("fileName", file.name);
+        result.put("status", status);
+        return result;
+    }
+
+    // Archivo extraído de un zip; decenas null = desconocidas (se ordena respecto de todos los demás)
+    private static class BundleFile {
+        final String name;
+        final Path path;
+        final long size;
+        final String sha256;
+        Set<String> decenas;
+        volatile ImportOutcome outcome;
+        volatile Map<String, Object> result;
+
+        BundleFile(String name, Path path, long size, String sha256) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        boolean conflictsWith(BundleFile other) {
+            return decenas == null || other.decenas == null || !Collections.disjoint(decenas, other.decenas);
+        }
+    }
+
+    // Lleva las producciones no validadas de las decenas tocadas a su ganancia vigente, varias decenas a la vez en
+    // productionGenerationExecutor, una transacción por decena. Con los totales por empresa y decena al día solo se
+    // leen las empresas que cambiaron (production_aggregates); mientras se recalculan por primera vez (al arrancar)
+    // se suma toda la decena desde los viajes según pullman.production.generation-mode.
+    // Los empresarios se crean antes de repartir y se comparten. Devuelve los conteos por decena y los errores de cada una.
+    private Map<String, Object> actualizarProducciones(Set<String> decenas, Set<ProductionAggregateService.Key> changedAggregates) {
+        long started = System.currentTimeMillis();
+        boolean fromAggregates = productionAggregateService.isReady();
+        Object mode = fromAggregates ? "AGGREGATES" : productionService.getGenerationMode();
+
+        Map<String, Set<String>> companiesByDecena = new TreeMap<>();
+        if (fromAggregates) {
+            for (ProductionAggregateService.Key key : changedAggregates) {
+                companiesByDecena.computeIfAbsent(key.getDecena(), d -> new HashSet<>()).add(key.getCompanyName());
+            }
+        } else {
+            for (String decena : decenas) {
+                LocalDate[] range = rangoDecena(decena);
+                companiesByDecena.put(decena, new HashSet<>(tripRepository.findDistinctCompanyNamesBetween(range[0], range[1])));
+            }
+        }
+        System.out.println("Actualizando producciones de las decenas " + companiesByDecena.keySet() + " (" + mode + ")");
+        Set<String> companyNames = new HashSet<>();
+        companiesByDecena.values().forEach(companyNames::addAll);
+        // Confirmados antes de repartir: cada decena solo lee el mapa
+        Map<String, Entrepreneur> entrepreneurs = transactionTemplate.execute(status -> productionService.prepareEntrepreneurs(companyNames));
+
+        Map<String, CompletableFuture<Map<String, Integer>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : companiesByDecena.entrySet()) {
+            String decena = entry.getKey();
+            Set<String> companies = entry.getValue();
+            futures.put(decena, CompletableFuture.supplyAsync(() -> transactionTemplate.execute(status -> {
+                Map<String, Double> ganancia = fromAggregates
+                    ? productionService.gananciaFromAggregates(decena, companies)
+                    : productionService.gananciaForDecena(decena);
+                return productionService.upsertProductions(decena, ganancia, entrepreneurs, null);
+            }), productionGenerationExecutor));
+        }
+
+        Map<String, Map<String, Integer>> byDecena = new LinkedHashMap<>();
+        Map<String, String> errors = new LinkedHashMap<>();
+        int created = 0;
+        int updated = 0;
+        int validatedSkipped = 0;
+        for (Map.Entry<String, CompletableFuture<Map<String, Integer>>> entry : futures.entrySet()) {
+            try {
+                Map<String, Integer> counts = entry.getValue().join();
+                byDecena.put(entry.getKey(), counts);
+                created += counts.get("created");
+                updated += counts.get("updated");
+                validatedSkipped += counts.get("validatedSkipped");
+                System.out.println("Producciones de la decena " + entry.getKey() + ": " + counts);
+            } catch (CompletionException e) {
+                // Una decena que falla no deshace las demás: cada una tiene su propia transacción
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                errors.put(entry.getKey(), cause.getMessage());
+                System.err.println("Error actualizando producciones de la decena " + entry.getKey() + ": " + cause.getMessage());
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        result.put("changedAggregates", changedAggregates.size());
+        result.put("created", created);
+        result.put("updated", updated);
+        result.put("validatedSkipped", validatedSkipped);
+        result.put("byDecena", byDecena);
+        result.put("errors", errors);
+        result.put("millis", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    // Primer y último día de una decena "<1|2|3><MM><yyyy>"
+    static LocalDate[] rangoDecena(String decena) {
+        int decenaNum = Integer.parseInt(decena.substring(0, 1));
+        int mes = Integer.parseInt(decena.substring(1, 3));
+        int anio = Integer.parseInt(decena.substring(3));
+        int diaInicio = 1;
+        int diaFin = 10;
+        if (decenaNum == 2) {
+            diaInicio = 11;
+            diaFin = 20;
+        } else if (decenaNum == 3) {
+            diaInicio = 21;
+            diaFin = java.time.YearMonth.of(anio, mes).lengthOfMonth();
+        }
+        return new LocalDate[] {LocalDate.of(anio, mes, diaInicio), LocalDate.of(anio, mes, diaFin)};
+    }
+
+    // Resultado interno del recorrido de un archivo CSV
+    private static class ImportOutcome {
+        final Set<String> decenas = new HashSet<>();
+        final List<Map<String, Object>> errorSamples = new ArrayList<>();
+        // Ciudades por forma normalizada -> primera forma vista en el archivo
+        final Map<String, String> cities = new HashMap<>();
+        // Empresas y decenas cuyos totales cambiaron (los escritores de lotes la completan desde sus hilos)
+        final Set<ProductionAggregateService.Key> changedAggregates = ConcurrentHashMap.newKeySet();
+        ImportStringDictionary dictionary;
+        List<String> headerWarnings = List.of();
+        int totalProcessed;
+        int totalSaved;
+        int totalInserted;
+        int totalUpdated;
+        int totalUnchanged;
+        int totalSkipped;
+        int totalErrors;
+
+        // Muestra acotada de filas omitidas o con error para la respuesta
+        void sample(long lineNumber, ImportRowResult.Outcome outcome, String message) {
+            if (errorSamples.size() < ERROR_SAMPLE_SIZE) {
+                Map<String, Object> sample = new LinkedHashMap<>();
+                sample.put("line", lineNumber);
+                sample.put("outcome", outcome);
+                sample.put("message", message);
+                errorSamples.add(sample);
+            }
+        }
+    }
+
+    // El multipart se copia a disco para poder leerlo por tramos en paralelo
+    private Path copyToTempFile(MultipartFile file) throws IOException {
+        Path tempFile = Files.createTempFile("csv-import-", ".csv");
+        try {
+            file.transferTo(tempFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    // Los archivos en disco se parsean por tramos en el pool compartido y se consumen en orden;
+    // las planillas .xlsx se leen con el modelo de eventos de POI y pasan por el mismo plan de columnas
+    private TripRowReader openRows(Path file) throws IOException {
+        if (XlsxTripRowReader.isXlsx(file)) {
+            return XlsxTripRowReader.open(file, this::compileBindingPlan);
+        }
+        return ChunkedTripRowReader.open(file, csvCharset, csvParsePool, parseChunkBytes, this::compileBindingPlan);
+    }
+
+    // Recorre el CSV como un pipeline: el lector parsea (en paralelo si el archivo está en disco), este hilo
+    // decide insertar o actualizar y arma lotes, y los escritores del pipeline los guardan en sus propios hilos.
+    // La cancelación del trabajo se revisa después de entregar cada lote.
+    // En modo COPY las filas van en streaming al staging y se aplican al final con un solo upsert.
+    private ImportOutcome processCsv(TripRowReader rows, CsvImportJob job, ImportMode mode) throws IOException {
+        ImportOutcome outcome = new ImportOutcome();
+        importResultService.purgeExpired();
+        // Filas omitidas, con error o sin cambios; las insertadas y actualizadas las registra cada lote al guardarse
+        ImportResultService.Buffer rowResults = importResultService.buffer(job.getId());
+        // Las claves existentes y su hash de contenido se cargan por decena en memoria, en vez de dos consultas por fila.
+        // Todas las importaciones actualizan el viaje con la misma clave, igual que el upsert de COPY (índice único de trips)
+        TripDedupIndex dedupIndex = mode == ImportMode.JPA ? new TripDedupIndex(tripRepository) : null;
+        int copyRowsSinceCheck = 0;
+        // Lectores sin diccionario propio (archivo de verificación): las formas normalizadas se recuerdan aquí
+        ImportStringDictionary fallbackNames = new ImportStringDictionary(stringDictionarySize);
+
+        try (TripCopyWriter.Session copySession = mode == ImportMode.COPY ? tripCopyWriter.open() : null;
+             TripWritePipeline pipeline = mode == ImportMode.JPA
+                 ? new TripWritePipeline(writerThreads, writeTargetMillis, batch -> writeBatch(batch, job.getId(), outcome.changedAggregates), job) : null) {
+            TripResolver resolver = pipeline != null ? new TripResolver(pipeline, dedupIndex, outcome, rowResults) : null;
+            while (rows.next()) {
+                long lineNumber = rows.lineNumber();
+
                 try {
-                    Trip trip = parseCsvLine(line, columnMapping, lineNumber);
+                    Trip trip = rows.trip();
                     if (trip != null) {
-                        // Validación de unicidad mejorada
-                        Trip existing = findExistingTrip(trip);
-                        if (existing != null) {
-                            // Actualizar viaje existente
-                            updateExistingTrip(existing, trip);
-                            batchTrips.add(existing);
-                            if (lineNumber % 100 == 0) {
-                                System.out.println("Línea " + lineNumber + ": Viaje existente actualizado");
-                            }
+                        ImportStringDictionary names = rows.dictionary() != null ? rows.dictionary() : fallbackNames;
+                        trip.setContentHash(TripContentHash.of(trip));
+                        trip.setNormalizedKeys(names.normalized(trip.getOrigin()), names.normalized(trip.getDestination()),
+                            names.normalized(trip.getCompanyName()));
+                        if (copySession != null) {
+                            copySession.write(trip, lineNumber);
+                            copyRowsSinceCheck++;
                         } else {
-                            // Nuevo viaje
-                            batchTrips.add(trip);
-                            if (lineNumber % 100 == 0) {
-                                System.out.println("Línea " + lineNumber + ": Nuevo viaje agregado");
-                            }
+                            // Validación de unicidad: actualizar el viaje existente en lugar de duplicarlo
+                            resolver.add(trip, lineNumber);
                         }
-                        
+
                         // Calcular decena del viaje
                         if (trip.getTravelDate() != null) {
-                            String decena = calcularDecena(trip.getTravelDate());
-                            decenasImportadas.add(decena);
+                            outcome.decenas.add(calcularDecena(trip.getTravelDate()));
                         }
-                        
-                        totalProcessed++;
+                        // Recolectar ciudades
+                        addCity(outcome, names, trip.getOrigin());
+                        addCity(outcome, names, trip.getDestination());
+
+                        outcome.totalProcessed++;
+                        job.addParsed(1);
                     } else {
-                        totalSkipped++;
-                        if (lineNumber % 100 == 0) {
-                            System.out.println("Línea " + lineNumber + ": Línea omitida (datos inválidos)");
-                        }
+                        outcome.totalSkipped++;
+                        job.addSkipped(1);
+                        rowResults.add(lineNumber, ImportRowResult.Outcome.SKIPPED, null, INVALID_ROW_MESSAGE);
+                        outcome.sample(lineNumber, ImportRowResult.Outcome.SKIPPED, INVALID_ROW_MESSAGE);
                     }
                 } catch (Exception e) {
-                    totalErrors++;
+                    outcome.totalErrors++;
+                    job.addErrored(1);
                     System.err.println("Línea " + lineNumber + ": Error procesando línea - " + e.getMessage());
-                    System.err.println("Contenido de la línea: " + line);
+                    rowResults.add(lineNumber, ImportRowResult.Outcome.ERROR, null, e.getMessage());
+                    outcome.sample(lineNumber, ImportRowResult.Outcome.ERROR, e.getMessage());
+                }
+
+                // Entregar el lote cuando alcance el tamaño que sostienen los escritores
+                if (resolver != null && resolver.isBatchFull()) {
+                    resolver.handOff();
+                    if (job.isCancelRequested()) {
+                        System.out.println("Importación " + job.getId() + " cancelada en la línea " + lineNumber);
+                        break;
+                    }
                 }
-                
-                // Procesar lote cuando alcance el tamaño
-                if (batchTrips.size() >= BATCH_SIZE) {
-                    List<Trip> savedBatch = tripRepository.saveAll(batchTrips);
-                    allTrips.addAll(savedBatch);
-                    totalSaved += savedBatch.size();
-                    batchTrips.clear();
-                    System.out.println("Lote procesado: " + totalProcessed + " procesados, " + totalSaved + " guardados");
+                if (copyRowsSinceCheck >= COPY_CANCEL_CHECK_INTERVAL) {
+                    copyRowsSinceCheck = 0;
+                    if (job.isCancelRequested()) {
+                        System.out.println("Importación " + job.getId() + " cancelada en la línea " + lineNumber + ", se descarta el staging");
+                        break;
+                    }
                 }
             }
-            
-            // Procesar lote final
-            if (!batchTrips.isEmpty()) {
-                List<Trip> savedBatch = tripRepository.saveAll(batchTrips);
-                allTrips.addAll(savedBatch);
-                totalSaved += savedBatch.size();
-                System.out.println("Lote final procesado: " + savedBatch.size() + " registros");
-            }
-        }
-        
-        // Generar producciones solo para las decenas importadas
-        System.out.println("Generando producciones para decenas: " + decenasImportadas);
-        List<Route> routes = routeRepository.findAll();
-        List<Zone> zones = zoneRepository.findAll();
-        List<Entrepreneur> entrepreneurs = entrepreneurRepository.findAll();
-        
-        for (String decena : decenasImportadas) {
-            // Calcular rango de fechas de la decena para consulta optimizada
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            int decenaNum = Integer.parseInt(decena.substring(0, 1));
-            int mes = Integer.parseInt(decena.substring(1, 3));
-            int anio = Integer.parseInt(decena.substring(3));
-            int diaInicio = 1;
-            int diaFin = 10;
-            if (decenaNum == 2) {
-                diaInicio = 11;
-                diaFin = 20;
-            } else if (decenaNum == 3) {
-                diaInicio = 21;
-                diaFin = java.time.YearMonth.of(anio, mes).lengthOfMonth();
-            }
-            LocalDate desde = LocalDate.of(anio, mes, diaInicio);
-            LocalDate hasta = LocalDate.of(anio, mes, diaFin);
-            
-            // Obtener viajes optimizados por rango de fechas
-            List<Trip> tripsDecena = tripRepository.findByTravelDateBetween(desde, hasta);
-            int count = productionService.generateProductionsForDecena(decena, tripsDecena, routes, zones, entrepreneurs);
-            System.out.println("Producciones generadas para decena " + decena + ": " + count);
-        }
-        
-        System.out.println("=== RESUMEN DE IMPORTACIÓN ===");
-        System.out.println("Total líneas procesadas: " + totalProcessed);
-        System.out.println("Total guardados: " + totalSaved);
-        System.out.println("Total omitidos: " + totalSkipped);
-        System.out.println("Total errores: " + totalErrors);
-        System.out.println("Total líneas leídas (incluyendo header): " + (totalProcessed + totalSkipped + totalErrors + 1));
-        System.out.println("Diferencia (procesados - guardados): " + (totalProcessed - totalSaved));
-        System.out.println("Decenas procesadas: " + decenasImportadas);
-        
-        // Análisis detallado de la diferencia
-        if (totalProcessed != totalSaved) {
-            System.out.println("⚠️ ADVERTENCIA: Hay diferencia entre procesados y guardados!");
-            System.out.println("Posibles causas:");
-            System.out.println("- Viajes duplicados que se actualizaron en lugar de crear nuevos");
-            System.out.println("- Errores en el guardado por lotes");
-            System.out.println("- Problemas de validación en la base de datos");
+
+            // Procesar lote final y esperar a los escritores (lo que no empezó a guardarse se descarta si se pidió cancelar)
+            if (resolver != null) {
+                if (job.isCancelRequested()) {
+                    resolver.discardPending();
+                } else {
+                    resolver.finish();
+                    System.out.println("Lote final procesado: " + outcome.totalSaved + " registros guardados en total");
+                }
+            }
+            if (copySession != null && !job.isCancelRequested()) {
+                TripCopyWriter.CopyResult copyResult = copySession.commit(job.getId());
+                outcome.totalInserted += (int) copyResult.getInserted();
+                outcome.totalUpdated += (int) copyResult.getUpdated();
+                outcome.totalUnchanged += (int) copyResult.getUnchanged();
+                outcome.changedAggregates.addAll(copyResult.getChangedAggregates());
+                int saved = (int) (copyResult.getInserted() + copyResult.getUpdated());
+                outcome.totalSaved += saved;
+                job.addSaved(saved);
+                System.out.println("COPY aplicado: " + copyResult.getInserted() + " insertados, " + copyResult.getUpdated() + " actualizados, " + copyResult.getUnchanged() + " sin cambios");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error en la ingesta por COPY: " + e.getMessage(), e);
+        }
+        rowResults.flush();
+        outcome.headerWarnings = rows.headerWarnings();
+        outcome.dictionary = rows.dictionary();
+        if (outcome.dictionary != null) {
+            System.out.println("Diccionario de textos: " + outcome.dictionary.toMap());
         }
-        
-        return allTrips;
-    }
-
-    private Trip findExistingTrip(Trip trip) {
-        // Buscar por criterios más específicos para evitar duplicados
-        if (trip.getTravelDate() != null && trip.getDepartureTime() != null && 
-            trip.getOrigin() != null && trip.getDestination() != null && trip.getBusNumber() != null) {
-            
-            // Usar la consulta optimizada para verificar existencia
-            boolean exists = tripRepository.existsByUniqueCriteria(
-                trip.getTravelDate(),
-                trip.getDepartureTime(),
-                trip.getOrigin().trim(),
-                trip.getDestination().trim(),
-                trip.getBusNumber().trim()
-            );
-            
-            if (exists) {
-                return tripRepository.findByTravelDateAndDepartureTimeAndOriginAndDestinationAndBusNumber(
-                    trip.getTravelDate(),
-                    trip.getDepartureTime(),
-                    trip.getOrigin().trim(),
-                    trip.getDestination().trim(),
-                    trip.getBusNumber().trim()
-                );
-            }
-        }
-        return null;
+        return outcome;
+    }
+
+    // La forma normalizada se calcula una vez por valor distinto gracias al diccionario de la importación
+    private static void addCity(ImportOutcome outcome, ImportStringDictionary dictionary, String city) {
+        if (city == null || city.isEmpty()) {
+            return;
+        }
+        String key = dictionary != null ? dictionary.normalized(city) : NameNormalizer.normalize(city);
+        outcome.cities.putIfAbsent(key, city.trim());
+    }
+
+    // Etapa de resolución (insertar o actualizar) de una importación JPA; solo la usa el hilo que recorre el archivo.
+    // Una fila cuya clave está en un lote entregado y aún no guardado queda como actualización tardía y se aplica
+    // cuando ese lote termina, así la última ocurrencia sigue ganando aunque haya varios escritores.
+    private class TripResolver {
+        private final TripWritePipeline pipeline;
+        private final TripDedupIndex dedupIndex;
+        private final ImportOutcome outcome;
+        private final ImportResultService.Buffer rowResults;
+        private final Set<TripDedupIndex.Key> keysInFlight = new HashSet<>();
+        private final Map<TripDedupIndex.Key, Trip> lateUpdates = new HashMap<>();
+        private final Map<TripDedupIndex.Key, List<Long>> lateLines = new HashMap<>();
+        private TripWritePipeline.Batch batch = new TripWritePipeline.Batch();
+
+        TripResolver(TripWritePipeline pipeline, TripDedupIndex dedupIndex, ImportOutcome outcome,
+                     ImportResultService.Buffer rowResults) {
+            this.pipeline = pipeline;
+            this.dedupIndex = dedupIndex;
+            this.outcome = outcome;
+            this.rowResults = rowResults;
+        }
+
+        void add(Trip trip, long lineNumber) {
+            TripDedupIndex.Key key = TripDedupIndex.keyOf(trip);
+            if (key == null) {
+                insert(trip, lineNumber);
+                return;
+            }
+            Trip late = lateUpdates.get(key);
+            if (late != null) {
+                updateExistingTrip(late, trip);
+                lateLines.get(key).add(lineNumber);
+            } else if (keysInFlight.contains(key)) {
+                lateUpdates.put(key, trip);
+                lateLines.computeIfAbsent(key, k -> new ArrayList<>()).add(lineNumber);
+            } else {
+                addToBatch(trip, key, List.of(lineNumber));
+            }
+        }
+
+        boolean isBatchFull() {
+            return batch.size() >= pipeline.batchSize();
+        }
+
+        // Entrega el lote en armado (bloquea si la cola de escritura está llena)
+        void handOff() {
+            pipeline.drainCompleted(this::onCompleted);
+            if (batch.isEmpty()) {
+                return;
+            }
+            keysInFlight.addAll(batch.keys);
+            pipeline.submit(batch);
+            batch = new TripWritePipeline.Batch();
+        }
+
+        // Las actualizaciones tardías liberadas al terminar un lote forman otro, hasta que no quede nada
+        void finish() {
+            do {
+                handOff();
+                pipeline.awaitAll(this::onCompleted);
+            } while (!batch.isEmpty());
+        }
+
+        void discardPending() {
+            pipeline.discardQueued();
+            pipeline.awaitAll(this::onCompleted);
+        }
+
+        private void insert(Trip trip, long lineNumber) {
+            batch.inserts.add(trip);
+            batch.rows.add(new TripWritePipeline.Row(lineNumber, trip, ImportRowResult.Outcome.INSERTED));
+        }
+
+        // Filas iguales al contenido guardado: no entran al lote y su resultado se registra aparte
+        private void unchanged(Long tripId, List<Long> lineNumbers) {
+            for (Long lineNumber : lineNumbers) {
+                outcome.totalUnchanged++;
+                rowResults.add(lineNumber, ImportRowResult.Outcome.UNCHANGED, tripId, null);
+            }
+        }
+
+        // Decide en memoria si la fila es un viaje nuevo, actualiza uno existente o no cambia nada
+        private void addToBatch(Trip trip, TripDedupIndex.Key key, List<Long> lineNumbers) {
+            Long existingId = dedupIndex.findExistingId(key, trip.getTravelDate());
+            if (existingId != null && trip.getContentHash().equals(dedupIndex.findContentHash(key))) {
+                unchanged(existingId, lineNumbers);
+                return;
+            }
+            batch.keys.add(key);
+            Trip target;
+            ImportRowResult.Outcome result = ImportRowResult.Outcome.UPDATED;
+            if (existingId != null) {
+                // Los datos del archivo no se guardan como entidad; el id solo sirve para el resultado por línea
+                trip.setId(existingId);
+                Trip previous = batch.updates.get(existingId);
+                if (previous != null) {
+                    updateExistingTrip(previous, trip);
+                    target = previous;
+                } else {
+                    batch.updates.put(existingId, trip);
+                    target = trip;
+                }
+                dedupIndex.updateContentHash(key, target.getContentHash());
+            } else {
+                // Fila repetida dentro del mismo lote: la última ocurrencia gana, igual que al actualizar
+                Trip pending = batch.insertsByKey.get(key);
+                if (pending != null) {
+                    updateExistingTrip(pending, trip);
+                    target = pending;
+                } else {
+                    batch.insertsByKey.put(key, trip);
+                    batch.inserts.add(trip);
+                    target = trip;
+                    result = ImportRowResult.Outcome.INSERTED;
+                }
+            }
+            for (Long lineNumber : lineNumbers) {
+                batch.rows.add(new TripWritePipeline.Row(lineNumber, target, result));
+                result = ImportRowResult.Outcome.UPDATED;
+            }
+        }
+
+        private void onCompleted(TripWritePipeline.Batch done) {
+            keysInFlight.removeAll(done.keys);
+            if (done.failure != null) {
+                throw done.failure;
+            }
+            if (done.isDiscarded()) {
+                return;
+            }
+            if (dedupIndex != null) {
+                done.insertsByKey.forEach((key, trip) -> dedupIndex.register(key, trip.getId(), trip.getContentHash()));
+            }
+            // Por línea, como el resultado de cada línea y la importación COPY: una fila repetida dentro del lote
+            // cuenta como actualizada aunque se guarde un solo viaje
+            for (TripWritePipeline.Row row : done.rows) {
+                if (row.outcome == ImportRowResult.Outcome.INSERTED) {
+                    outcome.totalInserted++;
+                } else {
+                    outcome.totalUpdated++;
+                }
+            }
+            outcome.totalSaved += done.saved.size();
+            System.out.println("Lote procesado: " + outcome.totalProcessed + " procesados, " + outcome.totalSaved + " guardados");
+            for (TripDedupIndex.Key key : done.keys) {
+                Trip late = lateUpdates.remove(key);
+                if (late != null) {
+                    addToBatch(late, key, lateLines.remove(key));
+                }
+            }
+        }
+    }
+
+    // Guarda el lote en una sola transacción (en un hilo escritor): las actualizaciones se cargan con una consulta por lote
+    // y el resultado de cada línea y la diferencia en los totales por empresa y decena se registran en la misma transacción
+    private List<Trip> writeBatch(TripWritePipeline.Batch batch, String importId, Set<ProductionAggregateService.Key> changedAggregates) {
+        return transactionTemplate.execute(status -> {
+            List<Trip> toSave = new ArrayList<>(batch.inserts);
+            // Los viajes a actualizar quedan bloqueados antes de leer su aporte anterior
+            productionAggregateService.lockTripsById(batch.updates.keySet());
+            Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before =
+                productionAggregateService.contributionsOf(batch.updates.keySet());
+            if (!batch.updates.isEmpty()) {
+                for (Trip existing : tripRepository.findAllById(batch.updates.keySet())) {
+                    updateExistingTrip(existing, batch.updates.get(existing.getId()));
+                    toSave.add(existing);
+                }
+            }
+            List<Trip> saved = tripRepository.saveAll(toSave);
+            tripRepository.flush();
+            List<Long> savedIds = new ArrayList<>(saved.size());
+            for (Trip trip : saved) {
+                savedIds.add(trip.getId());
+            }
+            changedAggregates.addAll(productionAggregateService.applyDifference(before, productionAggregateService.contributionsOf(savedIds)));
+            List<ImportRowResult> results = new ArrayList<>(batch.rows.size());
+            for (TripWritePipeline.Row row : batch.rows) {
+                results.add(new ImportRowResult(importId, row.lineNumber, row.outcome, row.trip.getId(), null));
+            }
+            importResultService.record(results);
+            return saved;
+        });
     }
 
     private void updateExistingTrip(Trip existing, Trip newData) {
@@ -229,524 +820,294 @@ public class CsvImportService {
         existing.setTotalCompensated(newData.getTotalCompensated());
         existing.setCompanyRut(newData.getCompanyRut());
         existing.setCompanyName(newData.getCompanyName());
+        existing.setNormalizedKeys(existing.getOriginNorm(), existing.getDestinationNorm(), newData.getCompanyNorm());
         existing.setDriverName(newData.getDriverName());
         existing.setBranchSeats(newData.getBranchSeats());
         existing.setBranchRevenue(newData.getBranchRevenue());
         existing.setRoadSeats(newData.getRoadSeats());
         existing.setRoadRevenue(newData.getRoadRevenue());
         existing.setManualIncome(newData.getManualIncome());
+        existing.setContentHash(newData.getContentHash());
     }
 
     public Map<String, Object> importTripsAndUnconfiguredCities(MultipartFile file) throws IOException {
-        List<Trip> allTrips = new ArrayList<>();
-        List<Trip> batchTrips = new ArrayList<>();
-        Set<String> citiesInFile = new HashSet<>();
-        int totalProcessed = 0;
-        int totalSaved = 0;
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String line;
-            boolean isFirstLine = true;
-            Map<String, Integer> columnMapping = new HashMap<>();
-            int lineNumber = 0;
-            
-            while ((line = br.readLine()) != null) {
-                lineNumber++;
-                
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                
-                if (isFirstLine) {
-                    columnMapping = createColumnMapping(line);
-                    isFirstLine = false;
-                    continue;
-                }
-                
-                Trip trip = parseCsvLine(line, columnMapping, lineNumber);
-                if (trip != null) {
-                    batchTrips.add(trip);
-                    // Recolectar ciudades
-                    if (trip.getOrigin() != null && !trip.getOrigin().isEmpty()) {
-                        citiesInFile.add(trip.getOrigin().trim());
-                    }
-                    if (trip.getDestination() != null && !trip.getDestination().isEmpty()) {
-                        citiesInFile.add(trip.getDestination().trim());
-                    }
-                    totalProcessed++;
-                    if (batchTrips.size() >= BATCH_SIZE) {
-                        List<Trip> savedBatch = tripRepository.saveAll(batchTrips);
-                        allTrips.addAll(savedBatch);
-                        totalSaved += savedBatch.size();
-                        batchTrips.clear();
-                    }
-                }
-            }
-            if (!batchTrips.isEmpty()) {
-                List<Trip> savedBatch = tripRepository.saveAll(batchTrips);
-                allTrips.addAll(savedBatch);
-                totalSaved += savedBatch.size();
-            }
+        return importTripsAndUnconfiguredCities(file, ImportMode.JPA);
+    }
+
+    public Map<String, Object> importTripsAndUnconfiguredCities(MultipartFile file, ImportMode mode) throws IOException {
+        CsvImportJob job = new CsvImportJob(file.getOriginalFilename(), file.getSize());
+        job.markRunning();
+        Path tempFile = copyToTempFile(file);
+        try {
+            return importTripsAndUnconfiguredCities(tempFile, job, mode);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // Variante para trabajos en segundo plano
+    public Map<String, Object> importTripsAndUnconfiguredCities(Path file, CsvImportJob job, ImportMode mode) throws IOException {
+        String sha256 = sha256(file);
+        Optional<ImportedFile> previous = importedFileRepository.findBySha256(sha256);
+        if (previous.isPresent()) {
+            Map<String, Object> result = unchangedFileSummary(previous.get(), job, mode);
+            result.put("unconfiguredCities", List.of());
+            return result;
+        }
+        Map<String, Object> result;
+        try (TripRowReader rows = openRows(file)) {
+            result = importTripsAndUnconfiguredCities(rows, job, mode);
+        }
+        rememberFile(sha256, job);
+        return result;
+    }
+
+    // Variante para cargas en streaming: el CSV se parsea secuencialmente a medida que se lee el stream.
+    // La huella del archivo se conoce recién al final, así que un archivo repetido se procesa igual
+    // (sus filas quedan como sin cambios) y solo se informa en el resumen
+    public Map<String, Object> importTripsAndUnconfiguredCities(InputStream in, CsvImportJob job, ImportMode mode) throws IOException {
+        MessageDigest digest = newSha256();
+        Map<String, Object> result;
+        try (TripRowReader rows = new StreamTripRowReader(new DigestInputStream(in, digest), csvCharset, this::compileBindingPlan)) {
+            result = importTripsAndUnconfiguredCities(rows, job, mode);
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        Optional<ImportedFile> previous = importedFileRepository.findBySha256(sha256);
+        if (previous.isPresent()) {
+            result.put("unchangedFile", true);
+            result.put("previousImportId", previous.get().getImportId());
+        } else {
+            rememberFile(sha256, job);
+        }
+        return result;
+    }
+
+    // Común a /api/trips/import-csv, /import-csv/commit, /import-trips, /stream y el directorio de ingesta.
+    // Con los totales por empresa y decena completos, las producciones de lo que cambió se actualizan al terminar
+    // (es barato: solo se leen esas empresas); mientras se preparan, quedan para la generación manual
+    private Map<String, Object> importTripsAndUnconfiguredCities(TripRowReader rows, CsvImportJob job, ImportMode mode) throws IOException {
+        ImportOutcome outcome = processCsv(rows, job, mode);
+        Map<String, Object> productions = null;
+        if (!job.isCancelRequested() && !outcome.changedAggregates.isEmpty() && productionAggregateService.isReady()) {
+            productions = actualizarProducciones(outcome.decenas, outcome.changedAggregates);
         }
         // Obtener nombres de zonas existentes
-        List<String> zonas = zoneRepository.findAll().stream().map(z -> z.getNombre().trim()).toList();
-        // Ciudades no configuradas
+        Set<String> zonas = new HashSet<>();
+        for (Zone zone : zoneRepository.findAll()) {
+            zonas.add(NameNormalizer.normalize(zone.getNombre()));
+        }
+        // Ciudades no configuradas (sin distinguir tildes, mayúsculas ni espacios)
         List<String> unconfiguredCities = new ArrayList<>();
-        for (String city : citiesInFile) {
-            if (!zonas.contains(city)) {
-                unconfiguredCities.add(city);
+        for (Map.Entry<String, String> city : outcome.cities.entrySet()) {
+            if (!zonas.contains(city.getKey())) {
+                unconfiguredCities.add(city.getValue());
             }
         }
-        Map<String, Object> result = new HashMap<>();
-        result.put("importedTrips", allTrips);
+        Map<String, Object> result = summarize(outcome, job, mode);
         result.put("unconfiguredCities", unconfiguredCities);
+        if (productions != null) {
+            result.put("productions", productions);
+        }
         return result;
     }
 
-    // Método para obtener estadísticas de importación
+    // Resumen de un archivo idéntico a uno ya importado: no se lee ni se escribe nada
+    private Map<String, Object> unchangedFileSummary(ImportedFile previous, CsvImportJob job, ImportMode mode) {
+        System.out.println("Archivo " + job.getFileName() + " idéntico al importado el " + previous.getImportedAt() +
+            " (importación " + previous.getImportId() + "), se omite");
+        Map<String, Object> result = summarize(new ImportOutcome(), job, mode);
+        result.put("unchangedFile", true);
+        result.put("previousImportId", previous.getImportId());
+        result.put("previousImportedAt", previous.getImportedAt());
+        return result;
+    }
+
+    // Solo se recuerda un archivo importado completo (no cancelado)
+    private void rememberFile(String sha256, CsvImportJob job) {
+        if (job.isCancelRequested()) {
+            return;
+        }
+        try {
+            importedFileRepository.save(new ImportedFile(sha256, job.getFileName(), job.getFileSize(), job.getId()));
+        } catch (RuntimeException e) {
+            // Dos importaciones simultáneas del mismo archivo: basta con la huella de la primera
+            System.err.println("No se pudo registrar la huella del archivo " + job.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // SHA-256 del archivo completo, leído por bloques
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Resumen compacto de una importación: totales, decenas tocadas y una muestra de errores.
+    // El resultado de cada línea se consulta en /api/csv-import/results/{importId}
+    private Map<String, Object> summarize(ImportOutcome outcome, CsvImportJob job, ImportMode mode) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("importId", job.getId());
+        result.put("mode", mode);
+        result.put("totalImported", outcome.totalSaved);
+        result.put("inserted", outcome.totalInserted);
+        result.put("updated", outcome.totalUpdated);
+        result.put("unchanged", outcome.totalUnchanged);
+        result.put("changed", outcome.totalInserted + outcome.totalUpdated);
+        result.put("skipped", outcome.totalSkipped);
+        result.put("errors", outcome.totalErrors);
+        result.put("decenas", new TreeSet<>(outcome.decenas));
+        result.put("unchangedFile", false);
+        result.put("errorSamples", outcome.errorSamples);
+        result.put("headerWarnings", outcome.headerWarnings);
+        if (outcome.dictionary != null) {
+            result.put("stringDictionary", outcome.dictionary.toMap());
+        }
+        return result;
+    }
+
+    // Verificación previa: parsea el archivo una sola vez, deja las filas decodificadas en un archivo local
+    // (TripSpillFile) y devuelve las estadísticas junto con el token para importarlo con commitPreflight
     public Map<String, Object> getImportStatistics(MultipartFile file) throws IOException {
-        Map<String, Object> stats = new HashMap<>();
-        int totalLines = 0;
+        long totalLines = 0;
         int validLines = 0;
         int invalidLines = 0;
-        
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            String line;
-            boolean isFirstLine = true;
-            Map<String, Integer> columnMapping = new HashMap<>();
-            
-            while ((line = br.readLine()) != null) {
-                totalLines++;
-                
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
-                
-                if (isFirstLine) {
-                    columnMapping = createColumnMapping(line);
-                    isFirstLine = false;
-                    continue;
+        List<String> headerWarnings;
+
+        Path spillDir = preflightDir();
+        purgeExpiredPreflights(spillDir);
+        String token = UUID.randomUUID().toString();
+        Path spill = spillDir.resolve(token + PREFLIGHT_SUFFIX);
+        Path tempFile = copyToTempFile(file);
+        try (TripSpillFile.Writer writer = new TripSpillFile.Writer(spill, file.getOriginalFilename(), file.getSize(), sha256(tempFile));
+             TripRowReader rows = openRows(tempFile)) {
+            while (rows.next()) {
+                Trip trip;
+                try {
+                    trip = rows.trip();
+                } catch (IllegalArgumentException e) {
+                    // Registro descartado por largo: cuenta como inválido igual que una fila que no se pudo convertir
+                    trip = null;
                 }
-                
-                Trip trip = parseCsvLine(line, columnMapping, totalLines);
                 if (trip != null) {
                     validLines++;
                 } else {
                     invalidLines++;
                 }
+                writer.write(rows.lineNumber(), trip);
+                // Última línea con datos (incluye el encabezado)
+                totalLines = rows.lineNumber();
             }
+            headerWarnings = rows.headerWarnings();
+            writer.finish(headerWarnings);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spill);
+            throw e;
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
-        
+
+        Map<String, Object> stats = new HashMap<>();
         stats.put("totalLines", totalLines);
         stats.put("validLines", validLines);
         stats.put("invalidLines", invalidLines);
         stats.put("validPercentage", totalLines > 0 ? (double) validLines / totalLines * 100 : 0);
-        
+        stats.put("headerWarnings", headerWarnings);
+        stats.put("uploadToken", token);
+        stats.put("tokenExpiresAt", LocalDateTime.now().plusMinutes(preflightTtlMinutes));
         return stats;
     }
 
-    private Map<String, Integer> createColumnMapping(String headerLine) {
-        Map<String, Integer> mapping = new HashMap<>();
-        String[] headers = parseCsvFields(headerLine);
-        
-        System.out.println("Headers encontrados: " + Arrays.toString(headers));
-        
-        for (int i = 0; i < headers.length; i++) {
-            String header = headers[i].trim().toLowerCase();
-            mapping.put(header, i);
-            
-            // Mapeos alternativos para mayor flexibilidad
-            if (header.contains("fecha") || header.contains("date")) {
-                mapping.put("travel_date", i);
-            }
-            if (header.contains("hora") || header.contains("time") || header.contains("salida")) {
-                mapping.put("departure_time", i);
-            }
-            if (header.contains("origen")) {
-                mapping.put("origin", i);
-            }
-            if (header.contains("destino")) {
-                mapping.put("destination", i);
-            }
-            if (header.contains("ruta")) {
-                mapping.put("route_name", i);
-            }
-            if (header.contains("servicio") || header.contains("service")) {
-                mapping.put("service_code", i);
-            }
-            if (header.contains("tipo") || header.contains("type")) {
-                mapping.put("service_type", i);
-            }
-            if (header.contains("estado") || header.contains("status")) {
-                mapping.put("status", i);
-            }
-            if (header.contains("bus") || header.contains("número") || header.contains("numero")) {
-                mapping.put("bus_number", i);
-            }
-            if (header.contains("patente") || header.contains("license") || header.contains("placa")) {
-                mapping.put("license_plate", i);
-            }
-            if (header.contains("año") || header.contains("year")) {
-                mapping.put("vehicle_year", i);
-            }
-            if (header.contains("asientos") && header.contains("total")) {
-                mapping.put("total_seats", i);
-            }
-            if (header.contains("puntaje") && header.contains("inicial")) {
-                mapping.put("initial_score", i);
-            }
-            if (header.contains("puntaje") && header.contains("adicional")) {
-                mapping.put("additional_score", i);
-            }
-            if (header.contains("puntaje") && header.contains("total")) {
-                mapping.put("total_score", i);
-            }
-            if (header.contains("compensación") || header.contains("compensacion")) {
-                mapping.put("compensation", i);
-            }
-            if (header.contains("total") && header.contains("compensado")) {
-                mapping.put("total_compensated", i);
-            }
-            if (header.contains("rut")) {
-                mapping.put("company_rut", i);
-            }
-            if (header.contains("razón") || header.contains("razon") || header.contains("social")) {
-                mapping.put("company_name", i);
-            }
-            if (header.contains("conductor") || header.contains("driver")) {
-                mapping.put("driver_name", i);
-            }
-            if (header.contains("asientos") && header.contains("sucursal")) {
-                mapping.put("branch_seats", i);
-            }
-            if (header.contains("recaudación") && header.contains("sucursal") || 
-                header.contains("recaudacion") && header.contains("sucursal")) {
-                mapping.put("branch_revenue", i);
-            }
-            if (header.contains("asientos") && header.contains("camino")) {
-                mapping.put("road_seats", i);
-            }
-            if (header.contains("recaudación") && header.contains("camino") || 
-                header.contains("recaudacion") && header.contains("camino")) {
-                mapping.put("road_revenue", i);
-            }
-            if (header.contains("manual") || header.contains("ingresos")) {
-                mapping.put("manual_income", i);
-            }
+    // Importa las filas guardadas por la verificación previa, sin volver a subir ni parsear el archivo.
+    // El token se usa una sola vez; Optional vacío si no existe o ya expiró
+    public Optional<Map<String, Object>> commitPreflight(String token, ImportMode mode) throws IOException {
+        Path spillDir = preflightDir();
+        Path spill;
+        try {
+            spill = spillDir.resolve(UUID.fromString(token) + PREFLIGHT_SUFFIX);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
         }
-        
-        return mapping;
-    }
-
-    private Trip parseCsvLine(String line, Map<String, Integer> columnMapping, int lineNumber) {
+        // Mover antes de leer: dos confirmaciones del mismo token no importan dos veces
+        Path claimed = spill.resolveSibling(spill.getFileName() + ".commit");
         try {
-            String[] fields = parseCsvFields(line);
-            
-            // Validación más flexible de campos mínimos
-            if (fields.length < 3) {
-                System.err.println("Línea " + lineNumber + ": Muy pocos campos (" + fields.length + ") - " + line);
-                return null;
-            }
-            
-            // Debug: mostrar campos para líneas problemáticas
-            if (lineNumber % 1000 == 0) {
-                System.out.println("Línea " + lineNumber + ": Procesando - " + fields.length + " campos");
-            }
-            
-            Trip trip = new Trip();
-            
-            // Fecha de Viaje
-            Integer dateIndex = columnMapping.get("travel_date");
-            if (dateIndex != null && dateIndex < fields.length && !fields[dateIndex].trim().isEmpty()) {
-                try {
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-                    trip.setTravelDate(LocalDate.parse(fields[dateIndex].trim(), formatter));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing date: " + fields[dateIndex] + " - " + e.getMessage());
-                    // Intentar con formato alternativo
-                    try {
-                        DateTimeFormatter altFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-                        trip.setTravelDate(LocalDate.parse(fields[dateIndex].trim(), altFormatter));
-                    } catch (Exception e2) {
-                        System.err.println("Línea " + lineNumber + ": Error con formato alternativo también: " + fields[dateIndex]);
-                        return null; // Fecha es obligatoria
-                    }
-                }
-            } else {
-                System.err.println("Línea " + lineNumber + ": Fecha de viaje no encontrada o vacía");
-                return null;
-            }
-            
-            // Hora de salida
-            Integer timeIndex = columnMapping.get("departure_time");
-            if (timeIndex != null && timeIndex < fields.length && !fields[timeIndex].trim().isEmpty()) {
-                try {
-                    trip.setDepartureTime(parseTime(fields[timeIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing time: " + fields[timeIndex] + " - " + e.getMessage());
-                    // Intentar con hora por defecto
-                    trip.setDepartureTime(LocalTime.of(0, 0));
-                    System.out.println("Línea " + lineNumber + ": Usando hora por defecto (00:00)");
-                }
-            } else {
-                // Si no hay hora, usar hora por defecto
-                trip.setDepartureTime(LocalTime.of(0, 0));
-                System.out.println("Línea " + lineNumber + ": Hora no encontrada, usando hora por defecto (00:00)");
-            }
-            
-            // Origen
-            Integer originIndex = columnMapping.get("origin");
-            if (originIndex != null && originIndex < fields.length) {
-                trip.setOrigin(fields[originIndex].trim());
-            }
-            
-            // Destino
-            Integer destIndex = columnMapping.get("destination");
-            if (destIndex != null && destIndex < fields.length) {
-                trip.setDestination(fields[destIndex].trim());
-            }
-            
-            // Ruta
-            Integer routeIndex = columnMapping.get("route_name");
-            if (routeIndex != null && routeIndex < fields.length) {
-                trip.setRouteName(fields[routeIndex].trim());
-            }
-            
-            // Servicio
-            Integer serviceIndex = columnMapping.get("service_code");
-            if (serviceIndex != null && serviceIndex < fields.length) {
-                trip.setServiceCode(fields[serviceIndex].trim());
-            }
-            
-            // Tipo de Servicio
-            Integer typeIndex = columnMapping.get("service_type");
-            if (typeIndex != null && typeIndex < fields.length) {
-                trip.setServiceType(fields[typeIndex].trim());
-            }
-            
-            // Estado
-            Integer statusIndex = columnMapping.get("status");
-            if (statusIndex != null && statusIndex < fields.length) {
-                trip.setStatus(fields[statusIndex].trim());
-            }
-            
-            // Número de Bus
-            Integer busIndex = columnMapping.get("bus_number");
-            if (busIndex != null && busIndex < fields.length) {
-                trip.setBusNumber(fields[busIndex].trim());
-            }
-            
-            // Patente
-            Integer plateIndex = columnMapping.get("license_plate");
-            if (plateIndex != null && plateIndex < fields.length) {
-                trip.setLicensePlate(fields[plateIndex].trim());
-            }
-            
-            // Año del vehículo
-            Integer yearIndex = columnMapping.get("vehicle_year");
-            if (yearIndex != null && yearIndex < fields.length && !fields[yearIndex].trim().isEmpty()) {
-                try {
-                    trip.setVehicleYear(Integer.parseInt(fields[yearIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing vehicle year: " + fields[yearIndex]);
-                }
-            }
-            
-            // Total de asientos
-            Integer seatsIndex = columnMapping.get("total_seats");
-            if (seatsIndex != null && seatsIndex < fields.length && !fields[seatsIndex].trim().isEmpty()) {
-                try {
-                    trip.setTotalSeats(Integer.parseInt(fields[seatsIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing total seats: " + fields[seatsIndex]);
-                }
-            }
-            
-            // Puntaje inicial
-            Integer initialScoreIndex = columnMapping.get("initial_score");
-            if (initialScoreIndex != null && initialScoreIndex < fields.length && !fields[initialScoreIndex].trim().isEmpty()) {
-                try {
-                    trip.setInitialScore(parseBigDecimal(fields[initialScoreIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing initial score: " + fields[initialScoreIndex]);
-                }
-            }
-            
-            // Puntaje adicional
-            Integer additionalScoreIndex = columnMapping.get("additional_score");
-            if (additionalScoreIndex != null && additionalScoreIndex < fields.length && !fields[additionalScoreIndex].trim().isEmpty()) {
-                try {
-                    trip.setAdditionalScore(parseBigDecimal(fields[additionalScoreIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing additional score: " + fields[additionalScoreIndex]);
-                }
-            }
-            
-            // Puntaje total
-            Integer totalScoreIndex = columnMapping.get("total_score");
-            if (totalScoreIndex != null && totalScoreIndex < fields.length && !fields[totalScoreIndex].trim().isEmpty()) {
-                try {
-                    trip.setTotalScore(parseBigDecimal(fields[totalScoreIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing total score: " + fields[totalScoreIndex]);
-                }
-            }
-            
-            // Compensación
-            Integer compensationIndex = columnMapping.get("compensation");
-            if (compensationIndex != null && compensationIndex < fields.length && !fields[compensationIndex].trim().isEmpty()) {
-                try {
-                    trip.setCompensation(parseBigDecimal(fields[compensationIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing compensation: " + fields[compensationIndex]);
-                }
-            }
-            
-            // Total compensado
-            Integer totalCompensatedIndex = columnMapping.get("total_compensated");
-            if (totalCompensatedIndex != null && totalCompensatedIndex < fields.length && !fields[totalCompensatedIndex].trim().isEmpty()) {
-                try {
-                    trip.setTotalCompensated(parseBigDecimal(fields[totalCompensatedIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing total compensated: " + fields[totalCompensatedIndex]);
-                }
-            }
-            
-            // RUT
-            Integer rutIndex = columnMapping.get("company_rut");
-            if (rutIndex != null && rutIndex < fields.length) {
-                trip.setCompanyRut(fields[rutIndex].trim());
-            }
-            
-            // Razón social
-            Integer companyIndex = columnMapping.get("company_name");
-            if (companyIndex != null && companyIndex < fields.length) {
-                trip.setCompanyName(fields[companyIndex].trim());
-            }
-            
-            // Conductor
-            Integer driverIndex = columnMapping.get("driver_name");
-            if (driverIndex != null && driverIndex < fields.length) {
-                trip.setDriverName(fields[driverIndex].trim());
-            }
-            
-            // Asientos sucursal
-            Integer branchSeatsIndex = columnMapping.get("branch_seats");
-            if (branchSeatsIndex != null && branchSeatsIndex < fields.length && !fields[branchSeatsIndex].trim().isEmpty()) {
-                try {
-                    trip.setBranchSeats(Integer.parseInt(fields[branchSeatsIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing branch seats: " + fields[branchSeatsIndex]);
-                }
-            }
-            
-            // Recaudación sucursal
-            Integer branchRevenueIndex = columnMapping.get("branch_revenue");
-            if (branchRevenueIndex != null && branchRevenueIndex < fields.length && !fields[branchRevenueIndex].trim().isEmpty()) {
-                try {
-                    trip.setBranchRevenue(parseCurrency(fields[branchRevenueIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing branch revenue: " + fields[branchRevenueIndex]);
-                }
-            }
-            
-            // Asientos camino
-            Integer roadSeatsIndex = columnMapping.get("road_seats");
-            if (roadSeatsIndex != null && roadSeatsIndex < fields.length && !fields[roadSeatsIndex].trim().isEmpty()) {
-                try {
-                    trip.setRoadSeats(Integer.parseInt(fields[roadSeatsIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing road seats: " + fields[roadSeatsIndex]);
-                }
-            }
-            
-            // Recaudación camino
-            Integer roadRevenueIndex = columnMapping.get("road_revenue");
-            if (roadRevenueIndex != null && roadRevenueIndex < fields.length && !fields[roadRevenueIndex].trim().isEmpty()) {
-                try {
-                    trip.setRoadRevenue(parseCurrency(fields[roadRevenueIndex].trim()));
-                } catch (Exception e) {
-                    System.err.println("Línea " + lineNumber + ": Error parsing road revenue: " + fields[roadRevenueIndex]);
-                }
-            }
-            
-            // Ingresos manuales
-            Integer manualIndex = columnMapping.get("manual_income");
-            if (manualIndex != null && manualIndex < fields.length) {
-                trip.setManualIncome(fields[manualIndex].trim());
+            Files.move(spill, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        // El movimiento conserva la fecha de modificación: un token vencido no se importa aunque la limpieza no haya pasado
+        if (isExpiredPreflight(claimed)) {
+            Files.deleteIfExists(claimed);
+            return Optional.empty();
+        }
+        purgeExpiredPreflights(spillDir);
+        try (TripSpillFile.Reader rows = new TripSpillFile.Reader(claimed)) {
+            CsvImportJob job = new CsvImportJob(rows.getFileName(), rows.getFileSize());
+            job.markRunning();
+            Optional<ImportedFile> previous = importedFileRepository.findBySha256(rows.getSha256());
+            if (previous.isPresent()) {
+                Map<String, Object> result = unchangedFileSummary(previous.get(), job, mode);
+                result.put("unconfiguredCities", List.of());
+                return Optional.of(result);
             }
-            
-            return trip;
-            
-        } catch (Exception e) {
-            System.err.println("Línea " + lineNumber + ": Error parsing line: " + line + " - " + e.getMessage());
-            return null;
+            Map<String, Object> result = importTripsAndUnconfiguredCities(rows, job, mode);
+            rememberFile(rows.getSha256(), job);
+            return Optional.of(result);
+        } finally {
+            Files.deleteIfExists(claimed);
         }
     }
 
-    private String[] parseCsvFields(String line) {
-        List<String> fields = new ArrayList<>();
-        StringBuilder currentField = new StringBuilder();
-        boolean inQuotes = false;
-        
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                fields.add(currentField.toString());
-                currentField = new StringBuilder();
-            } else {
-                currentField.append(c);
-            }
-        }
-        
-        // Agregar el último campo
-        fields.add(currentField.toString());
-        return fields.toArray(new String[0]);
+    private Path preflightDir() throws IOException {
+        Path dir = preflightDirectory.isBlank()
+            ? Path.of(System.getProperty("java.io.tmpdir"), "pullman-preflight")
+            : Path.of(preflightDirectory);
+        return Files.createDirectories(dir);
     }
 
-    private LocalTime parseTime(String timeStr) {
-        try {
-            // Formato esperado: "04:45 AM" o "16:30 PM"
-            String[] parts = timeStr.split(" ");
-            String time = parts[0];
-            String ampm = parts[1];
-            
-            String[] timeParts = time.split(":");
-            int hour = Integer.parseInt(timeParts[0]);
-            int minute = Integer.parseInt(timeParts[1]);
-            
-            if (ampm.equalsIgnoreCase("PM") && hour != 12) {
-                hour += 12;
-            } else if (ampm.equalsIgnoreCase("AM") && hour == 12) {
-                hour = 0;
-            }
-            
-            return LocalTime.of(hour, minute);
-        } catch (Exception e) {
-            return LocalTime.of(0, 0);
+    // Los tokens no confirmados se descartan pasado el tiempo de vida
+    private void purgeExpiredPreflights(Path dir) throws IOException {
+        try (var paths = Files.list(dir)) {
+            for (Path path : paths.toList()) {
+                try {
+                    if (path.getFileName().toString().endsWith(PREFLIGHT_SUFFIX) && isExpiredPreflight(path)) {
+                        Files.deleteIfExists(path);
+                    }
+                } catch (IOException e) {
+                    System.err.println("No se pudo eliminar la verificación expirada " + path + ": " + e.getMessage());
+                }
+            }
         }
     }
 
-    private BigDecimal parseBigDecimal(String value) {
-        try {
-            // Remover comas y convertir a BigDecimal
-            String cleanValue = value.replace(",", ".");
-            return new BigDecimal(cleanValue);
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
-        }
+    private boolean isExpiredPreflight(Path path) throws IOException {
+        long limit = System.currentTimeMillis() - preflightTtlMinutes * 60_000;
+        return Files.getLastModifiedTime(path).toMillis() < limit;
     }
 
-    private BigDecimal parseCurrency(String value) {
-        try {
-            // Remover símbolo de peso y comas, convertir a BigDecimal
-            String cleanValue = value.replace("$", "").replace(".", "").replace(",", ".");
-            return new BigDecimal(cleanValue);
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
+    // El encabezado se compila una sola vez por archivo; las coincidencias ambiguas se informan aquí
+    private TripBindingPlan compileBindingPlan(CsvTokenizer headerRow) {
+        System.out.println("Headers encontrados: [" + headerRow + "]");
+        TripBindingPlan plan = TripBindingPlan.compile(headerRow, stringDictionarySize);
+        System.out.println("Mapeo de columnas: " + plan.getColumns());
+        for (String warning : plan.getWarnings()) {
+            System.err.println("Encabezado ambiguo: " + warning);
         }
+        return plan;
     }
 
     private String calcularDecena(LocalDate fecha) {
@@ -0,0 +1,211 @@
+package com.pullman.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Ingesta desde un directorio local (por ejemplo la exportación nocturna de boletería).
+// Un archivo .csv se toma cuando su tamaño y fecha de modificación no cambian durante settle-millis;
+// se mueve a processing/ (así ningún otro worker lo toma), se importa leyendo el archivo mapeado en memoria
+// por tramos y termina en processed/ o failed/ junto a un <archivo>.result.json con el resultado.
+@Component
+@ConditionalOnProperty(name = "pullman.import.spool.enabled", havingValue = "true")
+public class CsvSpoolWatcher {
+
+    private static final String PROCESSING_DIR = "processing";
+    private static final String PROCESSED_DIR = "processed";
+    private static final String FAILED_DIR = "failed";
+    private static final String RESULT_SUFFIX = ".result.json";
+    private static final DateTimeFormatter COLLISION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Autowired
+    private CsvImportJobService csvImportJobService;
+
+    @Autowired
+    @Qualifier("csvSpoolExecutor")
+    private TaskExecutor csvSpoolExecutor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${pullman.import.spool.dir}")
+    private String directory;
+    @Value("${pullman.import.spool.mode:JPA}")
+    private ImportMode mode;
+    @Value("${pullman.import.spool.settle-millis:2000}")
+    private long settleMillis;
+
+    private Path spool;
+    private Path processing;
+    private Path processed;
+    private Path failed;
+    private WatchService watchService;
+    private Thread watcher;
+    // Último tamaño y fecha vistos de cada archivo candidato; solo lo usa el hilo del watcher
+    private final Map<Path, FileState> candidates = new HashMap<>();
+
+    @PostConstruct
+    public void start() throws IOException {
+        spool = Paths.get(directory).toAbsolutePath();
+        processing = Files.createDirectories(spool.resolve(PROCESSING_DIR));
+        processed = Files.createDirectories(spool.resolve(PROCESSED_DIR));
+        failed = Files.createDirectories(spool.resolve(FAILED_DIR));
+        recoverInterrupted();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        spool.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watch, "csv-spool-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        System.out.println("Vigilando directorio de importación " + spool + " (modo " + mode + ")");
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    // Los eventos solo despiertan al hilo; en cada vuelta se revisa el directorio completo,
+    // así también se toman los archivos que ya estaban al arrancar o cuyos eventos se perdieron
+    private void watch() {
+        try {
+            while (true) {
+                scan();
+                WatchKey key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            System.out.println("Vigilancia del directorio de importación detenida");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scan() {
+        long now = System.currentTimeMillis();
+        Set<Path> seen = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spool, "*.{csv,CSV}")) {
+            for (Path file : files) {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    continue;
+                }
+                seen.add(file);
+                FileState state = new FileState(attrs.size(), attrs.lastModifiedTime().toMillis(), now);
+                FileState previous = candidates.get(file);
+                if (previous == null || !previous.sameContent(state)) {
+                    candidates.put(file, state);
+                } else if (now - previous.since >= settleMillis) {
+                    candidates.remove(file);
+                    claim(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error revisando el directorio de importación " + spool + ": " + e.getMessage());
+        }
+        candidates.keySet().retainAll(seen);
+    }
+
+    private void claim(Path file) {
+        Path claimed = processing.resolve(file.getFileName());
+        try {
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("No se pudo tomar el archivo " + file + ": " + e.getMessage());
+            return;
+        }
+        csvSpoolExecutor.execute(() -> process(claimed));
+    }
+
+    private void process(Path file) {
+        String fileName = file.getFileName().toString();
+        System.out.println("Importando archivo del directorio de spool: " + fileName);
+        Map<String, Object> result;
+        boolean ok;
+        try {
+            CsvImportJob job = csvImportJobService.runFile(file, mode);
+            result = job.toMap();
+            ok = job.getStatus() != CsvImportJob.Status.FAILED;
+        } catch (Exception e) {
+            result = new HashMap<>();
+            result.put("fileName", fileName);
+            result.put("error", e.getMessage());
+            ok = false;
+        }
+        try {
+            Path target = uniqueTarget(ok ? processed : failed, fileName);
+            Files.move(file, target);
+            objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValue(target.resolveSibling(target.getFileName() + RESULT_SUFFIX).toFile(), result);
+            System.out.println("Archivo " + fileName + " importado " + (ok ? "correctamente" : "con error") + " -> " + target);
+        } catch (IOException e) {
+            System.err.println("No se pudo mover el archivo importado " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Un archivo con el mismo nombre ya procesado no se sobrescribe
+    private Path uniqueTarget(Path dir, String fileName) {
+        Path target = dir.resolve(fileName);
+        if (Files.exists(target)) {
+            target = dir.resolve(LocalDateTime.now().format(COLLISION_SUFFIX) + "-" + fileName);
+        }
+        return target;
+    }
+
+    // Archivos que quedaron en processing/ por un reinicio vuelven al spool para importarse de nuevo
+    private void recoverInterrupted() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(processing)) {
+            for (Path file : files) {
+                System.out.println("Reintentando archivo interrumpido: " + file.getFileName());
+                Files.move(file, spool.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static final class FileState {
+        final long size;
+        final long modified;
+        final long since;
+
+        FileState(long size, long modified, long since) {
+            this.size = size;
+            this.modified = modified;
+            this.since = since;
+        }
+
+        boolean sameContent(FileState other) {
+            return size == other.size && modified == other.modified;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.pullman.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+// Tokenizador CSV (RFC 4180) sobre un buffer de caracteres reutilizable.
+// Cada llamada a next() deja el registro actual en el buffer y guarda los offsets de inicio y fin de cada campo;
+// las comillas escapadas ("") se resuelven en el mismo buffer y los campos entre comillas pueden contener saltos de línea.
+// Una comilla solo abre un campo entre comillas al inicio del campo; en medio de un campo sin comillas es texto.
+// Un registro de más de MAX_RECORD_CHARS caracteres (por ejemplo una comilla sin cerrar) no se separa en campos:
+// queda marcado (isOversized) y la lectura sigue en el siguiente salto de línea.
+// Solo se crea un String cuando se pide el valor de un campo.
+public class CsvTokenizer implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final char DELIMITER = ',';
+    private static final char QUOTE = '"';
+    public static final int MAX_RECORD_CHARS = 1 << 20;
+
+    private final Reader reader;
+    private char[] buf;
+    private int limit;
+    private int pos;
+    private boolean eof;
+    private boolean skipLineFeed;
+
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private int fieldCount;
+    private int recordStart;
+    private int recordEnd;
+    private boolean oversized;
+
+    private long lineNumber;
+    private long nextLineNumber = 1;
+
+    public CsvTokenizer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(Reader reader, int bufferSize) {
+        this(reader, bufferSize, 1);
+    }
+
+    // Para leer un tramo de un archivo mayor: los números de línea siguen la numeración del archivo completo
+    public CsvTokenizer(Reader reader, int bufferSize, long firstLineNumber) {
+        this.reader = reader;
+        this.buf = new char[bufferSize];
+        this.nextLineNumber = firstLineNumber;
+    }
+
+    // Avanza al siguiente registro no vacío; devuelve false al llegar al final
+    public boolean next() throws IOException {
+        while (readRecord()) {
+            if (oversized) {
+                fieldCount = 0;
+                return true;
+            }
+            if (!isBlankRecord()) {
+                tokenize();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Carga un registro que ya viene separado en campos (por ejemplo una fila de una planilla),
+    // para que el plan de columnas lo lea igual que una línea del CSV
+    public void load(List<String> fields, long lineNumber) {
+        int length = 0;
+        for (String field : fields) {
+            length += field.length();
+        }
+        if (buf.length < length) {
+            buf = new char[Math.max(length, buf.length * 2)];
+        }
+        if (starts.length < fields.size()) {
+            starts = new int[Math.max(fields.size(), starts.length * 2)];
+            ends = new int[starts.length];
+        }
+        int offset = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+            field.getChars(0, field.length(), buf, offset);
+            starts[i] = offset;
+            offset += field.length();
+            ends[i] = offset;
+        }
+        fieldCount = fields.size();
+        oversized = false;
+        this.lineNumber = lineNumber;
+        this.nextLineNumber = lineNumber + 1;
+    }
+
+    // Número de línea física donde empieza el registro actual
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    // Líneas físicas leídas hasta ahora (incluye encabezado y líneas vacías)
+    public long linesRead() {
+        return nextLineNumber - 1;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // El registro actual pasó de MAX_RECORD_CHARS y se descartó (sin campos)
+    public boolean isOversized() {
+        return oversized;
+    }
+
+    public String oversizedMessage() {
+        return "Registro de más de " + MAX_RECORD_CHARS + " caracteres (¿comilla sin cerrar?); se descarta hasta el siguiente salto de línea";
+    }
+
+    public char[] buffer() {
+        return buf;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    public String field(int index) {
+        return new String(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    // Equivalente a field(index).trim() sin crear el String intermedio
+    public String trimmed(int index) {
+        int start = trimStart(index);
+        int end = trimEnd(index, start);
+        return new String(buf, start, end - start);
+    }
+
+    public boolean isBlank(int index) {
+        return trimStart(index) == ends[index];
+    }
+
+    public int trimStart(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    public int trimEnd(int index, int trimmedStart) {
+        int end = ends[index];
+        while (end > trimmedStart && buf[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    // Registro actual reconstruido para mensajes de error
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++) {
+            if (i > 0) {
+                sb.append(DELIMITER);
+            }
+            sb.append(buf, starts[i], ends[i] - starts[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Busca el fin del registro (salto de línea fuera de comillas) dejando el registro completo y contiguo en el buffer
+    private boolean readRecord() throws IOException {
+        if (skipLineFeed) {
+            if (pos == limit) {
+                fill();
+            }
+            if (pos < limit && buf[pos] == '\n') {
+                pos++;
+            }
+            skipLineFeed = false;
+        }
+        recordStart = pos;
+        lineNumber = nextLineNumber;
+        oversized = false;
+        boolean inQuotes = false;
+        // Al inicio del campo (solo espacios desde el separador) una comilla abre un campo entre comillas;
+        // justo después de la comilla de cierre, otra comilla es una comilla escapada ("")
+        boolean fieldStart = true;
+        boolean afterClose = false;
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (pos == recordStart) {
+                    return false;
+                }
+                recordEnd = pos;
+                nextLineNumber++;
+                return true;
+            }
+            if (pos - recordStart >= MAX_RECORD_CHARS) {
+                skipOversized();
+                return true;
+            }
+            char c = buf[pos];
+            if (c == QUOTE) {
+                if (inQuotes) {
+                    inQuotes = false;
+                    afterClose = true;
+                } else {
+                    inQuotes = fieldStart || afterClose;
+                    afterClose = false;
+                }
+                fieldStart = false;
+            } else {
+                afterClose = false;
+                if (c == '\n' || c == '\r') {
+                    if (!inQuotes) {
+                        recordEnd = pos;
+                        pos++;
+                        nextLineNumber++;
+                        skipLineFeed = c == '\r';
+                        return true;
+                    }
+                    if (c == '\n') {
+                        nextLineNumber++;
+                    }
+                } else if (!inQuotes) {
+                    fieldStart = c == DELIMITER || (fieldStart && (c == ' ' || c == '\t'));
+                }
+            }
+            pos++;
+        }
+    }
+
+    // El registro no terminó en MAX_RECORD_CHARS: se descarta hasta el primer salto de línea después de su inicio,
+    // sin tener en cuenta las comillas, y la lectura sigue desde ahí
+    private void skipOversized() throws IOException {
+        oversized = true;
+        nextLineNumber = lineNumber + 1;
+        pos = recordStart;
+        while (true) {
+            if (pos == limit) {
+                // Lo leído no se necesita: se descarta en vez de agrandar el buffer
+                recordStart = pos;
+                if (!fill()) {
+                    recordEnd = pos;
+                    return;
+                }
+            }
+            char c = buf[pos];
+            if (c == '\n' || c == '\r') {
+                recordEnd = pos;
+                pos++;
+                skipLineFeed = c == '\r';
+                return;
+            }
+            pos++;
+        }
+    }
+
+    // Compacta el buffer dejando el registro en curso al inicio; lo agranda si el registro no cabe
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (recordStart > 0) {
+            System.arraycopy(buf, recordStart, buf, 0, limit - recordStart);
+            pos -= recordStart;
+            limit -= recordStart;
+            recordStart = 0;
+        }
+        if (limit == buf.length) {
+            char[] bigger = new char[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        int read = reader.read(buf, limit, buf.length - limit);
+        if (read <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private boolean isBlankRecord() {
+        for (int i = recordStart; i < recordEnd; i++) {
+            if (buf[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Separa el registro en campos; las comillas se eliminan en el mismo buffer (el contenido solo se acorta)
+    private void tokenize() {
+        fieldCount = 0;
+        int r = recordStart;
+        int e = recordEnd;
+        while (true) {
+            if (fieldCount == starts.length) {
+                int[] biggerStarts = new int[starts.length * 2];
+                int[] biggerEnds = new int[ends.length * 2];
+                System.arraycopy(starts, 0, biggerStarts, 0, fieldCount);
+                System.arraycopy(ends, 0, biggerEnds, 0, fieldCount);
+                starts = biggerStarts;
+                ends = biggerEnds;
+            }
+            int start;
+            int end;
+            // Un campo entre comillas puede venir precedido de espacios (", "valor"")
+            int q = r;
+            while (q < e && (buf[q] == ' ' || buf[q] == '\t')) {
+                q++;
+            }
+            if (q < e && buf[q] == QUOTE) {
+                r = q;
+                start = r;
+                int w = r;
+                r++;
+                while (r < e) {
+                    char c = buf[r];
+                    if (c == QUOTE) {
+                        if (r + 1 < e && buf[r + 1] == QUOTE) {
+                            buf[w++] = QUOTE;
+                            r += 2;
+                            continue;
+                        }
+                        r++;
+                        break;
+                    }
+                    buf[w++] = c;
+                    r++;
+                }
+                // Texto después de la comilla de cierre (fuera del estándar): se conserva tal cual
+                while (r < e && buf[r] != DELIMITER) {
+                    buf[w++] = buf[r++];
+                }
+                end = w;
+            } else {
+                start = r;
+                while (r < e && buf[r] != DELIMITER) {
+                    r++;
+                }
+                end = r;
+            }
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            fieldCount++;
+            if (r < e && buf[r] == DELIMITER) {
+                r++;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.pullman.service;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// Viajes de una decena en columnas de tipos primitivos (una posición por viaje), para sumar con recorridos
+// simples sin cargar entidades. Tramos, empresas y zonas van como índices a sus diccionarios; el ingreso va en
+// centavos. Solo incluye viajes con empresa. Es inmutable: DecenaSnapshotCache lo reemplaza cuando cambia la decena.
+public final class DecenaSnapshot {
+
+    // Índice de zona reservado para los tramos sin ruta o con ruta sin zona
+    public static final int NO_ZONE = 0;
+
+    final String decena;
+    final LocalDate firstDay;
+    // Versión de RouteZoneIndex con que se resolvieron las zonas de los tramos
+    final long routeVersion;
+    final int size;
+
+    // Columnas por viaje
+    final byte[] day;
+    // Minuto del día de la salida; -1 si no tiene
+    final short[] departureMinute;
+    final int[] route;
+    final int[] company;
+    final int[] zone;
+    final long[] revenueCents;
+
+    // Diccionarios
+    final String[] routeOrigins;
+    final String[] routeDestinations;
+    final String[] companies;
+    final String[] companyNorms;
+    // Posición NO_ZONE: id 0 y nombre null
+    final long[] zoneIds;
+    final String[] zoneNames;
+
+    DecenaSnapshot(String decena, LocalDate firstDay, long routeVersion, int size,
+                   byte[] day, short[] departureMinute, int[] route, int[] company, int[] zone, long[] revenueCents,
+                   String[] routeOrigins, String[] routeDestinations, String[] companies, String[] companyNorms,
+                   long[] zoneIds, String[] zoneNames) {
+        this.decena = decena;
+        this.firstDay = firstDay;
+        this.routeVersion = routeVersion;
+        this.size = size;
+        this.day = day;
+        this.departureMinute = departureMinute;
+        this.route = route;
+        this.company = company;
+        this.zone = zone;
+        this.revenueCents = revenueCents;
+        this.routeOrigins = routeOrigins;
+        this.routeDestinations = routeDestinations;
+        this.companies = companies;
+        this.companyNorms = companyNorms;
+        this.zoneIds = zoneIds;
+        this.zoneNames = zoneNames;
+    }
+
+    public String getDecena() {
+        return decena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int companyCount() {
+        return companies.length;
+    }
+
+    public String companyName(int index) {
+        return companies[index];
+    }
+
+    public String companyNorm(int index) {
+        return companyNorms[index];
+    }
+
+    public int zoneCount() {
+        return zoneIds.length;
+    }
+
+    public long zoneId(int index) {
+        return zoneIds[index];
+    }
+
+    public String zoneName(int index) {
+        return zoneNames[index];
+    }
+
+    // Porcentaje de cada zona del diccionario según el mapa id -> porcentaje (0 si no está, y para NO_ZONE)
+    public double[] zonePercentages(Map<Long, Double> porcentajes) {
+        double[] result = new double[zoneIds.length];
+        for (int i = 0; i < zoneIds.length; i++) {
+            if (i != NO_ZONE) {
+                Double porcentaje = porcentajes.get(zoneIds[i]);
+                result[i] = porcentaje != null ? porcentaje : 0;
+            }
+        }
+        return result;
+    }
+
+    // Ingreso por empresa, en centavos
+    public long[] revenueCentsByCompany() {
+        long[] result = new long[companies.length];
+        for (int i = 0; i < size; i++) {
+            result[company[i]] += revenueCents[i];
+        }
+        return result;
+    }
+
+    // Ganancia por empresa: ingreso de cada viaje por el porcentaje de su zona
+    public double[] gananciaByCompany(double[] zonePercentages) {
+        double[] result = new double[companies.length];
+        for (int i = 0; i < size; i++) {
+            result[company[i]] += revenueCents[i] * zonePercentages[zone[i]];
+        }
+        // centavos y porcentaje
+        for (int c = 0; c < result.length; c++) {
+            result[c] /= 10_000.0;
+        }
+        return result;
+    }
+
+    // Viajes e ingreso (centavos) por empresa y zona, en la posición company * zoneCount() + zone
+    public long[][] countAndRevenueByCompanyAndZone() {
+        int zones = zoneIds.length;
+        long[] count = new long[companies.length * zones];
+        long[] revenue = new long[companies.length * zones];
+        for (int i = 0; i < size; i++) {
+            int cell = company[i] * zones + zone[i];
+            count[cell]++;
+            revenue[cell] += revenueCents[i];
+        }
+        return new long[][] {count, revenue};
+    }
+
+    // Memoria aproximada: columnas, diccionarios y cabeceras de los arreglos
+    public long estimatedBytes() {
+        long bytes = 16L * 16;
+        bytes += (long) size * (Byte.BYTES + Short.BYTES + Integer.BYTES * 3 + Long.BYTES);
+        bytes += (long) zoneIds.length * Long.BYTES;
+        bytes += stringBytes(routeOrigins) + stringBytes(routeDestinations) + stringBytes(companies)
+            + stringBytes(companyNorms) + stringBytes(zoneNames);
+        return bytes;
+    }
+
+    private static long stringBytes(String[] values) {
+        long bytes = (long) values.length * 8;
+        for (String value : values) {
+            if (value != null) {
+                bytes += 40 + value.length();
+            }
+        }
+        return bytes;
+    }
+}
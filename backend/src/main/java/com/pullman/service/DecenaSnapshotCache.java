@@ -0,0 +1,264 @@
+package com.pullman.service;
+
+import com.pullman.domain.Zone;
+import com.pullman.util.NameNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Snapshots columnares por decena (DecenaSnapshot) compartidos por la generación de producciones, los reportes
+// y la simulación de porcentajes. Se arman al pedirlos, con una sola lectura de los viajes de la decena,
+// y se guardan las últimas decenas usadas (LRU).
+// Una decena se descarta cuando se confirman cambios en sus viajes; todas, cuando cambian las rutas
+// (versión de RouteZoneIndex) o se borran todos los viajes.
+@Component
+public class DecenaSnapshotCache {
+
+    private static final String TRIPS_SQL =
+        "SELECT travel_date, departure_time, origin, destination, origin_norm, destination_norm, company_name, company_norm, " +
+        "branch_revenue, road_revenue, manual_income FROM trips " +
+        "WHERE travel_date BETWEEN ? AND ? AND company_name IS NOT NULL AND company_name <> ''";
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RouteZoneIndex routeZoneIndex;
+
+    @Value("${pullman.snapshot.cached-decenas:12}")
+    private int maxDecenas;
+
+    private final Map<String, DecenaSnapshot> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // Aumenta con cada descarte: una lectura que empezó antes no se guarda (puede no ver los cambios)
+    private long invalidations;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DecenaSnapshot get(String decena) {
+        long routeVersion = routeZoneIndex.getVersion();
+        long invalidationsAtStart;
+        synchronized (cache) {
+            DecenaSnapshot cached = cache.get(decena);
+            if (cached != null && cached.routeVersion == routeVersion) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            invalidationsAtStart = invalidations;
+        }
+        misses.incrementAndGet();
+        // Se lee fuera del bloqueo: otra decena no espera a esta lectura
+        DecenaSnapshot built = build(decena, routeVersion);
+        synchronized (cache) {
+            if (invalidations == invalidationsAtStart) {
+                cache.put(decena, built);
+                while (cache.size() > maxDecenas) {
+                    cache.remove(cache.keySet().iterator().next());
+                }
+            }
+        }
+        return built;
+    }
+
+    // Descarta las decenas ahora y, si hay una transacción en curso, otra vez al confirmarla:
+    // así no queda guardada una lectura hecha antes de que los cambios fueran visibles
+    public void invalidate(Collection<String> decenas) {
+        if (decenas.isEmpty()) {
+            return;
+        }
+        Set<String> copy = new TreeSet<>(decenas);
+        remove(copy);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(copy);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+            invalidations++;
+        }
+    }
+
+    // Decenas en memoria (de la menos a la más usada recientemente) con su tamaño estimado
+    public Map<String, Object> stats() {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        long totalBytes = 0;
+        synchronized (cache) {
+            for (DecenaSnapshot snapshot : cache.values()) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("decena", snapshot.decena);
+                entry.put("trips", snapshot.size);
+                entry.put("routes", snapshot.routeOrigins.length);
+                entry.put("companies", snapshot.companies.length);
+                entry.put("zones", snapshot.zoneIds.length - 1);
+                entry.put("estimatedBytes", snapshot.estimatedBytes());
+                entries.add(entry);
+                totalBytes += snapshot.estimatedBytes();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxDecenas", maxDecenas);
+        stats.put("decenas", entries);
+        stats.put("estimatedBytes", totalBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private void remove(Set<String> decenas) {
+        synchronized (cache) {
+            cache.keySet().removeAll(decenas);
+            invalidations++;
+        }
+    }
+
+    private DecenaSnapshot build(String decena, long routeVersion) {
+        long started = System.currentTimeMillis();
+        LocalDate[] range = CsvImportService.rangoDecena(decena);
+        Builder builder = new Builder(range[0]);
+        jdbcTemplate.query(TRIPS_SQL, rs -> {
+            builder.add(rs.getDate(1), rs.getTime(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+                rs.getString(7), rs.getString(8), rs.getBigDecimal(9), rs.getBigDecimal(10), rs.getString(11));
+        }, Date.valueOf(range[0]), Date.valueOf(range[1]));
+        DecenaSnapshot snapshot = builder.build(decena, routeVersion);
+        System.out.println("Snapshot de la decena " + decena + ": " + snapshot.size + " viajes, ~" + snapshot.estimatedBytes() / 1024
+            + " KB en " + (System.currentTimeMillis() - started) + " ms");
+        return snapshot;
+    }
+
+    // Columnas que crecen mientras se leen los viajes, y diccionarios de tramos, empresas y zonas
+    private final class Builder {
+        private final LocalDate firstDay;
+        private int size;
+        private byte[] day = new byte[INITIAL_CAPACITY];
+        private short[] departureMinute = new short[INITIAL_CAPACITY];
+        private int[] route = new int[INITIAL_CAPACITY];
+        private int[] company = new int[INITIAL_CAPACITY];
+        private int[] zone = new int[INITIAL_CAPACITY];
+        private long[] revenueCents = new long[INITIAL_CAPACITY];
+
+        private final Map<String, Integer> routeIndex = new HashMap<>();
+        private final List<String> routeOrigins = new ArrayList<>();
+        private final List<String> routeDestinations = new ArrayList<>();
+        private final List<Integer> routeZones = new ArrayList<>();
+        private final Map<String, Integer> companyIndex = new HashMap<>();
+        private final List<String> companies = new ArrayList<>();
+        private final List<String> companyNorms = new ArrayList<>();
+        private final Map<Long, Integer> zoneIndex = new HashMap<>();
+        private final List<Long> zoneIds = new ArrayList<>();
+        private final List<String> zoneNames = new ArrayList<>();
+
+        Builder(LocalDate firstDay) {
+            this.firstDay = firstDay;
+            zoneIds.add(0L);
+            zoneNames.add(null);
+        }
+
+        void add(Date travelDate, Time departureTime, String origin, String destination, String originNorm, String destinationNorm,
+                 String companyName, String companyNorm, BigDecimal branchRevenue, BigDecimal roadRevenue, String manualIncome) {
+            if (size == day.length) {
+                int capacity = size * 2;
+                day = Arrays.copyOf(day, capacity);
+                departureMinute = Arrays.copyOf(departureMinute, capacity);
+                route = Arrays.copyOf(route, capacity);
+                company = Arrays.copyOf(company, capacity);
+                zone = Arrays.copyOf(zone, capacity);
+                revenueCents = Arrays.copyOf(revenueCents, capacity);
+            }
+            day[size] = (byte) (travelDate.toLocalDate().toEpochDay() - firstDay.toEpochDay());
+            departureMinute[size] = departureTime != null
+                ? (short) (departureTime.toLocalTime().toSecondOfDay() / 60)
+                : -1;
+            int routeId = route(origin, destination, originNorm, destinationNorm);
+            route[size] = routeId;
+            zone[size] = routeZones.get(routeId);
+            company[size] = company(companyName, companyNorm);
+            revenueCents[size] = cents(branchRevenue) + cents(roadRevenue) + Math.round(FieldDecoders.decodeManualIncome(manualIncome) * 100);
+            size++;
+        }
+
+        // Un tramo por par normalizado; su zona se resuelve una sola vez
+        private int route(String origin, String destination, String originNorm, String destinationNorm) {
+            String from = originNorm != null ? originNorm : NameNormalizer.normalize(origin);
+            String to = destinationNorm != null ? destinationNorm : NameNormalizer.normalize(destination);
+            Integer index = routeIndex.get(from + "->" + to);
+            if (index != null) {
+                return index;
+            }
+            int created = routeOrigins.size();
+            routeIndex.put(from + "->" + to, created);
+            routeOrigins.add(origin);
+            routeDestinations.add(destination);
+            Zone found = routeZoneIndex.findZone(origin, destination);
+            routeZones.add(found != null ? zone(found) : DecenaSnapshot.NO_ZONE);
+            return created;
+        }
+
+        private int zone(Zone found) {
+            Integer index = zoneIndex.get(found.getId());
+            if (index != null) {
+                return index;
+            }
+            int created = zoneIds.size();
+            zoneIndex.put(found.getId(), created);
+            zoneIds.add(found.getId());
+            zoneNames.add(found.getNombre());
+            return created;
+        }
+
+        private int company(String companyName, String companyNorm) {
+            Integer index = companyIndex.get(companyName);
+            if (index != null) {
+                return index;
+            }
+            int created = companies.size();
+            companyIndex.put(companyName, created);
+            companies.add(companyName);
+            companyNorms.add(companyNorm != null ? companyNorm : NameNormalizer.normalize(companyName));
+            return created;
+        }
+
+        private long cents(BigDecimal value) {
+            return value != null ? value.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0;
+        }
+
+        DecenaSnapshot build(String decena, long routeVersion) {
+            long[] zoneIdArray = new long[zoneIds.size()];
+            for (int i = 0; i < zoneIdArray.length; i++) {
+                zoneIdArray[i] = zoneIds.get(i);
+            }
+            return new DecenaSnapshot(decena, firstDay, routeVersion, size,
+                Arrays.copyOf(day, size), Arrays.copyOf(departureMinute, size), Arrays.copyOf(route, size),
+                Arrays.copyOf(company, size), Arrays.copyOf(zone, size), Arrays.copyOf(revenueCents, size),
+                routeOrigins.toArray(new String[0]), routeDestinations.toArray(new String[0]),
+                companies.toArray(new String[0]), companyNorms.toArray(new String[0]),
+                zoneIdArray, zoneNames.toArray(new String[0]));
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.pullman.service;
+
+import com.pullman.repository.TripRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Análisis de claves duplicadas (fecha, hora, origen, destino, bus) de un CSV antes de importarlo, con el mismo
+// criterio que valida_csv_trips.py: origen, destino y bus sin espacios en los extremos y en minúsculas; las filas sin
+// hora de salida no cuentan. Informa los grupos repetidos dentro del archivo y los que ya existen en la base.
+// Diferencia deliberada con el script: la fecha y la hora no se comparan como texto sino ya decodificadas, igual que al
+// importar ("01/07/2025" y "01-07-2025", o "9:05 PM" y "09:05 pm", son la misma clave, como lo serán en trips); por eso
+// una fila con fecha u hora que no se puede interpretar se informa como inválida en vez de formar una clave.
+// 1) Se recorre el archivo contando una huella de 64 bits por clave en una tabla de long (sin Strings por fila)
+//    y se anotan las decenas que toca.
+// 2) Se cargan las claves de la base por decena y solo se guardan las que coinciden con alguna huella del archivo.
+// 3) Un segundo recorrido arma los grupos con la clave completa solo para las huellas repetidas o presentes en la
+//    base, y los viajes candidatos se confirman comparando sus claves en consultas por lotes de ids.
+@Service
+public class DuplicateAnalysisService {
+
+    // Tiempo que se conserva un análisis para pedir sus demás páginas
+    private static final Duration RETENTION = Duration.ofHours(1);
+    private static final int LINES_PER_GROUP = 20;
+    private static final int INVALID_SAMPLE_SIZE = 20;
+    private static final int ID_LOOKUP_BATCH = 1000;
+
+    public enum Scope {
+        ALL,
+        // Repetidos dentro del archivo
+        FILE,
+        // Ya existentes en la base
+        DATABASE
+    }
+
+    @Autowired
+    private TripRepository tripRepository;
+
+    // Misma codificación que la importación
+    @Value("${pullman.import.charset:UTF-8}")
+    private Charset csvCharset;
+
+    private final Map<String, Analysis> analyses = new ConcurrentHashMap<>();
+
+    public Analysis analyze(MultipartFile file) throws IOException {
+        evictExpired();
+        Path tempFile = Files.createTempFile("csv-duplicates-", ".csv");
+        try {
+            file.transferTo(tempFile);
+            if (XlsxTripRowReader.isXlsx(tempFile)) {
+                throw new IllegalArgumentException("El análisis de duplicados solo acepta archivos CSV");
+            }
+            Analysis analysis = analyze(file.getOriginalFilename(), tempFile);
+            analyses.put(analysis.id, analysis);
+            return analysis;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public Optional<Analysis> findById(String id) {
+        return Optional.ofNullable(analyses.get(id));
+    }
+
+    private Analysis analyze(String fileName, Path file) throws IOException {
+        long start = System.nanoTime();
+        Analysis analysis = new Analysis(fileName);
+
+        // 1) Huellas del archivo
+        FingerprintCounts counts = new FingerprintCounts();
+        Set<LocalDate> decenas = new HashSet<>();
+        scan(file, (row, lineNumber, fingerprint, key) -> {
+            counts.increment(fingerprint);
+            decenas.add(decenaStart(key.travelDate));
+            analysis.validRows++;
+        }, analysis);
+
+        // 2) Claves de la base que coinciden con alguna huella del archivo
+        Map<Long, List<Long>> candidateIds = new HashMap<>();
+        for (LocalDate decena : decenas) {
+            for (Object[] row : tripRepository.findUniqueKeysBetween(decena, decenaEnd(decena))) {
+                long fingerprint = fingerprint((LocalDate) row[1], (LocalTime) row[2], (String) row[3], (String) row[4], (String) row[5]);
+                if (counts.get(fingerprint) > 0) {
+                    candidateIds.computeIfAbsent(fingerprint, f -> new ArrayList<>()).add((Long) row[0]);
+                }
+            }
+        }
+
+        // 3) Grupos con la clave completa (si dos claves distintas comparten huella quedan en grupos separados)
+        Map<Key, Group> groups = new LinkedHashMap<>();
+        scan(file, (row, lineNumber, fingerprint, key) -> {
+            if (counts.get(fingerprint) > 1 || candidateIds.containsKey(fingerprint)) {
+                groups.computeIfAbsent(key.materialize(row), k -> new Group(k, fingerprint)).add(lineNumber);
+            }
+        }, null);
+        confirmDatabaseMatches(groups.values(), candidateIds);
+
+        for (Group group : groups.values()) {
+            if (group.count > 1) {
+                analysis.duplicateGroups++;
+                analysis.duplicateRows += group.count - 1;
+            }
+            if (!group.existingTripIds.isEmpty()) {
+                analysis.databaseGroups++;
+                analysis.databaseRows += group.count;
+            }
+            if (group.count > 1 || !group.existingTripIds.isEmpty()) {
+                analysis.groups.add(group);
+            }
+        }
+        analysis.groups.sort(Comparator.comparingLong(group -> group.lines.get(0)));
+        analysis.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Análisis de duplicados de " + fileName + ": " + analysis.validRows + " filas, " +
+            analysis.duplicateGroups + " grupos repetidos, " + analysis.databaseGroups + " ya en la base (" +
+            analysis.elapsedMillis + " ms)");
+        return analysis;
+    }
+
+    // Compara la clave de cada viaje candidato con la del grupo; las huellas iguales con claves distintas se descartan
+    private void confirmDatabaseMatches(Iterable<Group> groups, Map<Long, List<Long>> candidateIds) {
+        Map<Long, List<Group>> groupsByTripId = new HashMap<>();
+        for (Group group : groups) {
+            for (Long id : candidateIds.getOrDefault(group.fingerprint, List.of())) {
+                groupsByTripId.computeIfAbsent(id, i -> new ArrayList<>()).add(group);
+            }
+        }
+        List<Long> ids = new ArrayList<>(groupsByTripId.keySet());
+        for (int from = 0; from < ids.size(); from += ID_LOOKUP_BATCH) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + ID_LOOKUP_BATCH));
+            for (Object[] row : tripRepository.findUniqueKeysByIdIn(batch)) {
+                Key key = new Key((LocalDate) row[1], (LocalTime) row[2], fold((String) row[3]), fold((String) row[4]), fold((String) row[5]));
+                for (Group group : groupsByTripId.get((Long) row[0])) {
+                    if (group.key.equals(key)) {
+                        group.existingTripIds.add((Long) row[0]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Recorre las filas válidas del CSV; si se pasa el análisis, cuenta y muestrea las filas inválidas
+    private void scan(Path file, RowVisitor visitor, Analysis analysis) throws IOException {
+        FieldDecoders.DateDecoder dateDecoder = new FieldDecoders.DateDecoder();
+        try (CsvTokenizer row = new CsvTokenizer(new InputStreamReader(Files.newInputStream(file), csvCharset))) {
+            if (!row.next()) {
+                return;
+            }
+            Map<String, Integer> columns = TripBindingPlan.compile(row).getColumns();
+            int dateColumn = columns.getOrDefault("travel_date", -1);
+            int timeColumn = columns.getOrDefault("departure_time", -1);
+            RowKey key = new RowKey(columns.getOrDefault("origin", -1), columns.getOrDefault("destination", -1),
+                columns.getOrDefault("bus_number", -1));
+            while (row.next()) {
+                long lineNumber = row.lineNumber();
+                if (!present(row, dateColumn) || !present(row, timeColumn)) {
+                    invalid(analysis, lineNumber);
+                    continue;
+                }
+                int dateStart = row.trimStart(dateColumn);
+                key.travelDate = dateDecoder.decode(row.buffer(), dateStart, row.trimEnd(dateColumn, dateStart));
+                if (key.travelDate == null) {
+                    invalid(analysis, lineNumber);
+                    continue;
+                }
+                int timeStart = row.trimStart(timeColumn);
+                key.departureTime = FieldDecoders.decodeTimeOrNull(row.buffer(), timeStart, row.trimEnd(timeColumn, timeStart));
+                if (key.departureTime == null) {
+                    invalid(analysis, lineNumber);
+                    continue;
+                }
+                visitor.visit(row, lineNumber, key.fingerprint(row), key);
+            }
+        }
+    }
+
+    private static boolean present(CsvTokenizer row, int column) {
+        return column >= 0 && column < row.fieldCount() && !row.isBlank(column);
+    }
+
+    private static void invalid(Analysis analysis, long lineNumber) {
+        if (analysis == null) {
+            return;
+        }
+        analysis.invalidRows++;
+        if (analysis.invalidLines.size() < INVALID_SAMPLE_SIZE) {
+            analysis.invalidLines.add(lineNumber);
+        }
+    }
+
+    private static LocalDate decenaStart(LocalDate date) {
+        int day = date.getDayOfMonth();
+        return date.withDayOfMonth(day > 20 ? 21 : day > 10 ? 11 : 1);
+    }
+
+    private static LocalDate decenaEnd(LocalDate start) {
+        return start.getDayOfMonth() == 21 ? start.withDayOfMonth(start.lengthOfMonth()) : start.plusDays(9);
+    }
+
+    // Sin espacios en los extremos y en minúsculas, carácter por carácter (igual para el archivo y para la base)
+    private static String fold(String value) {
+        if (value == null) {
+            return "";
+        }
+        char[] chars = value.toCharArray();
+        int start = 0;
+        int end = chars.length;
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    private static long fingerprint(LocalDate travelDate, LocalTime departureTime, String origin, String destination, String busNumber) {
+        long h = seed(travelDate, departureTime);
+        h = mixFolded(h, origin);
+        h = mixFolded(h, destination);
+        h = mixFolded(h, busNumber);
+        return TripContentHash.finish(h);
+    }
+
+    private static long seed(LocalDate travelDate, LocalTime departureTime) {
+        long value = travelDate.toEpochDay() * 86_400 + departureTime.toSecondOfDay();
+        long h = TripContentHash.FNV_OFFSET;
+        for (int shift = 0; shift < 64; shift += 16) {
+            h = TripContentHash.step(h, (char) (value >>> shift));
+        }
+        return h;
+    }
+
+    private static long mixFolded(long h, String value) {
+        String folded = fold(value);
+        for (int i = 0; i < folded.length(); i++) {
+            h = TripContentHash.step(h, folded.charAt(i));
+        }
+        return TripContentHash.step(h, '\u001F');
+    }
+
+    private static long mixFolded(long h, char[] buf, int start, int end) {
+        for (int i = start; i < end; i++) {
+            h = TripContentHash.step(h, Character.toLowerCase(buf[i]));
+        }
+        return TripContentHash.step(h, '\u001F');
+    }
+
+    private void evictExpired() {
+        Instant limit = Instant.now().minus(RETENTION);
+        analyses.values().removeIf(analysis -> analysis.createdAt.isBefore(limit));
+    }
+
+    private interface RowVisitor {
+        void visit(CsvTokenizer row, long lineNumber, long fingerprint, RowKey key);
+    }
+
+    // Columnas de la clave y valores ya decodificados de la fila actual; el texto solo se copia al armar un grupo
+    private static final class RowKey {
+        final int originColumn;
+        final int destinationColumn;
+        final int busColumn;
+        LocalDate travelDate;
+        LocalTime departureTime;
+
+        RowKey(int originColumn, int destinationColumn, int busColumn) {
+            this.originColumn = originColumn;
+            this.destinationColumn = destinationColumn;
+            this.busColumn = busColumn;
+        }
+
+        long fingerprint(CsvTokenizer row) {
+            long h = seed(travelDate, departureTime);
+            h = mixColumn(h, row, originColumn);
+            h = mixColumn(h, row, destinationColumn);
+            h = mixColumn(h, row, busColumn);
+            return TripContentHash.finish(h);
+        }
+
+        Key materialize(CsvTokenizer row) {
+            return new Key(travelDate, departureTime, text(row, originColumn), text(row, destinationColumn), text(row, busColumn));
+        }
+
+        private static long mixColumn(long h, CsvTokenizer row, int column) {
+            if (column < 0 || column >= row.fieldCount()) {
+                return mixFolded(h, row.buffer(), 0, 0);
+            }
+            int start = row.trimStart(column);
+            return mixFolded(h, row.buffer(), start, row.trimEnd(column, start));
+        }
+
+        private static String text(CsvTokenizer row, int column) {
+            return column >= 0 && column < row.fieldCount() ? fold(row.field(column)) : "";
+        }
+    }
+
+    private static final class Key {
+        final LocalDate travelDate;
+        final LocalTime departureTime;
+        final String origin;
+        final String destination;
+        final String busNumber;
+
+        Key(LocalDate travelDate, LocalTime departureTime, String origin, String destination, String busNumber) {
+            this.travelDate = travelDate;
+            this.departureTime = departureTime;
+            this.origin = origin;
+            this.destination = destination;
+            this.busNumber = busNumber;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return travelDate.equals(other.travelDate) && departureTime.equals(other.departureTime)
+                && origin.equals(other.origin) && destination.equals(other.destination) && busNumber.equals(other.busNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(travelDate, departureTime, origin, destination, busNumber);
+        }
+    }
+
+    public static final class Group {
+        private final Key key;
+        private final long fingerprint;
+        private int count;
+        private final List<Long> lines = new ArrayList<>();
+        private final List<Long> existingTripIds = new ArrayList<>();
+
+        private Group(Key key, long fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        private void add(long lineNumber) {
+            count++;
+            if (lines.size() < LINES_PER_GROUP) {
+                lines.add(lineNumber);
+            }
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("travelDate", key.travelDate);
+            map.put("departureTime", key.departureTime);
+            map.put("origin", key.origin);
+            map.put("destination", key.destination);
+            map.put("busNumber", key.busNumber);
+            map.put("count", count);
+            map.put("lines", lines);
+            map.put("existingTripIds", existingTripIds);
+            return map;
+        }
+    }
+
+    // Resultado de un análisis; los grupos se piden por página
+    public static final class Analysis {
+        private final String id = UUID.randomUUID().toString();
+        private final String fileName;
+        private final Instant createdAt = Instant.now();
+        private final List<Group> groups = new ArrayList<>();
+        private final List<Long> invalidLines = new ArrayList<>();
+        private long validRows;
+        private long invalidRows;
+        private int duplicateGroups;
+        private long duplicateRows;
+        private int databaseGroups;
+        private long databaseRows;
+        private long elapsedMillis;
+
+        private Analysis(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Map<String, Object> toMap(Scope scope, int page, int size) {
+            List<Map<String, Object>> selected = new ArrayList<>();
+            for (Group group : groups) {
+                boolean inFile = group.count > 1;
+                boolean inDatabase = !group.existingTripIds.isEmpty();
+                if (scope == Scope.ALL || (scope == Scope.FILE && inFile) || (scope == Scope.DATABASE && inDatabase)) {
+                    selected.add(group.toMap());
+                }
+            }
+            PageRequest pageable = PageRequest.of(page, size);
+            int from = (int) Math.min(pageable.getOffset(), selected.size());
+            int to = Math.min(from + size, selected.size());
+            Page<Map<String, Object>> groupPage = new PageImpl<>(selected.subList(from, to), pageable, selected.size());
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("analysisId", id);
+            map.put("fileName", fileName);
+            map.put("validRows", validRows);
+            map.put("invalidRows", invalidRows);
+            map.put("invalidLines", invalidLines);
+            map.put("duplicateGroups", duplicateGroups);
+            map.put("duplicateRows", duplicateRows);
+            map.put("databaseGroups", databaseGroups);
+            map.put("databaseRows", databaseRows);
+            map.put("elapsedMillis", elapsedMillis);
+            map.put("groups", groupPage);
+            return map;
+        }
+    }
+
+    // Conteo por huella en arreglos de long/int con direccionamiento abierto (conteo 0 = posición libre)
+    private static final class FingerprintCounts {
+        private long[] keys = new long[1 << 16];
+        private int[] counts = new int[1 << 16];
+        private int size;
+
+        void increment(long fingerprint) {
+            if (size * 3 >= keys.length * 2) {
+                grow();
+            }
+            int slot = find(keys, counts, fingerprint);
+            if (counts[slot] == 0) {
+                keys[slot] = fingerprint;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        int get(long fingerprint) {
+            return counts[find(keys, counts, fingerprint)];
+        }
+
+        private static int find(long[] keys, int[] counts, long fingerprint) {
+            int mask = keys.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (counts[slot] != 0 && keys[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = find(keys, counts, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.pullman.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+// Decodificadores de campos que trabajan sobre el rango de caracteres del tokenizador, sin excepciones ni Strings
+// en el caso común. Cualquier valor fuera de la forma habitual pasa a la implementación anterior (basada en
+// DateTimeFormatter, split y BigDecimal), así el resultado es siempre el mismo que antes.
+public final class FieldDecoders {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter ALT_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final LocalTime MIDNIGHT = LocalTime.of(0, 0);
+    private static final LocalTime[] TIMES = new LocalTime[24 * 60];
+    // Dígitos enteros que caben sin desborde en un long
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    // Mayor entero que un double representa exactamente
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+    static {
+        for (int i = 0; i < TIMES.length; i++) {
+            TIMES[i] = LocalTime.of(i / 60, i % 60);
+        }
+        double power = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private FieldDecoders() {
+    }
+
+    // Fechas dd/MM/yyyy o dd-MM-yyyy. Los viajes de un archivo vienen casi siempre agrupados por día,
+    // así que se recuerda la última fecha decodificada (una instancia por importación, segura entre hilos)
+    public static final class DateDecoder {
+        private volatile LastDate last = new LastDate(-1, null);
+
+        // null si el valor no es una fecha válida en ninguno de los dos formatos
+        public LocalDate decode(char[] buf, int start, int end) {
+            if (end - start == 10 && isDigits(buf, start, 2) && isDigits(buf, start + 3, 2) && isDigits(buf, start + 6, 4)) {
+                char separator = buf[start + 2];
+                if ((separator == '/' || separator == '-') && buf[start + 5] == separator) {
+                    int day = digits(buf, start, 2);
+                    int month = digits(buf, start + 3, 2);
+                    int year = digits(buf, start + 6, 4);
+                    int packed = (year * 100 + month) * 100 + day;
+                    LastDate cached = last;
+                    if (cached.packed == packed) {
+                        return cached.date;
+                    }
+                    if (day >= 1 && day <= 31 && month >= 1 && month <= 12 && year >= 1) {
+                        // Igual que DateTimeFormatter en modo SMART: un día 29-31 inexistente pasa al último del mes
+                        LocalDate first = LocalDate.of(year, month, 1);
+                        LocalDate date = first.withDayOfMonth(Math.min(day, first.lengthOfMonth()));
+                        last = new LastDate(packed, date);
+                        return date;
+                    }
+                    return null;
+                }
+            }
+            return legacyDate(new String(buf, start, end - start));
+        }
+    }
+
+    private static final class LastDate {
+        final int packed;
+        final LocalDate date;
+
+        LastDate(int packed, LocalDate date) {
+            this.packed = packed;
+            this.date = date;
+        }
+    }
+
+    // Hora "hh:mm AM/PM"; como antes, cualquier valor que no se pueda interpretar queda en 00:00
+    // (incluida una hora de 24h con sufijo PM, por ejemplo "16:30 PM")
+    public static LocalTime decodeTime(char[] buf, int start, int end) {
+        LocalTime time = decodeTimeOrNull(buf, start, end);
+        return time != null ? time : MIDNIGHT;
+    }
+
+    // Igual que decodeTime, pero null si el valor no se puede interpretar (para informarlo en vez de usar 00:00)
+    public static LocalTime decodeTimeOrNull(char[] buf, int start, int end) {
+        int space = indexOf(buf, start, end, ' ');
+        if (space < 0) {
+            return null;
+        }
+        int colon = indexOf(buf, start, space, ':');
+        int hourDigits = colon - start;
+        if (colon < 0 || hourDigits < 1 || hourDigits > 2 || !isDigits(buf, start, hourDigits)) {
+            return legacyTime(new String(buf, start, end - start));
+        }
+        int minuteStart = colon + 1;
+        int minuteEnd = indexOf(buf, minuteStart, space, ':');
+        if (minuteEnd < 0) {
+            minuteEnd = space;
+        }
+        int minuteDigits = minuteEnd - minuteStart;
+        if (minuteDigits < 1 || minuteDigits > 2 || !isDigits(buf, minuteStart, minuteDigits)) {
+            return legacyTime(new String(buf, start, end - start));
+        }
+        int hour = digits(buf, start, hourDigits);
+        int minute = digits(buf, minuteStart, minuteDigits);
+
+        int suffixStart = space + 1;
+        int suffixEnd = indexOf(buf, suffixStart, end, ' ');
+        if (suffixEnd < 0) {
+            suffixEnd = end;
+        }
+        if (suffixEnd - suffixStart == 2 && (buf[suffixStart + 1] == 'M' || buf[suffixStart + 1] == 'm')) {
+            char first = buf[suffixStart];
+            if ((first == 'P' || first == 'p') && hour != 12) {
+                hour += 12;
+            } else if ((first == 'A' || first == 'a') && hour == 12) {
+                hour = 0;
+            }
+        }
+        return hour < 24 && minute < 60 ? TIMES[hour * 60 + minute] : null;
+    }
+
+    // Entero con signo opcional; null si no es un número entero válido
+    public static Integer decodeInteger(char[] buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        int count = end - i;
+        if (count >= 1 && count <= 9 && isDigits(buf, i, count)) {
+            int value = digits(buf, i, count);
+            return negative ? -value : value;
+        }
+        try {
+            return Integer.parseInt(new String(buf, start, end - start));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Decimal con punto o coma ("12,5" = "12.5"); cero si no es un número
+    public static BigDecimal decodeDecimal(char[] buf, int start, int end) {
+        BigDecimal value = decodeAmount(buf, start, end, false);
+        return value != null ? value : legacyDecimal(new String(buf, start, end - start));
+    }
+
+    // Montos en pesos con separador de miles y decimales con coma ("$1.234.567", "$1.234,50"); cero si no es un número
+    public static BigDecimal decodeCurrency(char[] buf, int start, int end) {
+        BigDecimal value = decodeAmount(buf, start, end, true);
+        return value != null ? value : legacyCurrency(new String(buf, start, end - start));
+    }
+
+    // Ingreso manual de texto libre: se ignora todo lo que no sea dígito, punto o signo menos; cero si no queda un número
+    public static double decodeManualIncome(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        long mantissa = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        boolean negative = false;
+        boolean point = false;
+        boolean any = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0' && !point) {
+                    any = true;
+                    continue;
+                }
+                if (++digitCount > MAX_LONG_DIGITS) {
+                    return legacyManualIncome(value);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    fractionDigits++;
+                }
+                any = true;
+            } else if (c == '.') {
+                if (point) {
+                    return 0; // "1.2.3" no es un número
+                }
+                point = true;
+            } else if (c == '-') {
+                if (any || point || negative) {
+                    return 0; // el signo solo puede ir al comienzo
+                }
+                negative = true;
+            }
+        }
+        if (!any) {
+            return 0;
+        }
+        if (mantissa >= MAX_EXACT_DOUBLE || fractionDigits >= POWERS_OF_TEN.length) {
+            return legacyManualIncome(value);
+        }
+        // Mantisa y potencia exactas en double: la división redondea igual que Double.parseDouble
+        double result = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -result : result;
+    }
+
+    // Signo opcional, dígitos y a lo sumo una parte decimal con coma (o punto si no es moneda).
+    // En moneda se ignoran '$' y los puntos de miles. null si el valor no tiene esa forma.
+    private static BigDecimal decodeAmount(char[] buf, int start, int end, boolean currency) {
+        long unscaled = 0;
+        int digitCount = 0;
+        int scale = -1;
+        boolean negative = false;
+        boolean seenSign = false;
+        for (int i = start; i < end; i++) {
+            char c = buf[i];
+            if (c >= '0' && c <= '9') {
+                if (++digitCount > MAX_LONG_DIGITS) {
+                    return null;
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (currency && (c == '$' || c == '.')) {
+                continue;
+            } else if (c == ',' || (!currency && c == '.')) {
+                if (scale >= 0 || digitCount == 0) {
+                    return null;
+                }
+                scale = 0;
+            } else if ((c == '-' || c == '+') && !seenSign && digitCount == 0) {
+                negative = c == '-';
+                seenSign = true;
+            } else {
+                return null;
+            }
+        }
+        if (digitCount == 0 || scale == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    private static boolean isDigits(char[] buf, int start, int count) {
+        for (int i = start; i < start + count; i++) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(char[] buf, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+        return value;
+    }
+
+    private static int indexOf(char[] buf, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Implementaciones anteriores: solo se usan para valores fuera de la forma habitual
+
+    private static LocalDate legacyDate(String value) {
+        try {
+            return LocalDate.parse(value, DATE_FORMAT);
+        } catch (Exception e) {
+            try {
+                return LocalDate.parse(value, ALT_DATE_FORMAT);
+            } catch (Exception e2) {
+                return null;
+            }
+        }
+    }
+
+    private static LocalTime legacyTime(String timeStr) {
+        try {
+            String[] parts = timeStr.split(" ");
+            String time = parts[0];
+            String ampm = parts[1];
+
+            String[] timeParts = time.split(":");
+            int hour = Integer.parseInt(timeParts[0]);
+            int minute = Integer.parseInt(timeParts[1]);
+
+            if (ampm.equalsIgnoreCase("PM") && hour != 12) {
+                hour += 12;
+            } else if (ampm.equalsIgnoreCase("AM") && hour == 12) {
+                hour = 0;
+            }
+
+            return LocalTime.of(hour, minute);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal legacyDecimal(String value) {
+        try {
+            return new BigDecimal(value.replace(",", "."));
+        } catch (Exception e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private static BigDecimal legacyCurrency(String value) {
+        try {
+            return new BigDecimal(value.replace("$", "").replace(".", "").replace(",", "."));
+        } catch (Exception e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private static double legacyManualIncome(String value) {
+        try {
+            return Double.parseDouble(value.replaceAll("[^\\d.-]", ""));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
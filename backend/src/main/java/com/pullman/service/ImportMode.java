@@ -0,0 +1,9 @@
+package com.pullman.service;
+
+// Forma de escribir los viajes importados en la base de datos
+public enum ImportMode {
+    // Entidades JPA guardadas por lotes con saveAll
+    JPA,
+    // COPY de PostgreSQL a una tabla de staging UNLOGGED y un INSERT ... ON CONFLICT final
+    COPY
+}
@@ -0,0 +1,162 @@
+package com.pullman.service;
+
+import com.pullman.domain.ImportRowResult;
+import com.pullman.repository.ImportRowResultRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Resultados por línea de las importaciones: se escriben por lotes con JDBC y se leen paginados o en streaming
+@Service
+public class ImportResultService {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO import_row_results (import_id, line_number, outcome, trip_id, message, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int MESSAGE_MAX_LENGTH = 500;
+    private static final int STREAM_FETCH_SIZE = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ImportRowResultRepository importRowResultRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${pullman.import.results-retention-days:7}")
+    private int retentionDays;
+
+    // Si hay una transacción en curso (por ejemplo la del lote de viajes) se escribe dentro de ella
+    public void record(List<ImportRowResult> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows, INSERT_BATCH_SIZE, (ps, row) -> {
+            ps.setString(1, row.getImportId());
+            ps.setLong(2, row.getLineNumber());
+            ps.setString(3, row.getOutcome().name());
+            if (row.getTripId() != null) {
+                ps.setLong(4, row.getTripId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            String message = row.getMessage();
+            if (message != null && message.length() > MESSAGE_MAX_LENGTH) {
+                message = message.substring(0, MESSAGE_MAX_LENGTH);
+            }
+            ps.setString(5, message);
+            ps.setTimestamp(6, now);
+        });
+    }
+
+    public Page<ImportRowResult> findResults(String importId, ImportRowResult.Outcome outcome, Pageable pageable) {
+        return outcome != null
+            ? importRowResultRepository.findByImportIdAndOutcome(importId, outcome, pageable)
+            : importRowResultRepository.findByImportId(importId, pageable);
+    }
+
+    public Map<String, Long> countByOutcome(String importId) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ImportRowResult.Outcome outcome : ImportRowResult.Outcome.values()) {
+            counts.put(outcome.name(), 0L);
+        }
+        for (Object[] row : importRowResultRepository.countByOutcome(importId)) {
+            counts.put(((ImportRowResult.Outcome) row[0]).name(), (Long) row[1]);
+        }
+        return counts;
+    }
+
+    // Escribe los resultados como CSV leyendo con cursor (fetch size), sin cargar todo en memoria
+    public void writeCsv(String importId, ImportRowResult.Outcome outcome, Writer out) {
+        String sql = "SELECT line_number, outcome, trip_id, message FROM import_row_results WHERE import_id = ?" +
+            (outcome != null ? " AND outcome = ?" : "") + " ORDER BY line_number, id";
+        try {
+            out.write("line_number,outcome,trip_id,message\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // En PostgreSQL el cursor solo se usa con autocommit desactivado
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            ps.setString(1, importId);
+            if (outcome != null) {
+                ps.setString(2, outcome.name());
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                out.write(Long.toString(rs.getLong(1)));
+                out.write(',');
+                out.write(rs.getString(2));
+                out.write(',');
+                long tripId = rs.getLong(3);
+                if (!rs.wasNull()) {
+                    out.write(Long.toString(tripId));
+                }
+                out.write(',');
+                String message = rs.getString(4);
+                if (message != null) {
+                    out.write('"');
+                    out.write(message.replace("\"", "\"\""));
+                    out.write('"');
+                }
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    // Se llama al iniciar cada importación para no acumular resultados antiguos
+    public void purgeExpired() {
+        int deleted = importRowResultRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            System.out.println("Resultados de importación eliminados por antigüedad: " + deleted);
+        }
+    }
+
+    // Acumula resultados de filas y los escribe cada INSERT_BATCH_SIZE; solo lo usa el hilo de la importación
+    public Buffer buffer(String importId) {
+        return new Buffer(importId);
+    }
+
+    public class Buffer {
+        private final String importId;
+        private final List<ImportRowResult> rows = new ArrayList<>();
+
+        private Buffer(String importId) {
+            this.importId = importId;
+        }
+
+        public void add(long lineNumber, ImportRowResult.Outcome outcome, Long tripId, String message) {
+            rows.add(new ImportRowResult(importId, lineNumber, outcome, tripId, message));
+            if (rows.size() >= INSERT_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            record(rows);
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.pullman.service;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+// Descompresión del cuerpo de una carga de CSV según su Content-Encoding (identity, gzip o zstd)
+public final class ImportStreams {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ImportStreams() {
+    }
+
+    public static InputStream decode(InputStream body, String encoding) throws IOException {
+        String normalized = encoding == null ? "" : encoding.trim().toLowerCase(Locale.ROOT);
+        InputStream buffered = new BufferedInputStream(body, BUFFER_SIZE);
+        switch (normalized) {
+            case "":
+            case "identity":
+                return buffered;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(buffered, BUFFER_SIZE);
+            case "zstd":
+                return new BufferedInputStream(new ZstdInputStream(buffered), BUFFER_SIZE);
+            default:
+                throw new IllegalArgumentException("Codificación no soportada: " + encoding + " (usa gzip, zstd o identity)");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.pullman.service;
+
+import com.pullman.util.NameNormalizer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Diccionario de textos de una importación para columnas de vocabulario chico (ciudades, rutas, empresas, estados...).
+// Se consulta directamente con el rango de caracteres del tokenizador: si el valor ya está, no se crea ningún String.
+// Tabla de direccionamiento abierto de tamaño fijo, segura para el parseo en paralelo por tramos;
+// al llegar al máximo de entradas los valores nuevos se crean sin guardarse.
+public class ImportStringDictionary {
+
+    private static final int MAX_PROBES = 8;
+    // Cabecera de String + cabecera del arreglo de bytes (compact strings), alineadas a 8 bytes
+    private static final int STRING_OVERHEAD = 24 + 16;
+
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+    private final int maxEntries;
+    private final AtomicInteger entries = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+
+    public ImportStringDictionary(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 2 - 1)) << 1;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.maxEntries = maxEntries;
+    }
+
+    public String intern(char[] chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (hash + probe) & mask;
+            String candidate = table.get(slot);
+            if (candidate == null) {
+                String value = new String(chars, start, end - start);
+                if (entries.get() >= maxEntries) {
+                    misses.increment();
+                    return value;
+                }
+                if (table.compareAndSet(slot, null, value)) {
+                    entries.incrementAndGet();
+                    misses.increment();
+                    return value;
+                }
+                // Otro hilo ocupó la posición: puede ser el mismo valor
+                candidate = table.get(slot);
+            }
+            if (matches(candidate, chars, start, end)) {
+                hits.increment();
+                bytesSaved.add(STRING_OVERHEAD + ((end - start + 7) & ~7));
+                return candidate;
+            }
+        }
+        misses.increment();
+        return new String(chars, start, end - start);
+    }
+
+    // Forma normalizada (NameNormalizer) calculada una vez por valor distinto del diccionario
+    public String normalized(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (normalized.size() >= maxEntries) {
+            String cached = normalized.get(value);
+            return cached != null ? cached : NameNormalizer.normalize(value);
+        }
+        return normalized.computeIfAbsent(value, NameNormalizer::normalize);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("entries", entries.get());
+        map.put("maxEntries", maxEntries);
+        map.put("hits", hits.sum());
+        map.put("misses", misses.sum());
+        map.put("estimatedBytesSaved", bytesSaved.sum());
+        return map;
+    }
+
+    private static int hash(char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String candidate, char[] chars, int start, int end) {
+        int length = end - start;
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package com.pullman.service;
+
+import com.pullman.util.NameNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Completa las columnas normalizadas de viajes y rutas guardados antes de que existieran.
+// Corre una vez al arrancar, como primer paso del arranque de ProductionAggregateService (los totales cruzan viajes
+// y rutas por estas columnas). Se normaliza con NameNormalizer (la misma rutina que al guardar) cada valor distinto,
+// y se actualizan en bloque todas las filas que lo tienen.
+@Component
+public class NormalizedKeyBackfill {
+
+    // Valores distintos por sentencia UPDATE
+    private static final int VALUES_PER_UPDATE = 1000;
+
+    // Tabla, columna original y columna normalizada
+    private static final String[][] COLUMNS = {
+        {"trips", "origin", "origin_norm"},
+        {"trips", "destination", "destination_norm"},
+        {"trips", "company_name", "company_norm"},
+        {"routes", "origen", "origen_norm"},
+        {"routes", "destino", "destino_norm"}
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${pullman.normalized-keys.backfill:true}")
+    private boolean enabled;
+
+    // Devuelve las empresas y decenas cuyos viajes cambiaron de tramo normalizado (los de las filas completadas y los
+    // de los tramos de las rutas completadas): sus totales se calcularon sin ese cruce. Un error se informa y deja
+    // las columnas restantes para el próximo arranque
+    public Set<ProductionAggregateService.Key> run() {
+        Set<ProductionAggregateService.Key> touched = new HashSet<>();
+        if (!enabled) {
+            return touched;
+        }
+        long started = System.currentTimeMillis();
+        long total = 0;
+        try {
+            for (String[] column : COLUMNS) {
+                total += backfill(column[0], column[1], column[2], touched);
+            }
+            System.out.println("Columnas normalizadas completadas: " + total + " filas en " + (System.currentTimeMillis() - started) + " ms");
+        } catch (RuntimeException e) {
+            System.err.println("Error completando columnas normalizadas: " + e.getMessage());
+        }
+        return touched;
+    }
+
+    private long backfill(String table, String column, String normColumn, Set<ProductionAggregateService.Key> touched) {
+        List<String> values = jdbcTemplate.queryForList(
+            "SELECT DISTINCT " + column + " FROM " + table + " WHERE " + normColumn + " IS NULL AND " + column + " IS NOT NULL",
+            String.class);
+        if (values.isEmpty()) {
+            return 0;
+        }
+        // Un solo recorrido por bloque: la tabla se cruza con los pares (valor, normalizado) enviados como arreglos.
+        // Las filas actualizadas vuelven agrupadas: empresa y decena de los viajes, o id de las rutas
+        String update = "UPDATE " + table + " t SET " + normColumn + " = m.norm " +
+            "FROM unnest(CAST(? AS text[]), CAST(? AS text[])) AS m(value, norm) " +
+            "WHERE t." + column + " = m.value AND t." + normColumn + " IS NULL";
+        boolean trips = table.equals("trips");
+        String sql = trips
+            ? "WITH u AS (" + update + " RETURNING t.company_name, t.travel_date) " +
+              "SELECT t.company_name, " + ProductionAggregateService.DECENA_SQL + ", COUNT(*) FROM u t " +
+              "WHERE t.company_name IS NOT NULL AND t.company_name <> '' AND t.travel_date IS NOT NULL GROUP BY 1, 2 " +
+              "UNION ALL SELECT NULL, NULL, COUNT(*) FROM u t WHERE t.company_name IS NULL OR t.company_name = '' OR t.travel_date IS NULL"
+            : "WITH u AS (" + update + " RETURNING t.id) SELECT NULL, CAST(t.id AS text), 1 FROM u t";
+        Set<Long> routeIds = new HashSet<>();
+        long updated = 0;
+        for (int from = 0; from < values.size(); from += VALUES_PER_UPDATE) {
+            List<String> chunk = values.subList(from, Math.min(values.size(), from + VALUES_PER_UPDATE));
+            List<String> normalized = new ArrayList<>(chunk.size());
+            for (String value : chunk) {
+                normalized.add(NameNormalizer.normalize(value));
+            }
+            updated += jdbcTemplate.execute((Connection connection) -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    Array valueArray = connection.createArrayOf("text", chunk.toArray());
+                    Array normArray = connection.createArrayOf("text", normalized.toArray());
+                    ps.setArray(1, valueArray);
+                    ps.setArray(2, normArray);
+                    long rows = 0;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            rows += rs.getLong(3);
+                            if (rs.getString(1) != null) {
+                                touched.add(new ProductionAggregateService.Key(rs.getString(1), rs.getString(2)));
+                            } else if (!trips) {
+                                routeIds.add(Long.parseLong(rs.getString(2)));
+                            }
+                        }
+                    }
+                    return rows;
+                }
+            });
+        }
+        if (!routeIds.isEmpty()) {
+            // Los viajes de los tramos de estas rutas (ya con sus columnas normalizadas, que se completan antes)
+            jdbcTemplate.execute((Connection connection) -> {
+                try (PreparedStatement ps = connection.prepareStatement(ProductionAggregateService.routeKeysSql("r.id = ANY(?)"))) {
+                    Array ids = connection.createArrayOf("bigint", routeIds.toArray());
+                    ps.setArray(1, ids);
+                    ps.setArray(2, ids);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            touched.add(new ProductionAggregateService.Key(rs.getString(1), rs.getString(2)));
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        System.out.println("Normalizado " + table + "." + column + ": " + values.size() + " valores distintos, " + updated + " filas");
+        return updated;
+    }
+}
@@ -0,0 +1,441 @@
+package com.pullman.service;
+
+import com.pullman.util.NameNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Totales por empresa y decena (production_aggregates) mantenidos por diferencias en cada escritura de viajes.
+// Quien escribe bloquea los viajes existentes que va a cambiar (FOR UPDATE, en orden de id), lee su aporte antes
+// y después del cambio y aplica la diferencia neta con un upsert por clave, en el orden de las claves: otra escritura
+// de los mismos viajes espera al commit y lee el aporte ya actualizado, y dos transacciones que tocan las mismas
+// empresas nunca se bloquean en orden cruzado. La ganancia usa la zona vigente de cada tramo, con el mismo cruce
+// por columnas normalizadas que la generación en modo SQL.
+@Service
+public class ProductionAggregateService {
+
+    // Decena "<1|2|3><MM><yyyy>", igual que CsvImportService.calcularDecena
+    static final String DECENA_SQL =
+        "CAST(CASE WHEN EXTRACT(DAY FROM t.travel_date) > 20 THEN 3 WHEN EXTRACT(DAY FROM t.travel_date) > 10 THEN 2 ELSE 1 END AS text)" +
+        " || to_char(t.travel_date, 'MMYYYY')";
+
+    // Ingreso del viaje; el ingreso manual se limpia igual que FieldDecoders.decodeManualIncome
+    private static final String INGRESO_SQL =
+        "(COALESCE(t.branch_revenue, 0) + COALESCE(t.road_revenue, 0) + " +
+        "CASE WHEN regexp_replace(t.manual_income, '[^0-9.-]', '', 'g') ~ '^-{0,1}([0-9]+[.]{0,1}[0-9]*|[.][0-9]+)$' " +
+        "THEN CAST(regexp_replace(t.manual_income, '[^0-9.-]', '', 'g') AS numeric) ELSE 0 END)";
+
+    // Zona del tramo: ruta directa o, si no hay, la inversa (la de menor id entre repetidas)
+    private static final String ZONE_JOIN =
+        "LEFT JOIN LATERAL (SELECT r.zona_id FROM routes r " +
+        "WHERE (r.origen_norm = t.origin_norm AND r.destino_norm = t.destination_norm) " +
+        "OR (r.origen_norm = t.destination_norm AND r.destino_norm = t.origin_norm) " +
+        "ORDER BY CASE WHEN r.origen_norm = t.origin_norm AND r.destino_norm = t.destination_norm THEN 0 ELSE 1 END, r.id " +
+        "LIMIT 1) ruta ON true " +
+        "LEFT JOIN zones z ON z.id = ruta.zona_id ";
+
+    private static final String CONTRIBUTION_SELECT =
+        "SELECT t.company_name, " + DECENA_SQL + " AS decena, COUNT(*), SUM(" + INGRESO_SQL + "), " +
+        "COALESCE(SUM(" + INGRESO_SQL + " * CAST(z.porcentaje AS numeric) / 100), 0) " +
+        "FROM trips t " + ZONE_JOIN;
+
+    private static final String GROUPING = " AND t.company_name IS NOT NULL AND t.company_name <> '' GROUP BY 1, 2";
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO production_aggregates AS a (company_name, decena, trip_count, revenue, ganancia, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, LOCALTIMESTAMP) " +
+        "ON CONFLICT (company_name, decena) DO UPDATE SET trip_count = a.trip_count + EXCLUDED.trip_count, " +
+        "revenue = a.revenue + EXCLUDED.revenue, ganancia = a.ganancia + EXCLUDED.ganancia, updated_at = EXCLUDED.updated_at";
+
+    // Igual que UPSERT_SQL pero reemplazando el total en lugar de sumarle la diferencia
+    private static final String REPLACE_SQL =
+        "INSERT INTO production_aggregates AS a (company_name, decena, trip_count, revenue, ganancia, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, LOCALTIMESTAMP) " +
+        "ON CONFLICT (company_name, decena) DO UPDATE SET trip_count = EXCLUDED.trip_count, " +
+        "revenue = EXCLUDED.revenue, ganancia = EXCLUDED.ganancia, updated_at = EXCLUDED.updated_at";
+
+    // Empresas y decenas con viajes en un tramo de las rutas de una zona (en cualquier sentido)
+    private static final String ZONE_KEYS_SQL = routeKeysSql("r.zona_id = ?");
+
+    // Lo mismo para una ruta, con el origen y destino que tiene guardados
+    private static final String ROUTE_KEYS_SQL = routeKeysSql("r.id = ?");
+
+    // Cada sentido por separado para que cada cruce use los índices de columnas normalizadas
+    static String routeKeysSql(String routeFilter) {
+        return "SELECT t.company_name, " + DECENA_SQL + " FROM trips t JOIN routes r " +
+            "ON r.origen_norm = t.origin_norm AND r.destino_norm = t.destination_norm " +
+            "WHERE " + routeFilter + " AND t.company_name IS NOT NULL AND t.company_name <> '' " +
+            "UNION " +
+            "SELECT t.company_name, " + DECENA_SQL + " FROM trips t JOIN routes r " +
+            "ON r.origen_norm = t.destination_norm AND r.destino_norm = t.origin_norm " +
+            "WHERE " + routeFilter + " AND t.company_name IS NOT NULL AND t.company_name <> ''";
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    @Autowired
+    private NormalizedKeyBackfill normalizedKeyBackfill;
+    @Autowired
+    private ProductionService productionService;
+
+    @Value("${pullman.production.aggregates.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+    @Value("${pullman.production.aggregates.start-attempts:5}")
+    private int startAttempts;
+    @Value("${pullman.production.aggregates.start-retry-seconds:30}")
+    private long startRetrySeconds;
+
+    // Los totales reflejan todos los viajes guardados (se recalcularon al menos una vez)
+    private volatile boolean ready;
+    private volatile String startState = "STARTING";
+    private volatile int startAttemptsMade;
+    private volatile String startError;
+
+    // Empresa y decena de un total
+    public static final class Key implements Comparable<Key> {
+        private final String companyName;
+        private final String decena;
+
+        public Key(String companyName, String decena) {
+            this.companyName = companyName;
+            this.decena = decena;
+        }
+
+        public String getCompanyName() {
+            return companyName;
+        }
+
+        public String getDecena() {
+            return decena;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byDecena = decena.compareTo(other.decena);
+            return byDecena != 0 ? byDecena : companyName.compareTo(other.companyName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return companyName.equals(key.companyName) && decena.equals(key.decena);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(companyName, decena);
+        }
+
+        @Override
+        public String toString() {
+            return companyName + "@" + decena;
+        }
+    }
+
+    // Aporte de un grupo de viajes a un total
+    public static final class Delta {
+        long tripCount;
+        BigDecimal revenue = BigDecimal.ZERO;
+        BigDecimal ganancia = BigDecimal.ZERO;
+
+        boolean isZero() {
+            return tripCount == 0 && revenue.signum() == 0 && ganancia.signum() == 0;
+        }
+    }
+
+    // Bloquea hasta el fin de la transacción los viajes que cumplen el filtro (condición SQL sobre el alias t).
+    // Va antes de leer su aporte anterior, para que nadie los cambie entre esa lectura y el upsert de la diferencia
+    public void lockTrips(Connection connection, String tripFilter, Object... params) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT t.id FROM trips t WHERE " + tripFilter + " ORDER BY t.id FOR UPDATE")) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // Recorrer el resultado toma los bloqueos
+                }
+            }
+        }
+    }
+
+    // Bloquea viajes puntuales; dentro de la transacción en curso
+    public void lockTripsById(Collection<Long> tripIds) {
+        if (tripIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((Connection connection) -> {
+            lockTrips(connection, "t.id = ANY(?)", connection.createArrayOf("bigint", tripIds.toArray()));
+            return null;
+        });
+    }
+
+    // Aportes actuales de los viajes que cumplen el filtro (condición SQL sobre el alias t)
+    public Map<Key, Delta> contributions(Connection connection, String tripFilter, Object... params) throws SQLException {
+        Map<Key, Delta> result = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(CONTRIBUTION_SELECT + "WHERE " + tripFilter + GROUPING)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Delta delta = new Delta();
+                    delta.tripCount = rs.getLong(3);
+                    delta.revenue = rs.getBigDecimal(4);
+                    delta.ganancia = rs.getBigDecimal(5);
+                    result.put(new Key(rs.getString(1), rs.getString(2)), delta);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Aportes actuales de viajes puntuales; dentro de la transacción en curso
+    public Map<Key, Delta> contributionsOf(Collection<Long> tripIds) {
+        if (tripIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return jdbcTemplate.execute((Connection connection) ->
+            contributions(connection, "t.id = ANY(?)", connection.createArrayOf("bigint", tripIds.toArray())));
+    }
+
+    // Aplica después - antes a los totales y devuelve las claves que cambiaron
+    public Set<Key> applyDifference(Connection connection, Map<Key, Delta> before, Map<Key, Delta> after) throws SQLException {
+        TreeMap<Key, Delta> net = new TreeMap<>();
+        after.forEach((key, delta) -> merge(net, key, delta, 1));
+        before.forEach((key, delta) -> merge(net, key, delta, -1));
+        net.values().removeIf(Delta::isZero);
+        if (net.isEmpty()) {
+            return Set.of();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<Key, Delta> entry : net.entrySet()) {
+                ps.setString(1, entry.getKey().companyName);
+                ps.setString(2, entry.getKey().decena);
+                ps.setLong(3, entry.getValue().tripCount);
+                ps.setBigDecimal(4, entry.getValue().revenue);
+                ps.setBigDecimal(5, entry.getValue().ganancia);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return Set.copyOf(net.keySet());
+    }
+
+    // Dentro de la transacción en curso; las decenas tocadas se descartan de los snapshots en memoria al confirmarla
+    public Set<Key> applyDifference(Map<Key, Delta> before, Map<Key, Delta> after) {
+        decenaSnapshotCache.invalidate(decenasOf(before, after));
+        return jdbcTemplate.execute((Connection connection) -> applyDifference(connection, before, after));
+    }
+
+    // Decenas con algún viaje antes o después del cambio, aunque sus totales no se muevan
+    // (un viaje que pasa a otra zona con el mismo porcentaje)
+    public Set<String> decenasOf(Map<Key, Delta> before, Map<Key, Delta> after) {
+        Set<String> decenas = new HashSet<>();
+        before.keySet().forEach(key -> decenas.add(key.decena));
+        after.keySet().forEach(key -> decenas.add(key.decena));
+        return decenas;
+    }
+
+    // Empresas y decenas cuyos totales dependen del porcentaje de la zona
+    public Set<Key> keysOnZoneRoutes(Long zoneId) {
+        Set<Key> keys = new HashSet<>();
+        jdbcTemplate.query(ZONE_KEYS_SQL, rs -> {
+            keys.add(new Key(rs.getString(1), rs.getString(2)));
+        }, zoneId, zoneId);
+        return keys;
+    }
+
+    // Empresas y decenas cuya zona depende de la ruta (su tramo en cualquier sentido); con el tramo guardado en la
+    // base, así antes de confirmar un cambio de la ruta se obtiene el tramo anterior
+    public Set<Key> keysOnRoute(Long routeId) {
+        Set<Key> keys = new HashSet<>();
+        jdbcTemplate.query(ROUTE_KEYS_SQL, rs -> {
+            keys.add(new Key(rs.getString(1), rs.getString(2)));
+        }, routeId, routeId);
+        return keys;
+    }
+
+    // Vuelve a sumar desde trips los totales de las claves indicadas y los reemplaza; dentro de la transacción en curso.
+    // Sirve cuando lo que cambió no son los viajes sino el cálculo (el porcentaje o las rutas de una zona), por lo que no hay
+    // un antes y un después de los viajes con que sacar la diferencia
+    public void recompute(Collection<Key> keys) {
+        Map<String, Set<String>> companiesByDecena = new TreeMap<>();
+        for (Key key : keys) {
+            companiesByDecena.computeIfAbsent(key.decena, d -> new HashSet<>()).add(key.companyName);
+        }
+        jdbcTemplate.execute((Connection connection) -> {
+            TreeMap<Key, Delta> totals = new TreeMap<>();
+            for (Map.Entry<String, Set<String>> entry : companiesByDecena.entrySet()) {
+                LocalDate[] range = CsvImportService.rangoDecena(entry.getKey());
+                Set<String> norms = new HashSet<>();
+                for (String companyName : entry.getValue()) {
+                    norms.add(NameNormalizer.normalize(companyName));
+                }
+                // company_norm acota por el índice (empresa, fecha); company_name deja solo las empresas pedidas
+                contributions(connection,
+                    "t.travel_date BETWEEN ? AND ? AND t.company_norm = ANY(?) AND t.company_name = ANY(?)",
+                    Date.valueOf(range[0]), Date.valueOf(range[1]),
+                    connection.createArrayOf("text", norms.toArray()),
+                    connection.createArrayOf("text", entry.getValue().toArray()))
+                    .forEach((key, delta) -> {
+                        if (entry.getValue().contains(key.companyName)) {
+                            totals.put(key, delta);
+                        }
+                    });
+            }
+            try (PreparedStatement ps = connection.prepareStatement(REPLACE_SQL)) {
+                for (Map.Entry<Key, Delta> entry : totals.entrySet()) {
+                    ps.setString(1, entry.getKey().companyName);
+                    ps.setString(2, entry.getKey().decena);
+                    ps.setLong(3, entry.getValue().tripCount);
+                    ps.setBigDecimal(4, entry.getValue().revenue);
+                    ps.setBigDecimal(5, entry.getValue().ganancia);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            // Una clave sin viajes ya no tiene total
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM production_aggregates WHERE company_name = ? AND decena = ?")) {
+                for (Key key : keys) {
+                    if (!totals.containsKey(key)) {
+                        ps.setString(1, key.companyName);
+                        ps.setString(2, key.decena);
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    // Espera a las escrituras de viajes en curso y frena las nuevas hasta que termine la transacción actual
+    public void lockTrips() {
+        jdbcTemplate.execute("LOCK TABLE trips IN SHARE MODE");
+    }
+
+    // Sin viajes no queda ningún total
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM production_aggregates");
+        decenaSnapshotCache.invalidateAll();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Estado del arranque: READY con los totales completos; STARTING mientras se preparan o reintentan;
+    // FAILED si se agotaron los intentos (hasta un rebuildAll manual las producciones se generan desde los viajes)
+    public Map<String, Object> getStartStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", ready ? "READY" : startState);
+        status.put("attempts", startAttemptsMade);
+        status.put("lastError", startError);
+        return status;
+    }
+
+    // Al arrancar, en un solo hilo y en orden: primero se completan las columnas normalizadas (NormalizedKeyBackfill),
+    // porque los totales cruzan viajes y rutas por ellas; después, si la tabla está vacía (o se pidió), se recalculan
+    // todos los totales desde los viajes y, si no, solo los de las empresas y decenas que el relleno cambió.
+    // Un error se reintenta cada start-retry-seconds hasta start-attempts veces y queda en getStartStatus
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(() -> {
+            Set<Key> touched = normalizedKeyBackfill.run();
+            int attempts = Math.max(1, startAttempts);
+            for (int attempt = 1; attempt <= attempts; attempt++) {
+                startAttemptsMade = attempt;
+                try {
+                    prepare(touched);
+                    startError = null;
+                    return;
+                } catch (RuntimeException e) {
+                    startError = e.getMessage();
+                    System.err.println("Error preparando totales de producción (intento " + attempt + " de " + attempts + "): " + e.getMessage());
+                }
+                if (attempt < attempts) {
+                    try {
+                        Thread.sleep(startRetrySeconds * 1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            startState = "FAILED";
+        }, "production-aggregates");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void prepare(Set<Key> touched) {
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT 1 FROM production_aggregates LIMIT 1) a", Integer.class);
+        if (rebuildOnStartup || rows == null || rows == 0) {
+            rebuildAll();
+            return;
+        }
+        // Los totales de la tabla están completos salvo los que se sumaron sin las columnas normalizadas
+        if (!touched.isEmpty()) {
+            long started = System.currentTimeMillis();
+            transactionTemplate.executeWithoutResult(status -> {
+                lockTrips();
+                recompute(touched);
+                productionService.upsertFromAggregates(touched);
+            });
+            System.out.println("Totales de producción recalculados tras completar columnas normalizadas: " + touched.size() +
+                " empresas y decenas en " + (System.currentTimeMillis() - started) + " ms");
+        }
+        ready = true;
+    }
+
+    // Recalcula todo desde trips. El bloqueo SHARE espera a las escrituras en curso (sus diferencias quedan
+    // reemplazadas por el recálculo) y frena las nuevas hasta terminar, así no se pierde ni se duplica ningún aporte
+    public void rebuildAll() {
+        long started = System.currentTimeMillis();
+        Integer count = transactionTemplate.execute(status -> {
+            lockTrips();
+            jdbcTemplate.update("DELETE FROM production_aggregates");
+            return jdbcTemplate.update(
+                "INSERT INTO production_aggregates (company_name, decena, trip_count, revenue, ganancia, updated_at) " +
+                "SELECT c.*, LOCALTIMESTAMP FROM (" + CONTRIBUTION_SELECT + "WHERE true" + GROUPING + ") c");
+        });
+        ready = true;
+        System.out.println("Totales de producción recalculados: " + count + " empresas y decenas en " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    private static void merge(Map<Key, Delta> net, Key key, Delta delta, int sign) {
+        Delta total = net.computeIfAbsent(key, k -> new Delta());
+        total.tripCount += sign * delta.tripCount;
+        total.revenue = sign > 0 ? total.revenue.add(delta.revenue) : total.revenue.subtract(delta.revenue);
+        total.ganancia = sign > 0 ? total.ganancia.add(delta.ganancia) : total.ganancia.subtract(delta.ganancia);
+    }
+}
@@ -0,0 +1,12 @@
+package com.pullman.service;
+
+// Forma de sumar la ganancia de toda una decena al terminar una importación, mientras los totales de
+// production_aggregates se recalculan al arrancar (después se leen de ahí)
+public enum ProductionGenerationMode {
+    // Se cargan los viajes de la decena como entidades y se suman en memoria
+    ENTITIES,
+    // Una sola consulta GROUP BY devuelve la ganancia por empresa; no se cargan viajes
+    SQL,
+    // Se suma sobre el snapshot columnar de la decena (DecenaSnapshotCache), compartido con reportes y simulaciones
+    SNAPSHOT
+}
@@ -3,17 +3,27 @@ package com.pullman.service;
 import com.pullman.domain.Production;
 import com.pullman.domain.Trip;
 import com.pullman.domain.Zone;
-import com.pullman.domain.Route;
 import com.pullman.domain.Entrepreneur;
+import com.pullman.domain.ProductionAggregate;
+import com.pullman.repository.ProductionAggregateRepository;
 import com.pullman.repository.ProductionRepository;
+import com.pullman.repository.TripRepository;
+import com.pullman.repository.ZoneRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,6 +34,24 @@ public class ProductionService {
     @Autowired
     private com.pullman.repository.EntrepreneurRepository entrepreneurRepository;
 
+    @Autowired
+    private TripRepository tripRepository;
+
+    @Autowired
+    private RouteZoneIndex routeZoneIndex;
+
+    @Autowired
+    private ProductionAggregateRepository productionAggregateRepository;
+
+    @Autowired
+    private ZoneRepository zoneRepository;
+
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    @Value("${pullman.production.generation-mode:SQL}")
+    private ProductionGenerationMode generationMode;
+
     public Page<Production> findAll(Pageable pageable) {
         return productionRepository.findAll(pageable);
     }
@@ -84,102 +112,210 @@ public class ProductionService {
         return productionRepository.findByEntrepreneurId(entrepreneurId);
     }
 
-    // Método optimizado para generar producciones para una decena específica
-    public int generateProductionsForDecena(String decena, List<Trip> trips, List<Route> routes, List<Zone> zones, List<Entrepreneur> entrepreneurs) {
-        // Crear mapa de empresarios por nombre para acceso O(1)
-        Map<String, Entrepreneur> entrepreneurMap = entrepreneurs.stream()
-            .collect(Collectors.toMap(Entrepreneur::getNombre, e -> e, (existing, replacement) -> existing));
-        
-        // Crear mapa de rutas por origen-destino para acceso O(1)
-        Map<String, Route> routeMap = routes.stream()
-            .collect(Collectors.toMap(
-                route -> route.getOrigen() + "->" + route.getDestino(),
-                route -> route,
-                (existing, replacement) -> existing
-            ));
-        
-        // Agrupar viajes por empresario de manera más eficiente
-        Map<String, List<Trip>> tripsByEntrepreneur = trips.stream()
-            .filter(trip -> trip.getCompanyName() != null && !trip.getCompanyName().isEmpty())
-            .collect(Collectors.groupingBy(Trip::getCompanyName));
-        
-        int generatedCount = 0;
-        
-        for (Map.Entry<String, List<Trip>> entry : tripsByEntrepreneur.entrySet()) {
-            String entrepreneurName = entry.getKey();
-            List<Trip> tripsForEntrepreneur = entry.getValue();
-            
-            // Calcular totales de manera más eficiente
-            double totalIngresos = 0;
-            double totalGanancia = 0;
-            
-            for (Trip trip : tripsForEntrepreneur) {
-                double branchRevenue = trip.getBranchRevenue() != null ? trip.getBranchRevenue().doubleValue() : 0;
-                double roadRevenue = trip.getRoadRevenue() != null ? trip.getRoadRevenue().doubleValue() : 0;
-                double manualIncome = parseManualIncome(trip.getManualIncome());
-                
-                double tripTotal = branchRevenue + roadRevenue + manualIncome;
-                totalIngresos += tripTotal;
-                
-                // Buscar zona de manera más eficiente
-                Zone zone = findZoneForTripOptimized(trip, routeMap);
-                if (zone != null) {
-                    totalGanancia += tripTotal * (zone.getPorcentaje() / 100.0);
-                }
+    // Empresarios por nombre, creando los que aún no existen. Al terminar una importación se llama en una transacción
+    // que se confirma antes de repartir las decenas: las que se actualizan a la vez solo leen el mapa (no se puede modificar)
+    public Map<String, Entrepreneur> prepareEntrepreneurs(Collection<String> companyNames) {
+        Map<String, Entrepreneur> entrepreneurMap = new HashMap<>();
+        if (companyNames.isEmpty()) {
+            return Map.of();
+        }
+        for (Entrepreneur entrepreneur : entrepreneurRepository.findByNombreIn(companyNames)) {
+            if (entrepreneur.getNombre() != null) {
+                entrepreneurMap.putIfAbsent(entrepreneur.getNombre(), entrepreneur);
+            }
+        }
+        for (String name : companyNames) {
+            if (!entrepreneurMap.containsKey(name)) {
+                Entrepreneur entrepreneur = new Entrepreneur();
+                entrepreneur.setNombre(name);
+                entrepreneurMap.put(name, entrepreneurRepository.save(entrepreneur));
+            }
+        }
+        return Map.copyOf(entrepreneurMap);
+    }
+
+    public ProductionGenerationMode getGenerationMode() {
+        return generationMode;
+    }
+
+    // Ganancia por empresa de toda la decena, calculada desde los viajes según pullman.production.generation-mode.
+    // Se usa mientras los totales de production_aggregates aún no están completos (recálculo al arrancar)
+    public Map<String, Double> gananciaForDecena(String decena) {
+        Map<String, Double> gananciaByCompany = new HashMap<>();
+        if (generationMode == ProductionGenerationMode.SNAPSHOT) {
+            DecenaSnapshot snapshot = decenaSnapshotCache.get(decena);
+            double[] ganancia = snapshot.gananciaByCompany(snapshot.zonePercentages(currentZonePercentages()));
+            for (int company = 0; company < snapshot.companyCount(); company++) {
+                gananciaByCompany.put(snapshot.companyName(company), ganancia[company]);
+            }
+            return gananciaByCompany;
+        }
+        LocalDate[] range = CsvImportService.rangoDecena(decena);
+        if (generationMode == ProductionGenerationMode.SQL) {
+            // La base de datos devuelve una fila por empresa con sus ingresos y su ganancia ya sumados
+            for (Object[] row : tripRepository.sumRevenueAndProfitByCompanyBetween(range[0], range[1])) {
+                gananciaByCompany.put((String) row[0], row[2] != null ? ((Number) row[2]).doubleValue() : 0);
+            }
+            return gananciaByCompany;
+        }
+        for (Trip trip : tripRepository.findByTravelDateBetween(range[0], range[1])) {
+            if (trip.getCompanyName() == null || trip.getCompanyName().isEmpty()) {
+                continue;
             }
-            
-            // Obtener o crear empresario
-            Entrepreneur entrepreneur = entrepreneurMap.get(entrepreneurName);
+            double branchRevenue = trip.getBranchRevenue() != null ? trip.getBranchRevenue().doubleValue() : 0;
+            double roadRevenue = trip.getRoadRevenue() != null ? trip.getRoadRevenue().doubleValue() : 0;
+            double tripTotal = branchRevenue + roadRevenue + parseManualIncome(trip.getManualIncome());
+            // Zona del tramo en el índice compartido (nombres normalizados, ambos sentidos)
+            Zone zone = routeZoneIndex.findZone(trip);
+            double ganancia = zone != null ? tripTotal * (zone.getPorcentaje() / 100.0) : 0;
+            gananciaByCompany.merge(trip.getCompanyName(), ganancia, Double::sum);
+        }
+        return gananciaByCompany;
+    }
+
+    // Ganancia vigente en production_aggregates de las empresas indicadas; sin fila de totales la empresa
+    // ya no tiene viajes en la decena y su ganancia es 0
+    public Map<String, Double> gananciaFromAggregates(String decena, Collection<String> companyNames) {
+        Map<String, Double> gananciaByCompany = new HashMap<>();
+        for (String companyName : companyNames) {
+            gananciaByCompany.put(companyName, 0.0);
+        }
+        for (ProductionAggregate aggregate : productionAggregateRepository.findByDecenaAndCompanyNames(decena, companyNames)) {
+            gananciaByCompany.put(aggregate.getCompanyName(), aggregate.getGanancia().doubleValue());
+        }
+        return gananciaByCompany;
+    }
+
+    // Lleva las producciones no validadas de las empresas y decenas que cambiaron al total vigente en
+    // production_aggregates: se lee solo lo que cambió, sin recorrer los viajes de la decena.
+    // Dentro de la transacción de quien llama (alta o edición de viajes, rutas y zonas)
+    public Map<String, Object> upsertFromAggregates(Collection<ProductionAggregateService.Key> keys) {
+        return upsertFromAggregates(keys, null);
+    }
+
+    // Igual, anotando en changes (si no es null) el total anterior y el nuevo de cada producción que cambió o cambiaría
+    public Map<String, Object> upsertFromAggregates(Collection<ProductionAggregateService.Key> keys, List<Map<String, Object>> changes) {
+        long started = System.currentTimeMillis();
+        Map<String, List<String>> companiesByDecena = new TreeMap<>();
+        for (ProductionAggregateService.Key key : keys) {
+            companiesByDecena.computeIfAbsent(key.getDecena(), d -> new ArrayList<>()).add(key.getCompanyName());
+        }
+        Map<String, Entrepreneur> entrepreneurMap = prepareEntrepreneurs(
+            keys.stream().map(ProductionAggregateService.Key::getCompanyName).collect(Collectors.toSet()));
+
+        int created = 0;
+        int updated = 0;
+        int validatedSkipped = 0;
+        for (Map.Entry<String, List<String>> entry : companiesByDecena.entrySet()) {
+            Map<String, Double> ganancia = gananciaFromAggregates(entry.getKey(), entry.getValue());
+            Map<String, Integer> counts = upsertProductions(entry.getKey(), ganancia, entrepreneurMap, changes);
+            created += counts.get("created");
+            updated += counts.get("updated");
+            validatedSkipped += counts.get("validatedSkipped");
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("mode", "AGGREGATES");
+        result.put("changedAggregates", keys.size());
+        result.put("created", created);
+        result.put("updated", updated);
+        result.put("validatedSkipped", validatedSkipped);
+        result.put("millis", System.currentTimeMillis() - started);
+        return result;
+    }
+
+    // Lleva las producciones no validadas de la decena a la ganancia de cada empresa. Una producción validada no se toca;
+    // una que no existe se crea si la empresa tiene ganancia. Los empresarios vienen de prepareEntrepreneurs y solo se
+    // leen, así varias decenas pueden actualizarse a la vez. Devuelve los conteos created, updated y validatedSkipped
+    public Map<String, Integer> upsertProductions(String decena, Map<String, Double> gananciaByCompany,
+                                                  Map<String, Entrepreneur> entrepreneurMap, List<Map<String, Object>> changes) {
+        int created = 0;
+        int updated = 0;
+        int validatedSkipped = 0;
+        for (Map.Entry<String, Double> entry : new TreeMap<>(gananciaByCompany).entrySet()) {
+            String companyName = entry.getKey();
+            double ganancia = entry.getValue();
+            Entrepreneur entrepreneur = entrepreneurMap.get(companyName);
             if (entrepreneur == null) {
-                entrepreneur = new Entrepreneur();
-                entrepreneur.setNombre(entrepreneurName);
-                entrepreneur = entrepreneurRepository.save(entrepreneur);
-                entrepreneurMap.put(entrepreneurName, entrepreneur);
+                throw new IllegalStateException("Empresario no preparado para la decena " + decena + ": " + companyName);
             }
-            
-            // Verificar si ya existe la producción de manera más eficiente
-            if (!productionRepository.existsByEntrepreneurAndDecena(entrepreneur.getId(), decena) && totalGanancia > 0) {
+            Optional<Production> existing = productionRepository.findByEntrepreneurAndDecena(entrepreneur.getId(), decena);
+
+            if (existing.isPresent()) {
+                Production production = existing.get();
+                boolean changed = !Double.valueOf(ganancia).equals(production.getTotal());
+                if (production.isValidado()) {
+                    validatedSkipped++;
+                    if (changed) {
+                        recordChange(changes, companyName, decena, production.getTotal(), ganancia, "VALIDATED_SKIPPED");
+                    }
+                } else if (changed) {
+                    recordChange(changes, companyName, decena, production.getTotal(), ganancia, "UPDATED");
+                    production.setTotal(ganancia);
+                    productionRepository.save(production);
+                    updated++;
+                }
+            } else if (ganancia > 0) {
                 Production production = new Production();
                 production.setDecena(decena);
-                production.setTotal(totalGanancia);
+                production.setTotal(ganancia);
                 production.setValidado(false);
                 production.setComentarios("");
                 production.setEntrepreneur(entrepreneur);
                 productionRepository.save(production);
-                generatedCount++;
+                recordChange(changes, companyName, decena, null, ganancia, "CREATED");
+                created++;
             }
         }
-        
-        return generatedCount;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("created", created);
+        counts.put("updated", updated);
+        counts.put("validatedSkipped", validatedSkipped);
+        return counts;
     }
 
-    // Método optimizado para encontrar zona de un viaje
-    private Zone findZoneForTripOptimized(Trip trip, Map<String, Route> routeMap) {
-        if (trip.getOrigin() == null || trip.getDestination() == null) {
-            return null;
-        }
-        
-        String routeKey = trip.getOrigin() + "->" + trip.getDestination();
-        Route route = routeMap.get(routeKey);
-        
-        if (route == null) {
-            // Intentar con dirección inversa
-            routeKey = trip.getDestination() + "->" + trip.getOrigin();
-            route = routeMap.get(routeKey);
+    private static void recordChange(List<Map<String, Object>> changes, String companyName, String decena,
+                                     Double oldTotal, double newTotal, String action) {
+        if (changes == null) {
+            return;
         }
-        
-        return route != null ? route.getZona() : null;
+        Map<String, Object> change = new HashMap<>();
+        change.put("companyName", companyName);
+        change.put("decena", decena);
+        change.put("oldTotal", oldTotal);
+        change.put("newTotal", newTotal);
+        change.put("difference", newTotal - (oldTotal != null ? oldTotal : 0));
+        change.put("action", action);
+        changes.add(change);
     }
 
-    // Método optimizado para parsear ingresos manuales
-    private double parseManualIncome(String manualIncome) {
-        if (manualIncome == null || manualIncome.isEmpty()) {
-            return 0;
+    // Ganancia de la decena por empresa con los porcentajes actuales, agrupando los nombres que se escriben distinto
+    // (mayúsculas, tildes, espacios) bajo el primero que aparece
+    public Map<String, Double> gananciaByNormalizedCompany(String decena) {
+        DecenaSnapshot snapshot = decenaSnapshotCache.get(decena);
+        double[] ganancia = snapshot.gananciaByCompany(snapshot.zonePercentages(currentZonePercentages()));
+        Map<String, String> nameByNorm = new HashMap<>();
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int company = 0; company < snapshot.companyCount(); company++) {
+            String name = nameByNorm.putIfAbsent(snapshot.companyNorm(company), snapshot.companyName(company));
+            if (name == null) {
+                name = snapshot.companyName(company);
+            }
+            result.merge(name, ganancia[company], Double::sum);
         }
-        try {
-            return Double.parseDouble(manualIncome.replaceAll("[^\\d.-]", ""));
-        } catch (NumberFormatException e) {
-            return 0;
+        return result;
+    }
+
+    private Map<Long, Double> currentZonePercentages() {
+        Map<Long, Double> porcentajes = new HashMap<>();
+        for (Zone zone : zoneRepository.findAll()) {
+            porcentajes.put(zone.getId(), zone.getPorcentaje());
         }
+        return porcentajes;
+    }
+
+    // Método optimizado para parsear ingresos manuales (sin regex por viaje)
+    private double parseManualIncome(String manualIncome) {
+        return FieldDecoders.decodeManualIncome(manualIncome);
     }
 } 
\ No newline at end of file
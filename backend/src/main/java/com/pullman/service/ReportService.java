@@ -0,0 +1,76 @@
+package com.pullman.service;
+
+import com.pullman.domain.Zone;
+import com.pullman.repository.ZoneRepository;
+import com.pullman.util.NameNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reporte de una decena por empresa y zona (recorridos, ingresos y monto a pagar), sumado sobre el snapshot
+// columnar de la decena sin cargar viajes
+@Service
+public class ReportService {
+
+    private static final String SIN_ZONA = "Sin zona";
+
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    @Autowired
+    private ZoneRepository zoneRepository;
+
+    // zona y empresario son filtros opcionales; se comparan con los nombres normalizados (NameNormalizer)
+    public List<Map<String, Object>> report(String decena, String zona, String empresario) {
+        if (decena == null || !decena.matches("[123](0[1-9]|1[0-2])\\d{4}")) {
+            throw new IllegalArgumentException("Decena inválida: " + decena);
+        }
+        Map<Long, Double> porcentajes = new HashMap<>();
+        for (Zone zone : zoneRepository.findAll()) {
+            porcentajes.put(zone.getId(), zone.getPorcentaje());
+        }
+        String zonaNorm = zona != null && !zona.isBlank() ? NameNormalizer.normalize(zona) : null;
+        String empresarioNorm = empresario != null && !empresario.isBlank() ? NameNormalizer.normalize(empresario) : null;
+
+        DecenaSnapshot snapshot = decenaSnapshotCache.get(decena);
+        double[] zonePercentages = snapshot.zonePercentages(porcentajes);
+        long[][] totals = snapshot.countAndRevenueByCompanyAndZone();
+        long[] count = totals[0];
+        long[] revenue = totals[1];
+        int zones = snapshot.zoneCount();
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int company = 0; company < snapshot.companyCount(); company++) {
+            if (empresarioNorm != null && !empresarioNorm.equals(snapshot.companyNorm(company))) {
+                continue;
+            }
+            for (int zone = 0; zone < zones; zone++) {
+                int cell = company * zones + zone;
+                if (count[cell] == 0) {
+                    continue;
+                }
+                String zoneName = zone == DecenaSnapshot.NO_ZONE ? SIN_ZONA : snapshot.zoneName(zone);
+                if (zonaNorm != null && !zonaNorm.equals(NameNormalizer.normalize(zoneName))) {
+                    continue;
+                }
+                Map<String, Object> row = new HashMap<>();
+                row.put("decena", decena);
+                row.put("zona", zoneName);
+                row.put("zonaId", zone == DecenaSnapshot.NO_ZONE ? null : snapshot.zoneId(zone));
+                row.put("empresario", snapshot.companyName(company));
+                row.put("recorridos", count[cell]);
+                row.put("ingresos", revenue[cell] / 100.0);
+                row.put("monto", revenue[cell] * zonePercentages[zone] / 10_000.0);
+                rows.add(row);
+            }
+        }
+        rows.sort(Comparator.comparing((Map<String, Object> row) -> (String) row.get("empresario"))
+            .thenComparing(row -> (String) row.get("zona"), Comparator.nullsLast(Comparator.naturalOrder())));
+        return rows;
+    }
+}
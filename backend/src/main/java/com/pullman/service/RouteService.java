@@ -6,15 +6,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class RouteService {
     @Autowired
     private RouteRepository routeRepository;
 
+    @Autowired
+    private RouteZoneIndex routeZoneIndex;
+
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+
+    @Autowired
+    private ProductionService productionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     public Page<Route> findAll(Pageable pageable) {
         return routeRepository.findAll(pageable);
     }
@@ -23,15 +38,48 @@ public class RouteService {
         return routeRepository.findById(id);
     }
 
+    // Una ruta decide la zona de los viajes de su tramo: en la misma transacción se vuelven a sumar los totales
+    // de las empresas y decenas con viajes en el tramo anterior y en el nuevo, igual que al cambiar el porcentaje
+    // de una zona (ZoneRecalculationService)
     public Route save(Route route) {
-        return routeRepository.save(route);
+        Route saved = transactionTemplate.execute(status -> {
+            productionAggregateService.lockTrips();
+            Set<ProductionAggregateService.Key> keys = new HashSet<>();
+            if (route.getId() != null) {
+                keys.addAll(productionAggregateService.keysOnRoute(route.getId()));
+            }
+            Route result = routeRepository.saveAndFlush(route);
+            keys.addAll(productionAggregateService.keysOnRoute(result.getId()));
+            recalcularTotales(keys);
+            return result;
+        });
+        routeZoneIndex.rebuild();
+        return saved;
     }
 
     public void deleteById(Long id) {
-        routeRepository.deleteById(id);
+        transactionTemplate.executeWithoutResult(status -> {
+            productionAggregateService.lockTrips();
+            Set<ProductionAggregateService.Key> keys = productionAggregateService.keysOnRoute(id);
+            routeRepository.deleteById(id);
+            routeRepository.flush();
+            recalcularTotales(keys);
+        });
+        routeZoneIndex.rebuild();
+    }
+
+    // Las producciones no validadas siguen a los totales solo cuando ya están completos
+    private void recalcularTotales(Set<ProductionAggregateService.Key> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        productionAggregateService.recompute(keys);
+        if (productionAggregateService.isReady()) {
+            productionService.upsertFromAggregates(keys);
+        }
     }
 
     public List<Route> findByZonaId(Long zonaId) {
         return routeRepository.findByZonaId(zonaId);
     }
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,123 @@
+package com.pullman.service;
+
+import com.pullman.domain.Route;
+import com.pullman.domain.Trip;
+import com.pullman.domain.Zone;
+import com.pullman.repository.RouteRepository;
+import com.pullman.util.NameNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Zona de cada tramo origen->destino con nombres normalizados (NameNormalizer), para resolver la zona de un viaje
+// con una sola búsqueda. Cada ruta se indexa en ambos sentidos; si hay una ruta directa y otra inversa para el
+// mismo tramo gana la directa, y entre rutas repetidas la de menor id.
+// El índice es inmutable y se reemplaza completo cuando cambian rutas o zonas (RouteService, ZoneService).
+@Component
+public class RouteZoneIndex {
+
+    private static final String SEPARATOR = "->";
+    // Nombres de ciudades distintos cuya forma normalizada se recuerda
+    private static final int MAX_CACHED_NAMES = 8192;
+
+    @Autowired
+    private RouteRepository routeRepository;
+
+    private volatile Snapshot snapshot;
+    // Cambia en cada reconstrucción: lo calculado con una zona por tramo queda vencido si cambió
+    private volatile long version;
+
+    // Zona del tramo del viaje (en cualquier sentido); null si no hay ruta o la ruta no tiene zona
+    public Zone findZone(Trip trip) {
+        return findZone(trip.getOrigin(), trip.getDestination());
+    }
+
+    public Zone findZone(String origin, String destination) {
+        if (origin == null || destination == null) {
+            return null;
+        }
+        Snapshot current = current();
+        return current.zones.get(current.normalized(origin) + SEPARATOR + current.normalized(destination));
+    }
+
+    // Indica si existe una ruta para el tramo en cualquier sentido, tenga o no zona asignada
+    public boolean hasRoute(String origin, String destination) {
+        if (origin == null || destination == null) {
+            return false;
+        }
+        Snapshot current = current();
+        return current.zones.containsKey(current.normalized(origin) + SEPARATOR + current.normalized(destination));
+    }
+
+    // Vuelve a leer las rutas y reemplaza el índice de una vez; las búsquedas en curso siguen con el anterior
+    public synchronized void rebuild() {
+        List<Route> routes = routeRepository.findAll(Sort.by("id"));
+        Map<String, Zone> zones = new HashMap<>(routes.size() * 4);
+        // Primero los sentidos directos, para que una ruta inversa nunca tape a una directa
+        for (Route route : routes) {
+            if (route.getOrigen() != null && route.getDestino() != null) {
+                String key = NameNormalizer.normalize(route.getOrigen()) + SEPARATOR + NameNormalizer.normalize(route.getDestino());
+                if (!zones.containsKey(key)) {
+                    zones.put(key, route.getZona());
+                }
+            }
+        }
+        for (Route route : routes) {
+            if (route.getOrigen() != null && route.getDestino() != null) {
+                String key = NameNormalizer.normalize(route.getDestino()) + SEPARATOR + NameNormalizer.normalize(route.getOrigen());
+                if (!zones.containsKey(key)) {
+                    zones.put(key, route.getZona());
+                }
+            }
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(zones));
+        version++;
+        System.out.println("Índice de rutas y zonas reconstruido: " + routes.size() + " rutas, " + zones.size() + " tramos");
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private static final class Snapshot {
+        // Valores null permitidos: el tramo tiene ruta pero sin zona
+        final Map<String, Zone> zones;
+        // Los viajes repiten pocas ciudades: se normaliza cada nombre distinto una sola vez
+        final Map<String, String> names = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, Zone> zones) {
+            this.zones = zones;
+        }
+
+        String normalized(String name) {
+            String cached = names.get(name);
+            if (cached != null) {
+                return cached;
+            }
+            String value = NameNormalizer.normalize(name);
+            if (names.size() < MAX_CACHED_NAMES) {
+                names.put(name, value);
+            }
+            return value;
+        }
+    }
+}
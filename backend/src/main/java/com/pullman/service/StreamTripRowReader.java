@@ -0,0 +1,70 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.function.Function;
+
+// Lectura secuencial de un CSV desde un stream, para entradas que no están en disco
+public class StreamTripRowReader implements TripRowReader {
+
+    private final CsvTokenizer row;
+    private final Function<CsvTokenizer, TripBindingPlan> planCompiler;
+    private TripBindingPlan plan;
+    private Trip trip;
+    private String error;
+
+    public StreamTripRowReader(InputStream in, Charset charset, Function<CsvTokenizer, TripBindingPlan> planCompiler) {
+        this.row = new CsvTokenizer(new InputStreamReader(in, charset));
+        this.planCompiler = planCompiler;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        // El tokenizador ya omite las líneas vacías
+        while (row.next()) {
+            if (plan == null) {
+                plan = planCompiler.apply(row);
+                continue;
+            }
+            error = row.isOversized() ? row.oversizedMessage() : null;
+            trip = error == null ? plan.bind(row, row.lineNumber()) : null;
+            return true;
+        }
+        trip = null;
+        error = null;
+        return false;
+    }
+
+    @Override
+    public Trip trip() {
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return trip;
+    }
+
+    @Override
+    public long lineNumber() {
+        return row.lineNumber();
+    }
+
+    @Override
+    public List<String> headerWarnings() {
+        return plan != null ? plan.getWarnings() : List.of();
+    }
+
+    @Override
+    public ImportStringDictionary dictionary() {
+        return plan != null ? plan.getDictionary() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        row.close();
+    }
+}
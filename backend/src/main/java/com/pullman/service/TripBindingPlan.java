@@ -0,0 +1,355 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+// Plan de lectura de filas compilado una vez por archivo a partir del encabezado.
+// Cada columna reconocida queda asociada a un binder tipado (texto, entero, decimal, moneda);
+// por fila solo se recorre el arreglo de binders, sin búsquedas en mapas ni trims repetidos.
+public final class TripBindingPlan {
+
+    private static final int DEFAULT_DICTIONARY_SIZE = 8192;
+
+    // Reglas de reconocimiento de encabezados (mismas que el mapeo anterior), en minúsculas
+    private static final List<Rule> RULES = List.of(
+        new Rule("travel_date", h -> h.contains("fecha") || h.contains("date")),
+        new Rule("departure_time", h -> h.contains("hora") || h.contains("time") || h.contains("salida")),
+        new Rule("origin", h -> h.contains("origen")),
+        new Rule("destination", h -> h.contains("destino")),
+        new Rule("route_name", h -> h.contains("ruta")),
+        new Rule("service_code", h -> h.contains("servicio") || h.contains("service")),
+        new Rule("service_type", h -> h.contains("tipo") || h.contains("type")),
+        new Rule("status", h -> h.contains("estado") || h.contains("status")),
+        new Rule("bus_number", h -> h.contains("bus") || h.contains("número") || h.contains("numero")),
+        new Rule("license_plate", h -> h.contains("patente") || h.contains("license") || h.contains("placa")),
+        new Rule("vehicle_year", h -> h.contains("año") || h.contains("year")),
+        new Rule("total_seats", h -> h.contains("asientos") && h.contains("total")),
+        new Rule("initial_score", h -> h.contains("puntaje") && h.contains("inicial")),
+        new Rule("additional_score", h -> h.contains("puntaje") && h.contains("adicional")),
+        new Rule("total_score", h -> h.contains("puntaje") && h.contains("total")),
+        new Rule("compensation", h -> h.contains("compensación") || h.contains("compensacion")),
+        new Rule("total_compensated", h -> h.contains("total") && h.contains("compensado")),
+        new Rule("company_rut", h -> h.contains("rut")),
+        new Rule("company_name", h -> h.contains("razón") || h.contains("razon") || h.contains("social")),
+        new Rule("driver_name", h -> h.contains("conductor") || h.contains("driver")),
+        new Rule("branch_seats", h -> h.contains("asientos") && h.contains("sucursal")),
+        new Rule("branch_revenue", h -> (h.contains("recaudación") || h.contains("recaudacion")) && h.contains("sucursal")),
+        new Rule("road_seats", h -> h.contains("asientos") && h.contains("camino")),
+        new Rule("road_revenue", h -> (h.contains("recaudación") || h.contains("recaudacion")) && h.contains("camino")),
+        new Rule("manual_income", h -> h.contains("manual") || h.contains("ingresos"))
+    );
+
+    private final int dateColumn;
+    private final int timeColumn;
+    private final FieldBinder[] binders;
+    private final Map<String, Integer> columns;
+    private final List<String> warnings;
+    private final ImportStringDictionary dictionary;
+    private final FieldDecoders.DateDecoder dateDecoder = new FieldDecoders.DateDecoder();
+
+    private TripBindingPlan(int dateColumn, int timeColumn, FieldBinder[] binders,
+                            Map<String, Integer> columns, List<String> warnings, ImportStringDictionary dictionary) {
+        this.dateColumn = dateColumn;
+        this.timeColumn = timeColumn;
+        this.binders = binders;
+        this.columns = columns;
+        this.warnings = warnings;
+        this.dictionary = dictionary;
+    }
+
+    // Resuelve cada campo del viaje a una sola columna. Prioridad: nombre exacto del campo,
+    // luego encabezados que solo coinciden con ese campo, luego encabezados que coinciden con varios.
+    // Los empates y las columnas usadas por más de un campo quedan como advertencias.
+    public static TripBindingPlan compile(CsvTokenizer headerRow) {
+        return compile(headerRow, DEFAULT_DICTIONARY_SIZE);
+    }
+
+    // El plan es propio de cada archivo, así que su diccionario de textos dura lo que la importación
+    public static TripBindingPlan compile(CsvTokenizer headerRow, int dictionarySize) {
+        int columnCount = headerRow.fieldCount();
+        String[] headers = new String[columnCount];
+        List<List<String>> matches = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            String header = headerRow.trimmed(i).toLowerCase();
+            headers[i] = header;
+            List<String> targets = new ArrayList<>();
+            for (Rule rule : RULES) {
+                if (header.equals(rule.target) || rule.matches.test(header)) {
+                    targets.add(rule.target);
+                }
+            }
+            matches.add(targets);
+        }
+
+        List<String> warnings = new ArrayList<>();
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        for (Rule rule : RULES) {
+            int best = -1;
+            int bestRank = Integer.MAX_VALUE;
+            List<Integer> tied = new ArrayList<>();
+            for (int i = 0; i < columnCount; i++) {
+                if (!matches.get(i).contains(rule.target)) {
+                    continue;
+                }
+                int rank = headers[i].equals(rule.target) ? 0 : matches.get(i).size() == 1 ? 1 : 2;
+                if (rank < bestRank) {
+                    bestRank = rank;
+                    tied.clear();
+                }
+                if (rank == bestRank) {
+                    // Igual que antes, ante un empate gana la última columna
+                    best = i;
+                    tied.add(i);
+                }
+            }
+            if (best < 0) {
+                continue;
+            }
+            columns.put(rule.target, best);
+            if (tied.size() > 1) {
+                List<String> names = new ArrayList<>();
+                for (int i : tied) {
+                    names.add("'" + headerRow.trimmed(i) + "' (" + (i + 1) + ")");
+                }
+                warnings.add("Campo " + rule.target + " coincide con las columnas " + String.join(", ", names) +
+                    "; se usa la columna " + (best + 1));
+            }
+        }
+
+        Map<Integer, List<String>> targetsByColumn = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : columns.entrySet()) {
+            targetsByColumn.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        for (Map.Entry<Integer, List<String>> entry : targetsByColumn.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                warnings.add("La columna '" + headerRow.trimmed(entry.getKey()) + "' (" + (entry.getKey() + 1) +
+                    ") se usa para varios campos: " + String.join(", ", entry.getValue()));
+            }
+        }
+
+        ImportStringDictionary dictionary = new ImportStringDictionary(dictionarySize);
+        List<FieldBinder> binders = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : columns.entrySet()) {
+            FieldBinder binder = binderFor(entry.getKey(), entry.getValue(), dictionary);
+            if (binder != null) {
+                binders.add(binder);
+            }
+        }
+        binders.sort((a, b) -> Integer.compare(a.column, b.column));
+
+        return new TripBindingPlan(
+            columns.getOrDefault("travel_date", -1),
+            columns.getOrDefault("departure_time", -1),
+            binders.toArray(new FieldBinder[0]),
+            Collections.unmodifiableMap(columns),
+            Collections.unmodifiableList(warnings),
+            dictionary);
+    }
+
+    public Map<String, Integer> getColumns() {
+        return columns;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    public ImportStringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    // Solo la fecha de viaje de la fila, sin armar el viaje ni informar errores; null si falta o no es válida
+    public LocalDate travelDate(CsvTokenizer row) {
+        if (row.fieldCount() < 3 || dateColumn < 0 || dateColumn >= row.fieldCount()) {
+            return null;
+        }
+        int start = row.trimStart(dateColumn);
+        return dateDecoder.decode(row.buffer(), start, row.trimEnd(dateColumn, start));
+    }
+
+    // Construye el viaje de la fila actual; null si la fila no es válida (sin fecha o con muy pocos campos)
+    public Trip bind(CsvTokenizer row, long lineNumber) {
+        try {
+            int fieldCount = row.fieldCount();
+            // Validación más flexible de campos mínimos
+            if (fieldCount < 3) {
+                System.err.println("Línea " + lineNumber + ": Muy pocos campos (" + fieldCount + ") - " + row);
+                return null;
+            }
+
+            // Debug: mostrar campos para líneas problemáticas
+            if (lineNumber % 1000 == 0) {
+                System.out.println("Línea " + lineNumber + ": Procesando - " + fieldCount + " campos");
+            }
+
+            Trip trip = new Trip();
+
+            // Fecha de viaje (obligatoria)
+            if (dateColumn < 0 || dateColumn >= fieldCount || row.isBlank(dateColumn)) {
+                System.err.println("Línea " + lineNumber + ": Fecha de viaje no encontrada o vacía");
+                return null;
+            }
+            LocalDate travelDate = parseDate(row, dateColumn, lineNumber);
+            if (travelDate == null) {
+                return null;
+            }
+            trip.setTravelDate(travelDate);
+
+            // Hora de salida
+            if (timeColumn >= 0 && timeColumn < fieldCount && !row.isBlank(timeColumn)) {
+                int start = row.trimStart(timeColumn);
+                trip.setDepartureTime(FieldDecoders.decodeTime(row.buffer(), start, row.trimEnd(timeColumn, start)));
+            } else {
+                // Si no hay hora, usar hora por defecto
+                trip.setDepartureTime(LocalTime.of(0, 0));
+                System.out.println("Línea " + lineNumber + ": Hora no encontrada, usando hora por defecto (00:00)");
+            }
+
+            for (FieldBinder binder : binders) {
+                if (binder.column >= fieldCount) {
+                    break;
+                }
+                binder.bind(trip, row, lineNumber);
+            }
+            return trip;
+
+        } catch (Exception e) {
+            System.err.println("Línea " + lineNumber + ": Error parsing line: " + row + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static FieldBinder binderFor(String target, int column, ImportStringDictionary dictionary) {
+        switch (target) {
+            case "origin": return interned(column, dictionary, Trip::setOrigin);
+            case "destination": return interned(column, dictionary, Trip::setDestination);
+            case "route_name": return interned(column, dictionary, Trip::setRouteName);
+            case "service_code": return text(column, Trip::setServiceCode);
+            case "service_type": return interned(column, dictionary, Trip::setServiceType);
+            case "status": return interned(column, dictionary, Trip::setStatus);
+            case "bus_number": return text(column, Trip::setBusNumber);
+            case "license_plate": return text(column, Trip::setLicensePlate);
+            case "vehicle_year": return integer(column, "vehicle year", Trip::setVehicleYear);
+            case "total_seats": return integer(column, "total seats", Trip::setTotalSeats);
+            case "initial_score": return decimal(column, Trip::setInitialScore);
+            case "additional_score": return decimal(column, Trip::setAdditionalScore);
+            case "total_score": return decimal(column, Trip::setTotalScore);
+            case "compensation": return decimal(column, Trip::setCompensation);
+            case "total_compensated": return decimal(column, Trip::setTotalCompensated);
+            case "company_rut": return text(column, Trip::setCompanyRut);
+            case "company_name": return interned(column, dictionary, Trip::setCompanyName);
+            case "driver_name": return interned(column, dictionary, Trip::setDriverName);
+            case "branch_seats": return integer(column, "branch seats", Trip::setBranchSeats);
+            case "branch_revenue": return currency(column, Trip::setBranchRevenue);
+            case "road_seats": return integer(column, "road seats", Trip::setRoadSeats);
+            case "road_revenue": return currency(column, Trip::setRoadRevenue);
+            case "manual_income": return text(column, Trip::setManualIncome);
+            default: return null; // fecha y hora se leen aparte
+        }
+    }
+
+    // Los textos se asignan aunque vengan vacíos; los números solo si traen valor
+    private static FieldBinder text(int column, BiConsumer<Trip, String> setter) {
+        return new FieldBinder(column) {
+            @Override
+            void bind(Trip trip, CsvTokenizer row, long lineNumber) {
+                setter.accept(trip, row.trimmed(column));
+            }
+        };
+    }
+
+    // Columnas de vocabulario chico: el valor recortado se busca en el diccionario sin crear el String
+    private static FieldBinder interned(int column, ImportStringDictionary dictionary, BiConsumer<Trip, String> setter) {
+        return new FieldBinder(column) {
+            @Override
+            void bind(Trip trip, CsvTokenizer row, long lineNumber) {
+                int start = row.trimStart(column);
+                setter.accept(trip, dictionary.intern(row.buffer(), start, row.trimEnd(column, start)));
+            }
+        };
+    }
+
+    private static FieldBinder integer(int column, String label, BiConsumer<Trip, Integer> setter) {
+        return new FieldBinder(column) {
+            @Override
+            void bind(Trip trip, CsvTokenizer row, long lineNumber) {
+                int start = row.trimStart(column);
+                int end = row.trimEnd(column, start);
+                if (start == end) {
+                    return;
+                }
+                Integer value = FieldDecoders.decodeInteger(row.buffer(), start, end);
+                if (value != null) {
+                    setter.accept(trip, value);
+                } else {
+                    System.err.println("Línea " + lineNumber + ": Error parsing " + label + ": " + row.field(column));
+                }
+            }
+        };
+    }
+
+    private static FieldBinder decimal(int column, BiConsumer<Trip, BigDecimal> setter) {
+        return new FieldBinder(column) {
+            @Override
+            void bind(Trip trip, CsvTokenizer row, long lineNumber) {
+                int start = row.trimStart(column);
+                int end = row.trimEnd(column, start);
+                if (start < end) {
+                    setter.accept(trip, FieldDecoders.decodeDecimal(row.buffer(), start, end));
+                }
+            }
+        };
+    }
+
+    private static FieldBinder currency(int column, BiConsumer<Trip, BigDecimal> setter) {
+        return new FieldBinder(column) {
+            @Override
+            void bind(Trip trip, CsvTokenizer row, long lineNumber) {
+                int start = row.trimStart(column);
+                int end = row.trimEnd(column, start);
+                if (start < end) {
+                    setter.accept(trip, FieldDecoders.decodeCurrency(row.buffer(), start, end));
+                }
+            }
+        };
+    }
+
+    private LocalDate parseDate(CsvTokenizer row, int column, long lineNumber) {
+        int start = row.trimStart(column);
+        LocalDate date = dateDecoder.decode(row.buffer(), start, row.trimEnd(column, start));
+        if (date == null) {
+            System.err.println("Línea " + lineNumber + ": Error parsing date (dd/MM/yyyy o dd-MM-yyyy): " + row.field(column));
+        }
+        return date;
+    }
+
+    private static final class Rule {
+        private final String target;
+        private final Predicate<String> matches;
+
+        Rule(String target, Predicate<String> matches) {
+            this.target = target;
+            this.matches = matches;
+        }
+    }
+
+    private abstract static class FieldBinder {
+        final int column;
+
+        FieldBinder(int column) {
+            this.column = column;
+        }
+
+        abstract void bind(Trip trip, CsvTokenizer row, long lineNumber);
+    }
+}
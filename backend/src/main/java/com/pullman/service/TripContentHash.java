@@ -0,0 +1,79 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.math.BigDecimal;
+
+// Hash canónico de 64 bits del contenido actualizable de un viaje (los campos que copia updateExistingTrip).
+// Si la fila del archivo tiene el mismo hash que el viaje guardado, la importación no la vuelve a escribir.
+public final class TripContentHash {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char SEPARATOR = '\u001F';
+    private static final char NULL_MARK = '\u0000';
+
+    private TripContentHash() {
+    }
+
+    public static long of(Trip trip) {
+        long h = FNV_OFFSET;
+        h = mix(h, trip.getRouteName());
+        h = mix(h, trip.getServiceCode());
+        h = mix(h, trip.getServiceType());
+        h = mix(h, trip.getStatus());
+        h = mix(h, trip.getLicensePlate());
+        h = mix(h, trip.getVehicleYear());
+        h = mix(h, trip.getTotalSeats());
+        h = mix(h, trip.getInitialScore());
+        h = mix(h, trip.getAdditionalScore());
+        h = mix(h, trip.getTotalScore());
+        h = mix(h, trip.getCompensation());
+        h = mix(h, trip.getTotalCompensated());
+        h = mix(h, trip.getCompanyRut());
+        h = mix(h, trip.getCompanyName());
+        h = mix(h, trip.getDriverName());
+        h = mix(h, trip.getBranchSeats());
+        h = mix(h, trip.getBranchRevenue());
+        h = mix(h, trip.getRoadSeats());
+        h = mix(h, trip.getRoadRevenue());
+        h = mix(h, trip.getManualIncome());
+        return finish(h);
+    }
+
+    private static long mix(long h, String value) {
+        if (value == null) {
+            return step(h, NULL_MARK);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h = step(h, value.charAt(i));
+        }
+        return step(h, SEPARATOR);
+    }
+
+    private static long mix(long h, Integer value) {
+        return mix(h, value != null ? value.toString() : null);
+    }
+
+    // 1.50 y 1.5 son el mismo valor en la base
+    private static long mix(long h, BigDecimal value) {
+        return mix(h, value != null ? value.stripTrailingZeros().toPlainString() : null);
+    }
+
+    static long step(long h, char c) {
+        h ^= c & 0xFF;
+        h *= FNV_PRIME;
+        h ^= c >>> 8;
+        return h * FNV_PRIME;
+    }
+
+    // Mezcla final (fmix64 de MurmurHash3) para repartir los bits
+    static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
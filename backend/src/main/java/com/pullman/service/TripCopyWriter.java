@@ -0,0 +1,346 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Ingesta de viajes por COPY: las filas se envían en streaming a una tabla UNLOGGED de staging
+// y al cerrar se aplican a trips con un único upsert por la clave (fecha, hora, origen, destino, bus).
+@Component
+public class TripCopyWriter {
+
+    // Índice único que usa el ON CONFLICT del upsert (lo crea Hibernate o docs/migrate_trips_unique_key.sql)
+    private static final String UNIQUE_INDEX_SQL =
+        "SELECT 1 FROM pg_indexes WHERE tablename = 'trips' AND indexname = 'ux_trips_unique_key'";
+
+    private static final String KEY_COLUMNS = "travel_date, departure_time, origin, destination, bus_number";
+
+    // Misma regla que TripDedupIndex.keyOf: sin alguno de los cinco campos la fila no tiene clave
+    private static final String KEY_PRESENT =
+        "travel_date IS NOT NULL AND departure_time IS NOT NULL AND origin IS NOT NULL AND destination IS NOT NULL " +
+        "AND bus_number IS NOT NULL";
+    private static final String KEY_MISSING =
+        "(travel_date IS NULL OR departure_time IS NULL OR origin IS NULL OR destination IS NULL OR bus_number IS NULL)";
+
+    private static final String DATA_COLUMNS =
+        "travel_date, departure_time, origin, destination, route_name, service_code, service_type, status, " +
+        "bus_number, license_plate, vehicle_year, total_seats, initial_score, additional_score, total_score, " +
+        "compensation, total_compensated, company_rut, company_name, driver_name, branch_seats, branch_revenue, " +
+        "road_seats, road_revenue, manual_income, content_hash, origin_norm, destination_norm, company_norm";
+
+    private static final String[] UPDATED_COLUMNS = {
+        "route_name", "service_code", "service_type", "status", "license_plate", "vehicle_year", "total_seats",
+        "initial_score", "additional_score", "total_score", "compensation", "total_compensated", "company_rut",
+        "company_name", "driver_name", "branch_seats", "branch_revenue", "road_seats", "road_revenue", "manual_income",
+        "content_hash", "origin_norm", "destination_norm", "company_norm"
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    // Resultado del upsert final
+    public static class CopyResult {
+        private final long inserted;
+        private final long updated;
+        private final long unchanged;
+        private final Set<ProductionAggregateService.Key> changedAggregates;
+
+        CopyResult(long inserted, long updated, long unchanged, Set<ProductionAggregateService.Key> changedAggregates) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.unchanged = unchanged;
+            this.changedAggregates = changedAggregates;
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        // Empresas y decenas cuyos totales cambiaron con esta importación
+        public Set<ProductionAggregateService.Key> getChangedAggregates() {
+            return changedAggregates;
+        }
+    }
+
+    public Session open() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            return new Session(connection, productionAggregateService, decenaSnapshotCache);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    // Una sesión por importación; cerrarla sin commit descarta todo lo enviado
+    public static class Session implements AutoCloseable {
+        private final Connection connection;
+        private final ProductionAggregateService aggregates;
+        private final DecenaSnapshotCache decenaSnapshotCache;
+        private final String stageTable = "trips_stage_" + UUID.randomUUID().toString().replace("-", "");
+        private final CopyIn copyIn;
+        private final StringBuilder row = new StringBuilder(512);
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferLength;
+        private boolean committed;
+
+        private Session(Connection connection, ProductionAggregateService aggregates, DecenaSnapshotCache decenaSnapshotCache) throws SQLException {
+            this.connection = connection;
+            this.aggregates = aggregates;
+            this.decenaSnapshotCache = decenaSnapshotCache;
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery(UNIQUE_INDEX_SQL)) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("Falta el índice único ux_trips_unique_key de viajes; " +
+                        "si hay viajes repetidos en la base, aplica docs/migrate_trips_unique_key.sql");
+                }
+            }
+            try (Statement st = connection.createStatement()) {
+                st.execute("CREATE UNLOGGED TABLE " + stageTable + " (" +
+                    "line_number bigint, travel_date date, departure_time time, origin text, destination text, " +
+                    "route_name text, service_code text, service_type text, status text, bus_number text, " +
+                    "license_plate text, vehicle_year integer, total_seats integer, initial_score numeric, " +
+                    "additional_score numeric, total_score numeric, compensation numeric, total_compensated numeric, " +
+                    "company_rut text, company_name text, driver_name text, branch_seats integer, " +
+                    "branch_revenue numeric, road_seats integer, road_revenue numeric, manual_income text, content_hash bigint, " +
+                    "origin_norm text, destination_norm text, company_norm text)");
+            }
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            this.copyIn = pgConnection.getCopyAPI().copyIn(
+                "COPY " + stageTable + " (line_number, " + DATA_COLUMNS + ") FROM STDIN WITH (FORMAT csv)");
+        }
+
+        public void write(Trip trip, long lineNumber) throws SQLException {
+            row.setLength(0);
+            row.append(lineNumber);
+            appendValue(trip.getTravelDate());
+            appendValue(trip.getDepartureTime());
+            appendText(trip.getOrigin());
+            appendText(trip.getDestination());
+            appendText(trip.getRouteName());
+            appendText(trip.getServiceCode());
+            appendText(trip.getServiceType());
+            appendText(trip.getStatus());
+            appendText(trip.getBusNumber());
+            appendText(trip.getLicensePlate());
+            appendValue(trip.getVehicleYear());
+            appendValue(trip.getTotalSeats());
+            appendDecimal(trip.getInitialScore());
+            appendDecimal(trip.getAdditionalScore());
+            appendDecimal(trip.getTotalScore());
+            appendDecimal(trip.getCompensation());
+            appendDecimal(trip.getTotalCompensated());
+            appendText(trip.getCompanyRut());
+            appendText(trip.getCompanyName());
+            appendText(trip.getDriverName());
+            appendValue(trip.getBranchSeats());
+            appendDecimal(trip.getBranchRevenue());
+            appendValue(trip.getRoadSeats());
+            appendDecimal(trip.getRoadRevenue());
+            appendText(trip.getManualIncome());
+            appendValue(trip.getContentHash());
+            appendText(trip.getOriginNorm());
+            appendText(trip.getDestinationNorm());
+            appendText(trip.getCompanyNorm());
+            row.append('\n');
+
+            byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+            if (bufferLength + bytes.length > buffer.length) {
+                flushBuffer();
+            }
+            if (bytes.length > buffer.length) {
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+            } else {
+                System.arraycopy(bytes, 0, buffer, bufferLength, bytes.length);
+                bufferLength += bytes.length;
+            }
+        }
+
+        // Termina el COPY y aplica el staging a trips en una transacción, registrando el resultado de cada línea
+        public CopyResult commit(String importId) throws SQLException {
+            flushBuffer();
+            copyIn.endCopy();
+
+            String updates = String.join(", ", Arrays.stream(UPDATED_COLUMNS)
+                .map(column -> column + " = EXCLUDED." + column)
+                .toArray(String[]::new));
+            String keyJoin = String.join(" AND ", Arrays.stream(KEY_COLUMNS.split(", "))
+                .map(column -> "s." + column + " = u." + column)
+                .toArray(String[]::new));
+            // Ids de los viajes insertados o actualizados, para sumar su aporte a los totales por empresa y decena
+            String changedIds = stageTable + "_ids";
+            // Viajes existentes con la clave de alguna fila del staging: se bloquean antes de leer su aporte anterior
+            String stagedKeyTrips =
+                "t.id IN (SELECT u.id FROM trips u JOIN (" +
+                "SELECT DISTINCT " + KEY_COLUMNS + " FROM " + stageTable + " WHERE " + KEY_PRESENT + ") s ON " + keyJoin + ")";
+            // Viajes existentes que el upsert va a modificar (mismo criterio que su WHERE): su aporte anterior se resta
+            String replacedTrips =
+                "t.id IN (SELECT u.id FROM trips u JOIN (" +
+                "SELECT DISTINCT ON (" + KEY_COLUMNS + ") " + KEY_COLUMNS + ", content_hash FROM " + stageTable + " " +
+                "WHERE " + KEY_PRESENT + " ORDER BY " + KEY_COLUMNS + ", line_number DESC) s ON " + keyJoin + " " +
+                "WHERE u.content_hash IS DISTINCT FROM s.content_hash)";
+            // Filas repetidas dentro del archivo: gana la última, igual que en la importación JPA.
+            // Un viaje cuyo hash de contenido no cambia no se actualiza (ni aparece en upserted).
+            // Cada línea del staging se cruza por la clave con el viaje resultante; si el viaje se creó,
+            // la primera línea de la clave cuenta como insertada y las demás como actualizaciones.
+            // Las líneas cuya clave existe pero no se actualizó quedan como sin cambios.
+            // Los totales cuentan líneas, como los de la importación JPA y el resultado de cada línea.
+            String upsert =
+                "WITH upserted AS (" +
+                "INSERT INTO trips (" + DATA_COLUMNS + ") " +
+                "SELECT DISTINCT ON (" + KEY_COLUMNS + ") " + DATA_COLUMNS + " FROM " + stageTable + " " +
+                "WHERE " + KEY_PRESENT + " ORDER BY " + KEY_COLUMNS + ", line_number DESC " +
+                "ON CONFLICT (" + KEY_COLUMNS + ") DO UPDATE SET " + updates + " " +
+                "WHERE trips.content_hash IS DISTINCT FROM EXCLUDED.content_hash " +
+                "RETURNING id, " + KEY_COLUMNS + ", (xmax = 0) AS inserted), " +
+                "changed AS (INSERT INTO " + changedIds + " (id) SELECT id FROM upserted), " +
+                "recorded AS (" +
+                "INSERT INTO import_row_results (import_id, line_number, outcome, trip_id, created_at) " +
+                "SELECT ?, s.line_number, " +
+                "CASE WHEN u.inserted AND s.line_number = MIN(s.line_number) OVER (PARTITION BY u.id) " +
+                "THEN 'INSERTED' ELSE 'UPDATED' END, u.id, LOCALTIMESTAMP " +
+                "FROM " + stageTable + " s JOIN upserted u ON " + keyJoin + " " +
+                "RETURNING outcome), " +
+                "unchanged AS (" +
+                "INSERT INTO import_row_results (import_id, line_number, outcome, trip_id, created_at) " +
+                "SELECT ?, s.line_number, 'UNCHANGED', u.id, LOCALTIMESTAMP " +
+                "FROM " + stageTable + " s JOIN trips u ON " + keyJoin + " " +
+                "WHERE NOT EXISTS (SELECT 1 FROM upserted x WHERE x.id = u.id) " +
+                "RETURNING 1) " +
+                "SELECT COUNT(*) FILTER (WHERE outcome = 'INSERTED'), COUNT(*) FILTER (WHERE outcome = 'UPDATED'), " +
+                "(SELECT COUNT(*) FROM unchanged) FROM recorded";
+            // Sin alguno de los campos de la clave no hay clave única: se insertan siempre, como en la importación JPA.
+            // El id se toma de la secuencia antes de insertar para registrar cada línea con su viaje
+            String insertWithoutKey =
+                "WITH numbered AS MATERIALIZED (" +
+                "SELECT nextval(pg_get_serial_sequence('trips', 'id')) AS id, s.* FROM " + stageTable + " s " +
+                "WHERE " + KEY_MISSING + "), " +
+                "inserted AS (" +
+                "INSERT INTO trips (id, " + DATA_COLUMNS + ") SELECT id, " + DATA_COLUMNS + " FROM numbered " +
+                "ORDER BY line_number RETURNING id), " +
+                "changed AS (INSERT INTO " + changedIds + " (id) SELECT id FROM inserted) " +
+                "INSERT INTO import_row_results (import_id, line_number, outcome, trip_id, created_at) " +
+                "SELECT ?, line_number, 'INSERTED', id, LOCALTIMESTAMP FROM numbered";
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement st = connection.createStatement()) {
+                long inserted;
+                long updated;
+                long unchanged;
+                st.execute("CREATE TEMP TABLE " + changedIds + " (id bigint) ON COMMIT DROP");
+                aggregates.lockTrips(connection, stagedKeyTrips);
+                Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before =
+                    aggregates.contributions(connection, replacedTrips);
+                try (PreparedStatement ps = connection.prepareStatement(upsert)) {
+                    ps.setString(1, importId);
+                    ps.setString(2, importId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        inserted = rs.getLong(1);
+                        updated = rs.getLong(2);
+                        unchanged = rs.getLong(3);
+                    }
+                }
+                try (PreparedStatement ps = connection.prepareStatement(insertWithoutKey)) {
+                    ps.setString(1, importId);
+                    inserted += ps.executeUpdate();
+                }
+                Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> after =
+                    aggregates.contributions(connection, "t.id IN (SELECT id FROM " + changedIds + ")");
+                Set<ProductionAggregateService.Key> changedAggregates = aggregates.applyDifference(connection, before, after);
+                connection.commit();
+                committed = true;
+                // Con los cambios ya visibles, para que nadie vuelva a guardar una lectura anterior
+                decenaSnapshotCache.invalidate(aggregates.decenasOf(before, after));
+                return new CopyResult(inserted, updated, unchanged, changedAggregates);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (!committed && copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+                try (Statement st = connection.createStatement()) {
+                    st.execute("DROP TABLE IF EXISTS " + stageTable);
+                }
+            } finally {
+                connection.close();
+            }
+        }
+
+        private void flushBuffer() throws SQLException {
+            if (bufferLength > 0) {
+                copyIn.writeToCopy(buffer, 0, bufferLength);
+                bufferLength = 0;
+            }
+        }
+
+        private void appendValue(Object value) {
+            row.append(',');
+            if (value != null) {
+                row.append(value);
+            }
+        }
+
+        private void appendDecimal(BigDecimal value) {
+            row.append(',');
+            if (value != null) {
+                row.append(value.toPlainString());
+            }
+        }
+
+        // En formato csv de COPY un campo vacío sin comillas es NULL, por eso el texto siempre va entre comillas
+        private void appendText(String value) {
+            row.append(',');
+            if (value == null) {
+                return;
+            }
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+import com.pullman.repository.TripRepository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Índice en memoria de las claves únicas de viajes existentes (fecha, hora, origen, destino, bus) -> id y hash de contenido.
+// Se carga por decena la primera vez que el archivo trae un viaje de esa decena, con una sola consulta.
+public class TripDedupIndex {
+
+    private static final char SEPARATOR = '\u001F';
+
+    // Clave empaquetada: fecha y hora en un long, origen/destino/bus en un solo String
+    public static final class Key {
+        private final long dateTime;
+        private final String place;
+        private final int hash;
+
+        private Key(LocalDate date, LocalTime time, String origin, String destination, String busNumber) {
+            this.dateTime = date.toEpochDay() * 86_400L + time.toSecondOfDay();
+            this.place = origin + SEPARATOR + destination + SEPARATOR + busNumber;
+            this.hash = 31 * Long.hashCode(dateTime) + place.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return dateTime == other.dateTime && place.equals(other.place);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final TripRepository tripRepository;
+    private final Set<LocalDate> loadedDecenas = new HashSet<>();
+    // Id y hash en un solo valor por clave: un nodo del mapa por viaje, sin Longs sueltos
+    private final Map<Key, Existing> existing = new HashMap<>();
+
+    private static final class Existing {
+        private final long id;
+        private long contentHash;
+        private boolean hasContentHash;
+
+        private Existing(long id, Long contentHash) {
+            this.id = id;
+            setContentHash(contentHash);
+        }
+
+        private void setContentHash(Long contentHash) {
+            this.hasContentHash = contentHash != null;
+            this.contentHash = contentHash != null ? contentHash : 0L;
+        }
+    }
+
+    public TripDedupIndex(TripRepository tripRepository) {
+        this.tripRepository = tripRepository;
+    }
+
+    // Misma regla que la validación de unicidad: sin alguno de los cinco campos el viaje no se deduplica
+    public static Key keyOf(Trip trip) {
+        if (trip.getTravelDate() == null || trip.getDepartureTime() == null ||
+            trip.getOrigin() == null || trip.getDestination() == null || trip.getBusNumber() == null) {
+            return null;
+        }
+        return new Key(trip.getTravelDate(), trip.getDepartureTime(),
+            trip.getOrigin().trim(), trip.getDestination().trim(), trip.getBusNumber().trim());
+    }
+
+    public Long findExistingId(Key key, LocalDate travelDate) {
+        ensureLoaded(travelDate);
+        Existing entry = existing.get(key);
+        return entry != null ? entry.id : null;
+    }
+
+    // Hash del contenido guardado para la clave; null si el viaje se guardó antes de existir el hash
+    public Long findContentHash(Key key) {
+        Existing entry = existing.get(key);
+        return entry != null && entry.hasContentHash ? entry.contentHash : null;
+    }
+
+    // Registrar viajes recién insertados para que una fila repetida más adelante se trate como actualización
+    public void register(Key key, Long id, Long contentHash) {
+        existing.putIfAbsent(key, new Existing(id, contentHash));
+    }
+
+    // Contenido vigente tras una actualización, para comparar las filas siguientes de la misma clave
+    public void updateContentHash(Key key, Long contentHash) {
+        Existing entry = existing.get(key);
+        if (entry != null) {
+            entry.setContentHash(contentHash);
+        }
+    }
+
+    public int size() {
+        return existing.size();
+    }
+
+    private void ensureLoaded(LocalDate date) {
+        int day = date.getDayOfMonth();
+        LocalDate start = date.withDayOfMonth(day > 20 ? 21 : day > 10 ? 11 : 1);
+        if (!loadedDecenas.add(start)) {
+            return;
+        }
+        LocalDate end = start.getDayOfMonth() == 21 ? date.withDayOfMonth(date.lengthOfMonth()) : start.plusDays(9);
+        List<Object[]> rows = tripRepository.findUniqueKeysBetween(start, end);
+        for (Object[] row : rows) {
+            if (row[2] == null || row[3] == null || row[4] == null) {
+                continue;
+            }
+            // Mismo recorte que las claves del archivo (keyOf): un viaje guardado con espacios en los extremos
+            // se reconoce igual
+            Key key = new Key((LocalDate) row[1], (LocalTime) row[2],
+                ((String) row[3]).trim(), ((String) row[4]).trim(), ((String) row[5]).trim());
+            // Si ya hay duplicados en la base se conserva el de menor id
+            existing.putIfAbsent(key, new Existing((Long) row[0], (Long) row[6]));
+        }
+    }
+}
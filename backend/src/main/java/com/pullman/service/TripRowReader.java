@@ -0,0 +1,27 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// Filas de un archivo de viajes ya convertidas a Trip, entregadas en el orden del archivo.
+// El encabezado lo consume el propio lector al compilar el plan de columnas.
+public interface TripRowReader extends Closeable {
+
+    // Avanza a la siguiente fila de datos; devuelve false al llegar al final
+    boolean next() throws IOException;
+
+    // Viaje de la fila actual; null si la fila no es válida.
+    // IllegalArgumentException si la fila no se pudo leer (registro descartado por largo)
+    Trip trip();
+
+    // Número de línea física donde empieza la fila actual
+    long lineNumber();
+
+    List<String> headerWarnings();
+
+    // Diccionario de textos del archivo; null si el archivo no tenía encabezado
+    ImportStringDictionary dictionary();
+}
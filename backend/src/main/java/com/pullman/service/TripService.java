@@ -1,20 +1,32 @@
 package com.pullman.service;
 
 import com.pullman.domain.Trip;
+import com.pullman.repository.ImportedFileRepository;
 import com.pullman.repository.TripRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class TripService {
     @Autowired
     private TripRepository tripRepository;
+    @Autowired
+    private ImportedFileRepository importedFileRepository;
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+    @Autowired
+    private ProductionService productionService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     public Page<Trip> findAll(Pageable pageable) {
         return tripRepository.findAll(pageable);
@@ -24,12 +36,38 @@ public class TripService {
         return tripRepository.findById(id);
     }
 
+    // El aporte del viaje se resta con sus valores anteriores y se suma con los nuevos, en la misma transacción.
+    // El viaje queda bloqueado desde antes de leer sus valores anteriores
     public Trip save(Trip trip) {
-        return tripRepository.save(trip);
+        return transactionTemplate.execute(status -> {
+            Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before = Map.of();
+            if (trip.getId() != null) {
+                productionAggregateService.lockTripsById(List.of(trip.getId()));
+                before = productionAggregateService.contributionsOf(List.of(trip.getId()));
+            }
+            Trip saved = tripRepository.saveAndFlush(trip);
+            actualizarProducciones(productionAggregateService.applyDifference(before,
+                productionAggregateService.contributionsOf(List.of(saved.getId()))));
+            return saved;
+        });
     }
 
     public void deleteById(Long id) {
-        tripRepository.deleteById(id);
+        transactionTemplate.executeWithoutResult(status -> {
+            productionAggregateService.lockTripsById(List.of(id));
+            Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before =
+                productionAggregateService.contributionsOf(List.of(id));
+            tripRepository.deleteById(id);
+            tripRepository.flush();
+            actualizarProducciones(productionAggregateService.applyDifference(before, Map.of()));
+        });
+    }
+
+    // Las producciones no validadas siguen a los totales solo cuando ya están completos
+    private void actualizarProducciones(Set<ProductionAggregateService.Key> changedAggregates) {
+        if (!changedAggregates.isEmpty() && productionAggregateService.isReady()) {
+            productionService.upsertFromAggregates(changedAggregates);
+        }
     }
 
     // Método optimizado para obtener todas las producciones (mantener compatibilidad)
@@ -126,6 +164,9 @@ public class TripService {
     public long deleteAll() {
         long count = tripRepository.count();
         tripRepository.deleteAll();
+        productionAggregateService.clear();
+        // Sin viajes, un archivo ya importado debe poder cargarse de nuevo
+        importedFileRepository.deleteAll();
         return count;
     }
 } 
\ No newline at end of file
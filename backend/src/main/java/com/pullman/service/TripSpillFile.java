@@ -0,0 +1,335 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Filas ya decodificadas de un archivo de viajes guardadas en un archivo binario local, para importarlas
+// sin volver a subir ni parsear el archivo original.
+// Formato: cabecera (archivo de origen y su huella), un registro por fila y al final las advertencias del encabezado.
+// Los números van como varint y cada texto distinto se escribe una sola vez: las repeticiones son un índice.
+public final class TripSpillFile {
+
+    private static final int MAGIC = 0x54535031; // "TSP1"
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Textos distintos que se recuerdan; los siguientes se escriben completos cada vez
+    private static final int MAX_STRINGS = 1 << 16;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_TRIP = 1;
+    private static final int TAG_INVALID = 2;
+
+    // Referencias a textos: 0 = null, 1 = texto nuevo a continuación, n = texto ya visto con índice n - 2
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    // Decimales: 0 = null, 1 = texto (no cabe en un long), n = escala n - 2 seguida del valor sin escala
+    private static final int DECIMAL_NULL = 0;
+    private static final int DECIMAL_TEXT = 1;
+    private static final int MAX_DECIMAL_SCALE = 64;
+
+    private TripSpillFile() {
+    }
+
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private long lastLineNumber;
+
+        public Writer(Path path, String fileName, long fileSize, String sha256) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            writeText(fileName != null ? fileName : "");
+            writeVarLong(fileSize);
+            writeText(sha256);
+        }
+
+        // trip null = fila inválida (se conserva su número de línea para el resultado por línea)
+        public void write(long lineNumber, Trip trip) throws IOException {
+            out.writeByte(trip != null ? TAG_TRIP : TAG_INVALID);
+            // Los números de línea son crecientes: se guarda la diferencia
+            writeVarLong(lineNumber - lastLineNumber);
+            lastLineNumber = lineNumber;
+            if (trip == null) {
+                return;
+            }
+            writeVarLong(zigZag(trip.getTravelDate().toEpochDay()));
+            writeVarLong(trip.getDepartureTime() != null ? trip.getDepartureTime().toSecondOfDay() + 1 : 0);
+            writeString(trip.getOrigin());
+            writeString(trip.getDestination());
+            writeString(trip.getRouteName());
+            writeString(trip.getServiceCode());
+            writeString(trip.getServiceType());
+            writeString(trip.getStatus());
+            writeString(trip.getBusNumber());
+            writeString(trip.getLicensePlate());
+            writeInteger(trip.getVehicleYear());
+            writeInteger(trip.getTotalSeats());
+            writeDecimal(trip.getInitialScore());
+            writeDecimal(trip.getAdditionalScore());
+            writeDecimal(trip.getTotalScore());
+            writeDecimal(trip.getCompensation());
+            writeDecimal(trip.getTotalCompensated());
+            writeString(trip.getCompanyRut());
+            writeString(trip.getCompanyName());
+            writeString(trip.getDriverName());
+            writeInteger(trip.getBranchSeats());
+            writeDecimal(trip.getBranchRevenue());
+            writeInteger(trip.getRoadSeats());
+            writeDecimal(trip.getRoadRevenue());
+            writeString(trip.getManualIncome());
+        }
+
+        public void finish(List<String> headerWarnings) throws IOException {
+            out.writeByte(TAG_END);
+            writeVarLong(headerWarnings.size());
+            for (String warning : headerWarnings) {
+                writeText(warning);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(STRING_NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index + 2L);
+                return;
+            }
+            writeVarLong(STRING_NEW);
+            writeText(value);
+            if (strings.size() < MAX_STRINGS) {
+                strings.put(value, strings.size());
+            }
+        }
+
+        private void writeInteger(Integer value) throws IOException {
+            writeVarLong(value != null ? zigZag(value) + 1 : 0);
+        }
+
+        private void writeDecimal(BigDecimal value) throws IOException {
+            if (value == null) {
+                writeVarLong(DECIMAL_NULL);
+            } else if (value.scale() >= 0 && value.scale() <= MAX_DECIMAL_SCALE && value.unscaledValue().bitLength() < 64) {
+                writeVarLong(value.scale() + 2L);
+                writeVarLong(zigZag(value.unscaledValue().longValue()));
+            } else {
+                writeVarLong(DECIMAL_TEXT);
+                writeText(value.toString());
+            }
+        }
+
+        private void writeText(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    // Lectura en el mismo orden en que se escribió, como cualquier otro lector de filas
+    public static class Reader implements TripRowReader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final String fileName;
+        private final long fileSize;
+        private final String sha256;
+        private List<String> headerWarnings = List.of();
+        private long lineNumber;
+        private Trip trip;
+        private boolean finished;
+
+        public Reader(Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Archivo de verificación con formato desconocido: " + path);
+                }
+                this.fileName = readText();
+                this.fileSize = readVarLong();
+                this.sha256 = readText();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (finished) {
+                return false;
+            }
+            int tag = in.readUnsignedByte();
+            if (tag == TAG_END) {
+                int count = (int) readVarLong();
+                List<String> warnings = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    warnings.add(readText());
+                }
+                headerWarnings = warnings;
+                finished = true;
+                trip = null;
+                return false;
+            }
+            lineNumber += readVarLong();
+            trip = tag == TAG_TRIP ? readTrip() : null;
+            return true;
+        }
+
+        @Override
+        public Trip trip() {
+            return trip;
+        }
+
+        @Override
+        public long lineNumber() {
+            return lineNumber;
+        }
+
+        // Se conocen al llegar al final del archivo
+        @Override
+        public List<String> headerWarnings() {
+            return headerWarnings;
+        }
+
+        // Los textos repetidos ya llegan como una sola instancia desde la tabla del archivo
+        @Override
+        public ImportStringDictionary dictionary() {
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private Trip readTrip() throws IOException {
+            Trip trip = new Trip();
+            trip.setTravelDate(LocalDate.ofEpochDay(unZigZag(readVarLong())));
+            long time = readVarLong();
+            trip.setDepartureTime(time != 0 ? LocalTime.ofSecondOfDay(time - 1) : null);
+            trip.setOrigin(readString());
+            trip.setDestination(readString());
+            trip.setRouteName(readString());
+            trip.setServiceCode(readString());
+            trip.setServiceType(readString());
+            trip.setStatus(readString());
+            trip.setBusNumber(readString());
+            trip.setLicensePlate(readString());
+            trip.setVehicleYear(readInteger());
+            trip.setTotalSeats(readInteger());
+            trip.setInitialScore(readDecimal());
+            trip.setAdditionalScore(readDecimal());
+            trip.setTotalScore(readDecimal());
+            trip.setCompensation(readDecimal());
+            trip.setTotalCompensated(readDecimal());
+            trip.setCompanyRut(readString());
+            trip.setCompanyName(readString());
+            trip.setDriverName(readString());
+            trip.setBranchSeats(readInteger());
+            trip.setBranchRevenue(readDecimal());
+            trip.setRoadSeats(readInteger());
+            trip.setRoadRevenue(readDecimal());
+            trip.setManualIncome(readString());
+            return trip;
+        }
+
+        private String readString() throws IOException {
+            long ref = readVarLong();
+            if (ref == STRING_NULL) {
+                return null;
+            }
+            if (ref != STRING_NEW) {
+                return strings.get((int) (ref - 2));
+            }
+            String value = readText();
+            if (strings.size() < MAX_STRINGS) {
+                strings.add(value);
+            }
+            return value;
+        }
+
+        private Integer readInteger() throws IOException {
+            long value = readVarLong();
+            return value != 0 ? (int) unZigZag(value - 1) : null;
+        }
+
+        private BigDecimal readDecimal() throws IOException {
+            long flag = readVarLong();
+            if (flag == DECIMAL_NULL) {
+                return null;
+            }
+            if (flag == DECIMAL_TEXT) {
+                return new BigDecimal(readText());
+            }
+            return BigDecimal.valueOf(unZigZag(readVarLong()), (int) (flag - 2));
+        }
+
+        private String readText() throws IOException {
+            byte[] bytes = new byte[(int) readVarLong()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Entero mal formado en el archivo de verificación");
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
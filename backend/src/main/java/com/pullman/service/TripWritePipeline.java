@@ -0,0 +1,204 @@
+package com.pullman.service;
+
+import com.pullman.domain.ImportRowResult;
+import com.pullman.domain.Trip;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Etapa de escritura de una importación: los lotes armados por el hilo que recorre el archivo se guardan
+// en hilos propios, conectados por una cola acotada (si los escritores no dan abasto, quien entrega espera).
+// Cada pipeline crea sus escritores y los termina al cerrarse: una importación nunca espera hilos tomados por otra,
+// venga de un trabajo en segundo plano, un zip, una petición síncrona o el directorio de ingesta.
+// El tamaño de lote se ajusta según la latencia observada de cada guardado.
+// Los lotes terminados vuelven por otra cola y los procesa el mismo hilo que los entregó.
+public class TripWritePipeline implements AutoCloseable {
+
+    private static final int INITIAL_BATCH_SIZE = 1000;
+    private static final int MIN_BATCH_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 20_000;
+    private static final Batch STOP = new Batch();
+
+    // Lote pendiente de guardar: viajes nuevos y actualizaciones (id existente -> datos del archivo)
+    public static class Batch {
+        final List<Trip> inserts = new ArrayList<>();
+        final Map<TripDedupIndex.Key, Trip> insertsByKey = new HashMap<>();
+        final Map<Long, Trip> updates = new LinkedHashMap<>();
+        // Claves de todas las filas del lote, para saber cuáles siguen sin guardar
+        final Set<TripDedupIndex.Key> keys = new HashSet<>();
+        // Líneas del archivo que terminan en este lote; el id del viaje se conoce después de guardar
+        final List<Row> rows = new ArrayList<>();
+        List<Trip> saved;
+        RuntimeException failure;
+
+        int size() {
+            return inserts.size() + updates.size();
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+
+        // Sin lista de guardados ni error: el lote se descartó por cancelación
+        boolean isDiscarded() {
+            return saved == null && failure == null;
+        }
+    }
+
+    // Línea del archivo y el viaje en que quedó (el mismo objeto si varias líneas se fusionaron)
+    public static class Row {
+        final long lineNumber;
+        final Trip trip;
+        final ImportRowResult.Outcome outcome;
+
+        Row(long lineNumber, Trip trip, ImportRowResult.Outcome outcome) {
+            this.lineNumber = lineNumber;
+            this.trip = trip;
+            this.outcome = outcome;
+        }
+    }
+
+    private final Function<Batch, List<Trip>> writer;
+    private final CsvImportJob job;
+    private final long targetFlushMillis;
+    private final int writerCount;
+    private final BlockingQueue<Batch> queue;
+    private final BlockingQueue<Batch> completed = new LinkedBlockingQueue<>();
+    private final CountDownLatch writersDone;
+    private volatile int batchSize = INITIAL_BATCH_SIZE;
+    private volatile boolean discarding;
+    private int submitted;
+    private boolean closed;
+
+    public TripWritePipeline(int writerCount, long targetFlushMillis, Function<Batch, List<Trip>> writer, CsvImportJob job) {
+        this.writer = writer;
+        this.job = job;
+        this.targetFlushMillis = targetFlushMillis;
+        this.writerCount = writerCount;
+        this.queue = new ArrayBlockingQueue<>(writerCount);
+        this.writersDone = new CountDownLatch(writerCount);
+        for (int i = 0; i < writerCount; i++) {
+            Thread thread = new Thread(this::runWriter, "csv-write-" + job.getId() + "-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // Tamaño de lote vigente según la latencia observada
+    public int batchSize() {
+        return batchSize;
+    }
+
+    // Entrega un lote; bloquea mientras la cola esté llena
+    public void submit(Batch batch) {
+        try {
+            queue.put(batch);
+            submitted++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Importación interrumpida", e);
+        }
+    }
+
+    // Procesa los lotes que ya terminaron, sin esperar
+    public void drainCompleted(Consumer<Batch> onCompleted) {
+        Batch done;
+        while ((done = completed.poll()) != null) {
+            submitted--;
+            onCompleted.accept(done);
+        }
+    }
+
+    // Espera a que terminen todos los lotes entregados
+    public void awaitAll(Consumer<Batch> onCompleted) {
+        try {
+            while (submitted > 0) {
+                Batch done = completed.take();
+                submitted--;
+                onCompleted.accept(done);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Importación interrumpida", e);
+        }
+    }
+
+    // Los lotes que aún no empezaron a guardarse se devuelven como descartados
+    public void discardQueued() {
+        discarding = true;
+        List<Batch> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        completed.addAll(pending);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        discardQueued();
+        try {
+            for (int i = 0; i < writerCount; i++) {
+                queue.put(STOP);
+            }
+            writersDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == STOP) {
+                    return;
+                }
+                if (!discarding) {
+                    write(batch);
+                }
+                completed.add(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writersDone.countDown();
+        }
+    }
+
+    private void write(Batch batch) {
+        long start = System.nanoTime();
+        try {
+            batch.saved = writer.apply(batch);
+            job.addSaved(batch.saved.size());
+        } catch (RuntimeException | Error e) {
+            batch.failure = e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e.getMessage(), e);
+            // Tras un error no tiene sentido seguir guardando los lotes en cola
+            discarding = true;
+            return;
+        }
+        adjustBatchSize(batch.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Filas por milisegundo del último guardado -> filas que caben en la latencia objetivo, suavizado con el tamaño anterior
+    private synchronized void adjustBatchSize(int rows, long elapsedMillis) {
+        if (rows == 0) {
+            return;
+        }
+        double rowsPerMillis = (double) rows / Math.max(1, elapsedMillis);
+        int target = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, rowsPerMillis * targetFlushMillis));
+        batchSize = (batchSize + target) / 2;
+    }
+}
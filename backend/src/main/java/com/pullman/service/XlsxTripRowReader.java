@@ -0,0 +1,277 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Lectura de la primera hoja de una planilla .xlsx con el modelo de eventos (SAX) de POI: el libro nunca se
+// carga completo. Un hilo propio recorre el XML de la hoja y deja las filas en una cola acotada; cada fila se
+// carga en un CsvTokenizer para usar el mismo plan de columnas que el CSV.
+public class XlsxTripRowReader implements TripRowReader {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final SheetRow END = new SheetRow(-1, List.of());
+    // Firma de un archivo zip (los .xlsx son paquetes zip)
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+
+    private final OPCPackage pkg;
+    private final Function<CsvTokenizer, TripBindingPlan> planCompiler;
+    private final BlockingQueue<SheetRow> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final CsvTokenizer row = new CsvTokenizer(Reader.nullReader());
+    private final Thread parser;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private TripBindingPlan plan;
+    private Trip trip;
+    private boolean finished;
+
+    private XlsxTripRowReader(OPCPackage pkg, StylesTable styles, ReadOnlySharedStringsTable strings,
+                              InputStream sheet, Function<CsvTokenizer, TripBindingPlan> planCompiler) {
+        this.pkg = pkg;
+        this.planCompiler = planCompiler;
+        this.parser = new Thread(() -> parse(styles, strings, sheet), "xlsx-reader");
+        this.parser.setDaemon(true);
+        this.parser.start();
+    }
+
+    // Se decide por contenido y no por nombre: los archivos llegan a disco como temporales
+    public static boolean isXlsx(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return isXlsx(in);
+        }
+    }
+
+    public static boolean isXlsx(InputStream in) throws IOException {
+        return Arrays.equals(in.readNBytes(ZIP_MAGIC.length), ZIP_MAGIC);
+    }
+
+    public static XlsxTripRowReader open(Path file, Function<CsvTokenizer, TripBindingPlan> planCompiler) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Planilla XLSX no válida: " + e.getMessage(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("La planilla no tiene hojas");
+            }
+            return new XlsxTripRowReader(pkg, styles, strings, sheets.next(), planCompiler);
+        } catch (OpenXML4JException | SAXException e) {
+            pkg.revert();
+            throw new IOException("Planilla XLSX no válida: " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (!finished) {
+            SheetRow sheetRow = take();
+            if (sheetRow == END) {
+                finished = true;
+                if (failure != null) {
+                    throw new IOException("Error leyendo la planilla: " + failure.getMessage(), failure);
+                }
+                break;
+            }
+            row.load(sheetRow.cells, sheetRow.lineNumber);
+            if (plan == null) {
+                plan = planCompiler.apply(row);
+                continue;
+            }
+            trip = plan.bind(row, row.lineNumber());
+            return true;
+        }
+        trip = null;
+        return false;
+    }
+
+    @Override
+    public Trip trip() {
+        return trip;
+    }
+
+    // Número de fila de la hoja (el mismo que muestra Excel)
+    @Override
+    public long lineNumber() {
+        return row.lineNumber();
+    }
+
+    @Override
+    public List<String> headerWarnings() {
+        return plan != null ? plan.getWarnings() : List.of();
+    }
+
+    @Override
+    public ImportStringDictionary dictionary() {
+        return plan != null ? plan.getDictionary() : null;
+    }
+
+    // Detiene el hilo de lectura (si la importación se cortó antes del final) y libera el paquete
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        queue.clear();
+        try {
+            parser.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private SheetRow take() throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lectura de la planilla interrumpida");
+        }
+    }
+
+    private void parse(StylesTable styles, ReadOnlySharedStringsTable strings, InputStream sheet) {
+        try (InputStream in = sheet) {
+            XMLReader xml = XMLHelper.newXMLReader();
+            xml.setContentHandler(new XSSFSheetXMLHandler(styles, strings, new RowCollector(), new SheetFormatter(), false));
+            xml.parse(new InputSource(in));
+        } catch (Exception | Error e) {
+            if (closed) {
+                return;
+            }
+            failure = e;
+        }
+        try {
+            publish(END);
+        } catch (Stopped e) {
+            // El lector ya se cerró
+        }
+    }
+
+    // Espera lugar en la cola revisando cada cierto tiempo si el lector se cerró
+    private void publish(SheetRow sheetRow) {
+        try {
+            while (!queue.offer(sheetRow, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new Stopped();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Stopped();
+        }
+    }
+
+    // Arma cada fila con sus celdas en orden de columna; las celdas ausentes quedan vacías
+    private class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private List<String> cells = new ArrayList<>();
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new ArrayList<>();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (closed) {
+                throw new Stopped();
+            }
+            // Igual que las líneas vacías del CSV, las filas sin contenido se omiten
+            for (String cell : cells) {
+                if (!cell.isBlank()) {
+                    publish(new SheetRow(rowNum + 1, cells));
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : cells.size();
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue != null ? formattedValue : "");
+        }
+    }
+
+    // Valores numéricos en la forma que esperan los decodificadores del CSV: fechas dd/MM/yyyy, horas
+    // "hh:mm AM/PM" y números sin separador de miles con coma decimal (sirve tanto para montos como para decimales)
+    private static final class SheetFormatter extends DataFormatter {
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mm a", Locale.US);
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                LocalDateTime dateTime = DateUtil.getLocalDateTime(value, false, true);
+                return hasDatePart(formatString) ? DATE_FORMAT.format(dateTime) : TIME_FORMAT.format(dateTime);
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString().replace('.', ',');
+        }
+
+        // Una celda con formato de solo hora va a la columna de hora; cualquier formato con día o año, a la de fecha
+        private static boolean hasDatePart(String formatString) {
+            String format = formatString.replaceAll("\\[[^]]*]|\"[^\"]*\"", "").toLowerCase(Locale.ROOT);
+            return format.indexOf('y') >= 0 || format.indexOf('d') >= 0;
+        }
+    }
+
+    private static final class SheetRow {
+        final long lineNumber;
+        final List<String> cells;
+
+        SheetRow(long lineNumber, List<String> cells) {
+            this.lineNumber = lineNumber;
+            this.cells = cells;
+        }
+    }
+
+    // Corta el recorrido del XML cuando el lector se cierra
+    private static final class Stopped extends RuntimeException {
+        Stopped() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.pullman.service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Recálculo en segundo plano de las producciones afectadas por el cambio de porcentaje de una zona
+public class ZoneRecalculationJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final Long zoneId;
+    private final String zoneName;
+    private final double oldPorcentaje;
+    private final double newPorcentaje;
+    private final Instant createdAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+    private volatile Map<String, Object> result;
+
+    public ZoneRecalculationJob(Long zoneId, String zoneName, double oldPorcentaje, double newPorcentaje) {
+        this.zoneId = zoneId;
+        this.zoneName = zoneName;
+        this.oldPorcentaje = oldPorcentaje;
+        this.newPorcentaje = newPorcentaje;
+    }
+
+    public void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    public void markFinished(Map<String, Object> result) {
+        this.result = result;
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    public void markFailed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getZoneId() {
+        return zoneId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("recalculationId", id);
+        map.put("zoneId", zoneId);
+        map.put("zoneName", zoneName);
+        map.put("oldPorcentaje", oldPorcentaje);
+        map.put("newPorcentaje", newPorcentaje);
+        map.put("status", status);
+        map.put("createdAt", createdAt);
+        map.put("finishedAt", finishedAt);
+        if (errorMessage != null) {
+            map.put("error", errorMessage);
+        }
+        if (result != null) {
+            map.put("result", result);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,143 @@
+package com.pullman.service;
+
+import com.pullman.domain.Zone;
+import com.pullman.repository.RouteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Al cambiar el porcentaje de una zona solo se recalcula lo que depende de ella: las empresas y decenas con viajes
+// en las rutas de la zona. Sus totales (production_aggregates) se vuelven a sumar desde los viajes y sus producciones
+// no validadas toman el nuevo total; el resultado informa el total anterior y el nuevo de cada producción.
+// Los recálculos van de a uno (zoneRecalculationExecutor), en el orden en que se editaron las zonas.
+@Service
+public class ZoneRecalculationService {
+
+    // Tiempo que se conservan los recálculos terminados para poder consultar su resultado
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    @Autowired
+    private RouteRepository routeRepository;
+
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+
+    @Autowired
+    private ProductionService productionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    @Qualifier("zoneRecalculationExecutor")
+    private TaskExecutor zoneRecalculationExecutor;
+
+    @Value("${pullman.zones.recalculation.ready-wait-seconds:600}")
+    private long readyWaitSeconds;
+
+    private final Map<String, ZoneRecalculationJob> jobs = new ConcurrentHashMap<>();
+    // Último recálculo de cada zona
+    private final Map<Long, ZoneRecalculationJob> latestByZone = new ConcurrentHashMap<>();
+
+    // Se llama después de guardar la zona: el recálculo lee el porcentaje ya confirmado
+    public ZoneRecalculationJob submit(Zone zone, double oldPorcentaje) {
+        evictFinishedJobs();
+        ZoneRecalculationJob job = new ZoneRecalculationJob(zone.getId(), zone.getNombre(), oldPorcentaje, zone.getPorcentaje());
+        jobs.put(job.getId(), job);
+        latestByZone.put(zone.getId(), job);
+        zoneRecalculationExecutor.execute(() -> run(job));
+        return job;
+    }
+
+    public Optional<ZoneRecalculationJob> findById(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Optional<ZoneRecalculationJob> findLatestByZone(Long zoneId) {
+        return Optional.ofNullable(latestByZone.get(zoneId));
+    }
+
+    private void run(ZoneRecalculationJob job) {
+        job.markRunning();
+        try {
+            job.markFinished(recalculate(job.getZoneId()));
+        } catch (RuntimeException e) {
+            System.err.println("Error recalculando producciones de la zona " + job.getZoneId() + ": " + e.getMessage());
+            job.markFailed(e.getMessage());
+        }
+    }
+
+    private Map<String, Object> recalculate(Long zoneId) {
+        long started = System.currentTimeMillis();
+        awaitAggregates(zoneId);
+        int routes = routeRepository.findByZonaId(zoneId).size();
+        List<Map<String, Object>> changes = new ArrayList<>();
+        Map<String, Object> result = new HashMap<>();
+        result.put("routes", routes);
+        if (routes == 0) {
+            result.put("affectedAggregates", 0);
+            result.put("changes", changes);
+            result.put("millis", System.currentTimeMillis() - started);
+            return result;
+        }
+
+        Map<String, Object> productions = transactionTemplate.execute(status -> {
+            // Las escrituras de viajes en curso terminan antes de buscar las claves, y las nuevas esperan al recálculo
+            productionAggregateService.lockTrips();
+            Set<ProductionAggregateService.Key> keys = productionAggregateService.keysOnZoneRoutes(zoneId);
+            productionAggregateService.recompute(keys);
+            result.put("affectedAggregates", keys.size());
+            return productionService.upsertFromAggregates(keys, changes);
+        });
+
+        changes.sort(Comparator.comparing((Map<String, Object> change) -> (String) change.get("decena"))
+            .thenComparing(change -> (String) change.get("companyName")));
+        result.put("created", productions.get("created"));
+        result.put("updated", productions.get("updated"));
+        result.put("validatedSkipped", productions.get("validatedSkipped"));
+        result.put("changes", changes);
+        result.put("millis", System.currentTimeMillis() - started);
+        System.out.println("Zona " + zoneId + " recalculada: " + result.get("affectedAggregates") + " empresas y decenas, "
+            + changes.size() + " producciones con cambios en " + result.get("millis") + " ms");
+        return result;
+    }
+
+    // Las producciones se escriben desde production_aggregates: mientras se preparan al arrancar los totales están
+    // incompletos, así que el recálculo espera; si no terminan a tiempo falla sin escribir nada
+    private void awaitAggregates(Long zoneId) {
+        long limit = System.currentTimeMillis() + readyWaitSeconds * 1000;
+        while (!productionAggregateService.isReady()) {
+            if (System.currentTimeMillis() >= limit) {
+                throw new IllegalStateException("Los totales por empresa y decena aún se están preparando (" +
+                    productionAggregateService.getStartStatus().get("state") + "); no se recalculó la zona " + zoneId +
+                    ". Vuelva a guardarla cuando /api/productions/aggregates/status indique READY");
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Recálculo de la zona " + zoneId + " interrumpido esperando los totales por empresa y decena");
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant limit = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(limit));
+        latestByZone.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(limit));
+    }
+}
@@ -15,6 +15,9 @@ public class ZoneService {
     @Autowired
     private ZoneRepository zoneRepository;
 
+    @Autowired
+    private RouteZoneIndex routeZoneIndex;
+
     public Page<Zone> findAll(Pageable pageable) {
         return zoneRepository.findAll(pageable);
     }
@@ -24,10 +27,13 @@ public class ZoneService {
     }
 
     public Zone save(Zone zone) {
-        return zoneRepository.save(zone);
+        Zone saved = zoneRepository.save(zone);
+        routeZoneIndex.rebuild();
+        return saved;
     }
 
     public void deleteById(Long id) {
         zoneRepository.deleteById(id);
+        routeZoneIndex.rebuild();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.pullman.service;
+
+import com.pullman.domain.Zone;
+import com.pullman.repository.ZoneRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Simulación de porcentajes de zona: cuánto pagaría cada empresa en una decena si sus zonas tuvieran otros
+// porcentajes. Se calcula en memoria sobre el snapshot columnar de la decena (DecenaSnapshotCache);
+// no se guarda nada, así se pueden comparar muchos escenarios seguidos.
+@Service
+public class ZoneSimulationService {
+
+    @Autowired
+    private ZoneRepository zoneRepository;
+
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    // porcentajes: zona -> porcentaje simulado; las zonas que no aparecen conservan su porcentaje actual
+    public Map<String, Object> simulate(String decena, Map<Long, Double> porcentajes) {
+        if (decena == null || !decena.matches("[123](0[1-9]|1[0-2])\\d{4}")) {
+            throw new IllegalArgumentException("Decena inválida: " + decena);
+        }
+        for (Map.Entry<Long, Double> entry : porcentajes.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() < 0) {
+                throw new IllegalArgumentException("Porcentaje inválido para la zona " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        long started = System.nanoTime();
+
+        Map<Long, Double> actuales = new HashMap<>();
+        for (Zone zone : zoneRepository.findAll()) {
+            actuales.put(zone.getId(), zone.getPorcentaje());
+        }
+        TreeSet<Long> unknownZones = new TreeSet<>(porcentajes.keySet());
+        unknownZones.removeAll(actuales.keySet());
+
+        Map<Long, Double> simulados = new HashMap<>(actuales);
+        simulados.putAll(porcentajes);
+        DecenaSnapshot snapshot = decenaSnapshotCache.get(decena);
+        int companies = snapshot.companyCount();
+        // Una zona que ya no existe no aporta ganancia, igual que al generar
+        long[] revenue = snapshot.revenueCentsByCompany();
+        double[] currentTotal = snapshot.gananciaByCompany(snapshot.zonePercentages(actuales));
+        double[] simulatedTotal = snapshot.gananciaByCompany(snapshot.zonePercentages(simulados));
+
+        List<Map<String, Object>> entrepreneurs = new ArrayList<>(companies);
+        double totalCurrent = 0;
+        double totalSimulated = 0;
+        for (int company = 0; company < companies; company++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("companyName", snapshot.companyName(company));
+            row.put("revenue", revenue[company] / 100.0);
+            row.put("currentTotal", currentTotal[company]);
+            row.put("simulatedTotal", simulatedTotal[company]);
+            row.put("difference", simulatedTotal[company] - currentTotal[company]);
+            entrepreneurs.add(row);
+            totalCurrent += currentTotal[company];
+            totalSimulated += simulatedTotal[company];
+        }
+        entrepreneurs.sort(Comparator.comparing(row -> (String) row.get("companyName")));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("decena", decena);
+        result.put("porcentajes", porcentajes);
+        result.put("unknownZones", unknownZones);
+        result.put("entrepreneurs", entrepreneurs);
+        result.put("trips", snapshot.size());
+        result.put("totalCurrent", totalCurrent);
+        result.put("totalSimulated", totalSimulated);
+        result.put("difference", totalSimulated - totalCurrent);
+        result.put("millis", (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+}
@@ -0,0 +1,25 @@
+package com.pullman.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Forma canónica de nombres de ciudades, rutas y empresas para compararlos:
+// sin tildes, en mayúsculas y con los espacios colapsados ("  San  José " -> "SAN JOSE")
+public final class NameNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private NameNormalizer() {
+    }
+
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+        String plain = MARKS.matcher(decomposed).replaceAll("");
+        return SPACES.matcher(plain).replaceAll(" ").toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,203 @@
+package com.pullman.service;
+
+import com.pullman.domain.Route;
+import com.pullman.domain.Zone;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Importación COPY contra una base PostgreSQL de pruebas (mismas variables que ProductionAggregatesIntegrationTest).
+// El mismo par de archivos se importa por COPY y por JPA con empresas y ciudades distintas (un prefijo por modo):
+// los totales, el resultado de cada línea y los totales por empresa y decena deben coincidir
+@SpringBootTest
+@EnabledIfEnvironmentVariable(named = "PULLMAN_TEST_DB_URL", matches = ".+")
+class CopyImportIntegrationTest {
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("PULLMAN_TEST_DB_URL"));
+        registry.add("spring.datasource.username", () -> env("PULLMAN_TEST_DB_USER", "pullman_user"));
+        registry.add("spring.datasource.password", () -> env("PULLMAN_TEST_DB_PASSWORD", "pullman_pass"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("pullman.normalized-keys.backfill", () -> "false");
+    }
+
+    private static final String HEADER =
+        "travel_date,departure_time,origin,destination,company_name,branch_revenue,road_revenue,manual_income,bus_number\n";
+
+    @Autowired
+    private CsvImportService csvImportService;
+    @Autowired
+    private RouteService routeService;
+    @Autowired
+    private ZoneService zoneService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String suffix;
+    private final List<String> companies = new ArrayList<>();
+    private final List<String> importIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        suffix = Long.toString(System.nanoTime(), 36).toUpperCase();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (String company : companies) {
+            jdbcTemplate.update("DELETE FROM trips WHERE company_name = ?", company);
+            jdbcTemplate.update("DELETE FROM production_aggregates WHERE company_name = ?", company);
+            jdbcTemplate.update("DELETE FROM productions WHERE entrepreneur_id IN (SELECT id FROM entrepreneurs WHERE nombre = ?)", company);
+            jdbcTemplate.update("DELETE FROM entrepreneurs WHERE nombre = ?", company);
+        }
+        for (String importId : importIds) {
+            jdbcTemplate.update("DELETE FROM import_row_results WHERE import_id = ?", importId);
+            jdbcTemplate.update("DELETE FROM imported_files WHERE import_id = ?", importId);
+        }
+        jdbcTemplate.update("DELETE FROM routes WHERE origen LIKE ?", "%" + suffix);
+        jdbcTemplate.update("DELETE FROM zones WHERE nombre LIKE ?", "%" + suffix);
+    }
+
+    @Test
+    void copyMatchesJpaOnCountsLineOutcomesAndAggregates() throws IOException {
+        Map<String, Object> copyFirst = importCsv(firstFile("C"), ImportMode.COPY);
+        Map<String, Object> copySecond = importCsv(secondFile("C"), ImportMode.COPY);
+        Map<String, Object> jpaFirst = importCsv(firstFile("J"), ImportMode.JPA);
+        Map<String, Object> jpaSecond = importCsv(secondFile("J"), ImportMode.JPA);
+
+        // Primer archivo: dos claves nuevas (una repetida más abajo, gana la última) y una fila sin bus
+        assertEquals(List.of(3, 1, 0), counts(copyFirst));
+        assertEquals(Map.of(2L, "INSERTED", 3L, "INSERTED", 4L, "UPDATED", 5L, "INSERTED"), lineOutcomes(copyFirst));
+        // Segundo archivo: una clave igual, una con otro ingreso, una nueva y otra fila sin bus
+        assertEquals(List.of(2, 1, 1), counts(copySecond));
+        assertEquals(Map.of(2L, "UNCHANGED", 3L, "UPDATED", 4L, "INSERTED", 5L, "INSERTED"), lineOutcomes(copySecond));
+
+        assertEquals(counts(copyFirst), counts(jpaFirst));
+        assertEquals(counts(copySecond), counts(jpaSecond));
+        assertEquals(lineOutcomes(copyFirst), lineOutcomes(jpaFirst));
+        assertEquals(lineOutcomes(copySecond), lineOutcomes(jpaSecond));
+
+        // Las filas sin bus no se deduplican: quedan las dos, cada una con su viaje
+        assertEquals(2, tripsWithoutBus("C"));
+        assertEquals(2, tripsWithoutBus("J"));
+        for (Map<String, Object> result : List.of(copyFirst, copySecond)) {
+            assertNotNull(jdbcTemplate.queryForObject("SELECT trip_id FROM import_row_results WHERE import_id = ? AND line_number = 5",
+                Long.class, result.get("importId")));
+        }
+
+        assertEquals(aggregates("J"), aggregates("C"));
+    }
+
+    private Map<String, Object> importCsv(String csv, ImportMode mode) throws IOException {
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        CsvImportJob job = new CsvImportJob("copy-" + mode + ".csv", bytes.length);
+        job.markRunning();
+        importIds.add(job.getId());
+        return csvImportService.importTripsAndUnconfiguredCities(new ByteArrayInputStream(bytes), job, mode);
+    }
+
+    // Una zona y su ruta por modo; el viaje de B va en sentido inverso y el de C por un tramo sin ruta
+    private String firstFile(String mode) {
+        Zone zone = zone(mode + " ZONA", 15);
+        route(mode + " NORTE", mode + " SUR", zone);
+        String a = company(mode + " EMPRESA A");
+        String b = company(mode + " EMPRESA B");
+        return HEADER +
+            "02/03/2032,08:00 AM," + city(mode, "NORTE") + "," + city(mode, "SUR") + "," + a + ",1000,200,$ 1.300,101\n" +
+            "03/03/2032,09:30 AM," + city(mode, "SUR") + "," + city(mode, "NORTE") + "," + b + ",500,0,,102\n" +
+            "02/03/2032,08:00 AM," + city(mode, "NORTE") + "," + city(mode, "SUR") + "," + a + ",1200,200,$ 1.300,101\n" +
+            "04/03/2032,10:15 PM," + city(mode, "NORTE") + "," + city(mode, "SUR") + "," + a + ",300,,\n";
+    }
+
+    private String secondFile(String mode) {
+        String a = mode + " EMPRESA A " + suffix;
+        String b = mode + " EMPRESA B " + suffix;
+        String c = company(mode + " EMPRESA C");
+        return HEADER +
+            "02/03/2032,08:00 AM," + city(mode, "NORTE") + "," + city(mode, "SUR") + "," + a + ",1200,200,$ 1.300,101\n" +
+            "03/03/2032,09:30 AM," + city(mode, "SUR") + "," + city(mode, "NORTE") + "," + b + ",650,0,,102\n" +
+            "15/03/2032,06:45 AM," + city(mode, "ESTE") + "," + city(mode, "OESTE") + "," + c + ",800,100,,103\n" +
+            "04/03/2032,10:15 PM," + city(mode, "NORTE") + "," + city(mode, "SUR") + "," + a + ",300,,\n";
+    }
+
+    private String city(String mode, String name) {
+        return mode + " " + name + " " + suffix;
+    }
+
+    private static List<Integer> counts(Map<String, Object> result) {
+        return List.of((Integer) result.get("inserted"), (Integer) result.get("updated"), (Integer) result.get("unchanged"));
+    }
+
+    // Línea -> resultado registrado
+    private Map<Long, String> lineOutcomes(Map<String, Object> result) {
+        Map<Long, String> outcomes = new TreeMap<>();
+        jdbcTemplate.query("SELECT line_number, outcome FROM import_row_results WHERE import_id = ?",
+            rs -> {
+                outcomes.put(rs.getLong(1), rs.getString(2));
+            }, result.get("importId"));
+        return outcomes;
+    }
+
+    private long tripsWithoutBus(String mode) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trips WHERE company_name = ? AND bus_number IS NULL",
+            Long.class, mode + " EMPRESA A " + suffix);
+    }
+
+    // Empresa (sin el prefijo del modo) y decena -> "viajes / ingresos / ganancia"
+    private Map<String, String> aggregates(String mode) {
+        Map<String, String> result = new TreeMap<>();
+        jdbcTemplate.query("SELECT company_name, decena, trip_count, revenue, ganancia FROM production_aggregates " +
+            "WHERE company_name LIKE ? AND company_name LIKE ?",
+            rs -> {
+                result.put(rs.getString(1).substring(mode.length() + 1) + "@" + rs.getString(2), rs.getLong(3) + " / "
+                    + rs.getBigDecimal(4).stripTrailingZeros().toPlainString() + " / "
+                    + rs.getBigDecimal(5).stripTrailingZeros().toPlainString());
+            }, mode + " %", "%" + suffix);
+        return result;
+    }
+
+    private Zone zone(String nombre, double porcentaje) {
+        Zone zone = new Zone();
+        zone.setNombre(nombre + " " + suffix);
+        zone.setPorcentaje(porcentaje);
+        return zoneService.save(zone);
+    }
+
+    private Route route(String origen, String destino, Zone zone) {
+        Route route = new Route();
+        route.setOrigen(origen + " " + suffix);
+        route.setDestino(destino + " " + suffix);
+        route.setZona(zone);
+        route.setEditable(true);
+        return routeService.save(route);
+    }
+
+    private String company(String name) {
+        String company = name + " " + suffix;
+        companies.add(company);
+        return company;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
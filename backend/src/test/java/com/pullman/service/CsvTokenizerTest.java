@@ -0,0 +1,86 @@
+package com.pullman.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Registros y números de línea del tokenizador, con un buffer chico para que los registros crucen el borde del buffer
+class CsvTokenizerTest {
+
+    @Test
+    void escapedQuotesAreResolvedInPlace() throws IOException {
+        assertEquals(List.of("1: [x\"y] [\"] [] [a\"\"b]"),
+            records("\"x\"\"y\",\"\"\"\",\"\",a\"\"b\n"));
+    }
+
+    @Test
+    void lineBreaksInsideQuotedFields() throws IOException {
+        assertEquals(List.of("1: [a] [uno\ndos] [b]", "3: [c] [tres\r\ncuatro] [d]", "5: [e] [f]"),
+            records("a,\"uno\ndos\",b\nc,\"tres\r\ncuatro\",d\r\ne,f\r\n"));
+    }
+
+    @Test
+    void quoteInsideUnquotedFieldIsText() throws IOException {
+        // Sin la regla la comilla abriría un campo y se tragaría la línea siguiente
+        assertEquals(List.of("1: [PUERTO 5\" NORTE] [x]", "2: [y] [z]"),
+            records("PUERTO 5\" NORTE,x\ny,z\n"));
+    }
+
+    @Test
+    void quotedFieldMayFollowSpaces() throws IOException {
+        assertEquals(List.of("1: [a,b ] [c]"), records(" \"a,b\" ,c\n"));
+    }
+
+    @Test
+    void blankLinesAreSkippedButCounted() throws IOException {
+        assertEquals(List.of("3: [a] [b]", "5: [c]"), records("\n  \na,b\n\nc"));
+    }
+
+    @Test
+    void oversizedRecordIsReportedAndReadingResumes() throws IOException {
+        StringBuilder csv = new StringBuilder("a,b\n\"sin cerrar,x\n");
+        int rows = CsvTokenizer.MAX_RECORD_CHARS / 8 + 10;
+        for (int i = 0; i < rows; i++) {
+            csv.append("fila").append(i).append(",v\n");
+        }
+        try (CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv.toString()), 1024)) {
+            assertTrue(tokenizer.next());
+            assertFalse(tokenizer.isOversized());
+            assertTrue(tokenizer.next());
+            assertTrue(tokenizer.isOversized());
+            assertEquals(2, tokenizer.lineNumber());
+            assertEquals(0, tokenizer.fieldCount());
+            assertTrue(tokenizer.next());
+            assertFalse(tokenizer.isOversized());
+            assertEquals(3, tokenizer.lineNumber());
+            assertEquals("fila0", tokenizer.field(0));
+            int read = 1;
+            while (tokenizer.next()) {
+                read++;
+            }
+            assertEquals(rows, read);
+        }
+    }
+
+    // "línea: [campo] [campo]..." por registro
+    private static List<String> records(String csv) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv), 4)) {
+            while (tokenizer.next()) {
+                StringBuilder sb = new StringBuilder().append(tokenizer.lineNumber()).append(":");
+                for (int i = 0; i < tokenizer.fieldCount(); i++) {
+                    sb.append(" [").append(tokenizer.field(i)).append("]");
+                }
+                records.add(sb.toString());
+            }
+        }
+        return records;
+    }
+}
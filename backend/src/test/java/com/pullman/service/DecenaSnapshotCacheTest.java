@@ -0,0 +1,108 @@
+package com.pullman.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+// Una decena cuyos viajes cambian se descarta al escribir y otra vez al confirmar la transacción: un snapshot armado
+// entre ambos momentos no ve los cambios aún sin confirmar y no debe quedar guardado
+@ExtendWith(MockitoExtension.class)
+class DecenaSnapshotCacheTest {
+
+    private static final String DECENA = "1072025";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private RouteZoneIndex routeZoneIndex;
+
+    @InjectMocks
+    private DecenaSnapshotCache cache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "maxDecenas", 12);
+    }
+
+    @Test
+    void snapshotIsDiscardedAgainAfterTheTripWriteCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            DecenaSnapshot first = cache.get(DECENA);
+            assertSame(first, cache.get(DECENA));
+            assertStats(1, 1);
+
+            // Escritura de viajes de la decena dentro de la transacción
+            cache.invalidate(Set.of(DECENA));
+            DecenaSnapshot duringTransaction = cache.get(DECENA);
+            assertNotSame(first, duringTransaction);
+            assertStats(1, 2);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            assertNotSame(duringTransaction, cache.get(DECENA));
+            assertStats(1, 3);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void otherDecenasStayCached() {
+        DecenaSnapshot other = cache.get("2072025");
+        cache.get(DECENA);
+        cache.invalidate(Set.of(DECENA));
+
+        assertSame(other, cache.get("2072025"));
+        cache.get(DECENA);
+        assertStats(1, 3);
+    }
+
+    @Test
+    void readStartedBeforeAnInvalidationIsNotKept() {
+        // Otra escritura confirma mientras se leen los viajes
+        doAnswer(invocation -> {
+            cache.invalidate(Set.of(DECENA));
+            return null;
+        }).doNothing().when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(), any());
+
+        cache.get(DECENA);
+        DecenaSnapshot reread = cache.get(DECENA);
+        assertSame(reread, cache.get(DECENA));
+        assertStats(1, 2);
+    }
+
+    @Test
+    void routeChangeDiscardsSnapshots() {
+        when(routeZoneIndex.getVersion()).thenReturn(1L, 1L, 2L);
+
+        DecenaSnapshot first = cache.get(DECENA);
+        assertSame(first, cache.get(DECENA));
+        assertNotSame(first, cache.get(DECENA));
+        assertStats(1, 2);
+    }
+
+    private void assertStats(long hits, long misses) {
+        assertEquals(hits, cache.stats().get("hits"));
+        assertEquals(misses, cache.stats().get("misses"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.pullman.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Casos dorados: cada decodificador rápido debe dar exactamente lo mismo que la implementación anterior
+// (DateTimeFormatter, split, BigDecimal y regex + parseDouble), copiada aquí tal como estaba en CsvImportService
+// y ProductionService antes de FieldDecoders
+class FieldDecodersTest {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final DateTimeFormatter ALT_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "01/07/2025", "10/07/2025", "31/12/1999", "01-07-2025", "15-03-2024",
+        // Día inexistente: DateTimeFormatter (SMART) lo lleva al último del mes
+        "31/04/2025", "29/02/2023", "29/02/2024", "31-06-2025",
+        // Inválidas
+        "00/01/2025", "01/00/2025", "01/13/2025", "32/01/2025", "01/01/0000", "31/04/0000",
+        "1/7/2025", "01/7/2025", "01/07-2025", "01.07.2025", "2025-07-01", "aa/bb/cccc", "", "01/07/2025x"
+    })
+    void dateMatchesLegacy(String value) {
+        FieldDecoders.DateDecoder decoder = new FieldDecoders.DateDecoder();
+        LocalDate expected = legacyDate(value);
+        assertEquals(expected, decode(decoder, value), value);
+        // La segunda vez sale de la última fecha recordada
+        assertEquals(expected, decode(decoder, value), value);
+    }
+
+    @Test
+    void dateDecoderReusedAcrossValues() {
+        FieldDecoders.DateDecoder decoder = new FieldDecoders.DateDecoder();
+        String[] values = {"01/07/2025", "01/07/2025", "31/04/2025", "00/01/2025", "01/07/2025", "01-07-2025", "01/01/0000"};
+        for (String value : values) {
+            assertEquals(legacyDate(value), decode(decoder, value), value);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "04:45 AM", "10:30 PM", "12:00 AM", "12:30 PM", "12:00 PM", "9:05 pm", "1:5 am", "11:59 PM", "10:30:45 PM",
+        // Dos espacios: el sufijo queda vacío y no se ajusta
+        "10:30  PM",
+        // Hora de 24h con PM: pasa de 23 y queda en 00:00
+        "16:30 PM", "23:59 PM",
+        "24:00 AM", "10:60 PM", "10:30 XM", "10:30 PMX", "10:30 P", "-1:30 PM", "+1:30 PM", "ab:cd PM", "10: PM",
+        ":30 PM", "10:30", "10:30PM", "", " ", "123:30 PM"
+    })
+    void timeMatchesLegacy(String value) {
+        char[] buf = value.toCharArray();
+        assertEquals(legacyTime(value), FieldDecoders.decodeTime(buf, 0, buf.length), value);
+        assertEquals(legacyTimeOrNull(value), FieldDecoders.decodeTimeOrNull(buf, 0, buf.length), value);
+    }
+
+    @Test
+    void unparseableTimeIsNullOnlyWhereLegacyFailed() {
+        char[] midnight = "12:00 AM".toCharArray();
+        assertEquals(LocalTime.MIDNIGHT, FieldDecoders.decodeTimeOrNull(midnight, 0, midnight.length));
+        char[] invalid = "16:30 PM".toCharArray();
+        assertNull(FieldDecoders.decodeTimeOrNull(invalid, 0, invalid.length));
+        assertEquals(LocalTime.MIDNIGHT, FieldDecoders.decodeTime(invalid, 0, invalid.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "0", "12", "-12", "+12", "12.5", "12,5", "0.05", "0,05", "-0,5", "1,", "1.", ",5", ".5", "1.2.3", "1,2,3",
+        "1e3", "12 ", "abc", "", "-", "+", "--1", "999999999999999999", "9999999999999999999", "123456789012345678.25"
+    })
+    void decimalMatchesLegacy(String value) {
+        char[] buf = value.toCharArray();
+        assertEquals(legacyDecimal(value), FieldDecoders.decodeDecimal(buf, 0, buf.length), value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$1.234.567", "$1.234,50", "1.234", "$0", "$-1.000", "-$1.000", "$+1.000", "1,", "0.05", "0,05", "1.2.3",
+        "1,2,3", "$", "$.", "", "abc", "$1 000", "12,5", "$9.999.999.999.999.999.999", "1e3"
+    })
+    void currencyMatchesLegacy(String value) {
+        char[] buf = value.toCharArray();
+        assertEquals(legacyCurrency(value), FieldDecoders.decodeCurrency(buf, 0, buf.length), value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "1500", "$1.500", "$ 1500", "1.500,50", "$-1.000", "-5", "5-", "--5", "-", ".", ".5", "5.", "0.05", "1,",
+        "1.2.3", "-0", "-0.0", "00012.50", "abc", "12 pesos", "1234567890123456789", "12345678901234567890.5",
+        "0.000000000000000000000001", "9007199254740993"
+    })
+    void manualIncomeMatchesLegacy(String value) {
+        assertEquals(legacyManualIncome(value), FieldDecoders.decodeManualIncome(value), value);
+    }
+
+    @Test
+    void manualIncomeWithoutValueIsZero() {
+        assertEquals(0, FieldDecoders.decodeManualIncome(null));
+        assertEquals(0, FieldDecoders.decodeManualIncome(""));
+    }
+
+    private static LocalDate decode(FieldDecoders.DateDecoder decoder, String value) {
+        char[] buf = value.toCharArray();
+        return decoder.decode(buf, 0, buf.length);
+    }
+
+    // Implementaciones anteriores
+
+    private static LocalDate legacyDate(String value) {
+        try {
+            return LocalDate.parse(value, DATE_FORMAT);
+        } catch (Exception e) {
+            try {
+                return LocalDate.parse(value, ALT_DATE_FORMAT);
+            } catch (Exception e2) {
+                return null;
+            }
+        }
+    }
+
+    private static LocalTime legacyTime(String timeStr) {
+        LocalTime time = legacyTimeOrNull(timeStr);
+        return time != null ? time : LocalTime.of(0, 0);
+    }
+
+    private static LocalTime legacyTimeOrNull(String timeStr) {
+        try {
+            String[] parts = timeStr.split(" ");
+            String time = parts[0];
+            String ampm = parts[1];
+
+            String[] timeParts = time.split(":");
+            int hour = Integer.parseInt(timeParts[0]);
+            int minute = Integer.parseInt(timeParts[1]);
+
+            if (ampm.equalsIgnoreCase("PM") && hour != 12) {
+                hour += 12;
+            } else if (ampm.equalsIgnoreCase("AM") && hour == 12) {
+                hour = 0;
+            }
+
+            return LocalTime.of(hour, minute);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal legacyDecimal(String value) {
+        try {
+            return new BigDecimal(value.replace(",", "."));
+        } catch (Exception e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private static BigDecimal legacyCurrency(String value) {
+        try {
+            return new BigDecimal(value.replace("$", "").replace(".", "").replace(",", "."));
+        } catch (Exception e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private static double legacyManualIncome(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value.replaceAll("[^\\d.-]", ""));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.pullman.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Diferencia neta entre el aporte anterior y el nuevo de los viajes escritos: solo se envían las claves que cambian,
+// en el orden de las claves
+class ProductionAggregateServiceTest {
+
+    private final ProductionAggregateService service = new ProductionAggregateService();
+
+    @Test
+    void unchangedKeysAreNotWritten() throws Exception {
+        Connection connection = mock(Connection.class);
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before =
+            Map.of(key("EMPRESA A", "1072025"), delta(2, "100.50", "10.05"));
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> after =
+            Map.of(key("EMPRESA A", "1072025"), delta(2, "100.5", "10.050"));
+
+        assertEquals(Set.of(), service.applyDifference(connection, before, after));
+        verify(connection, never()).prepareStatement(anyString());
+    }
+
+    @Test
+    void tripMovedToAnotherCompanyAndDecena() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(ps);
+
+        // Dos viajes de A en la primera decena; uno pasa a B en la segunda con otro ingreso
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before = new HashMap<>();
+        before.put(key("EMPRESA A", "1072025"), delta(2, "300", "30"));
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> after = new HashMap<>();
+        after.put(key("EMPRESA A", "1072025"), delta(1, "100", "10"));
+        after.put(key("EMPRESA B", "2072025"), delta(1, "250", "0"));
+
+        Set<ProductionAggregateService.Key> changed = service.applyDifference(connection, before, after);
+
+        assertEquals(Set.of(key("EMPRESA A", "1072025"), key("EMPRESA B", "2072025")), changed);
+        InOrder order = inOrder(ps);
+        order.verify(ps).setString(1, "EMPRESA A");
+        order.verify(ps).setString(2, "1072025");
+        order.verify(ps).setLong(3, -1);
+        order.verify(ps).setBigDecimal(4, new BigDecimal("-200"));
+        order.verify(ps).setBigDecimal(5, new BigDecimal("-20"));
+        order.verify(ps).addBatch();
+        order.verify(ps).setString(1, "EMPRESA B");
+        order.verify(ps).setString(2, "2072025");
+        order.verify(ps).setLong(3, 1);
+        order.verify(ps).setBigDecimal(4, new BigDecimal("250"));
+        order.verify(ps).setBigDecimal(5, new BigDecimal("0"));
+        order.verify(ps).addBatch();
+        order.verify(ps).executeBatch();
+    }
+
+    @Test
+    void deletedTripsAreSubtracted() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(ps);
+
+        Set<ProductionAggregateService.Key> changed = service.applyDifference(connection,
+            Map.of(key("EMPRESA A", "3072025"), delta(3, "90.30", "9.03")), Map.of());
+
+        assertEquals(Set.of(key("EMPRESA A", "3072025")), changed);
+        verify(ps).setLong(3, -3);
+        verify(ps).setBigDecimal(4, new BigDecimal("-90.30"));
+        verify(ps).setBigDecimal(5, new BigDecimal("-9.03"));
+        verify(ps, times(1)).addBatch();
+    }
+
+    @Test
+    void decenasIncludeKeysWhoseTotalsDidNotMove() {
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> before =
+            Map.of(key("EMPRESA A", "1072025"), delta(1, "100", "10"));
+        Map<ProductionAggregateService.Key, ProductionAggregateService.Delta> after =
+            Map.of(key("EMPRESA A", "1072025"), delta(1, "100", "10"), key("EMPRESA A", "2072025"), delta(1, "5", "0"));
+
+        assertEquals(Set.of("1072025", "2072025"), service.decenasOf(before, after));
+    }
+
+    private static ProductionAggregateService.Key key(String companyName, String decena) {
+        return new ProductionAggregateService.Key(companyName, decena);
+    }
+
+    private static ProductionAggregateService.Delta delta(long tripCount, String revenue, String ganancia) {
+        ProductionAggregateService.Delta delta = new ProductionAggregateService.Delta();
+        delta.tripCount = tripCount;
+        delta.revenue = new BigDecimal(revenue);
+        delta.ganancia = new BigDecimal(ganancia);
+        return delta;
+    }
+}
@@ -0,0 +1,347 @@
+package com.pullman.service;
+
+import com.pullman.domain.Route;
+import com.pullman.domain.Trip;
+import com.pullman.domain.Zone;
+import com.pullman.repository.TripRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Contra una base PostgreSQL de pruebas (PULLMAN_TEST_DB_URL, y PULLMAN_TEST_DB_USER / PULLMAN_TEST_DB_PASSWORD si
+// no son los de application.properties). Cada prueba usa empresas, ciudades y zonas con un sufijo propio y las borra
+// al terminar, así no depende de lo que ya tenga la base
+@SpringBootTest
+@EnabledIfEnvironmentVariable(named = "PULLMAN_TEST_DB_URL", matches = ".+")
+class ProductionAggregatesIntegrationTest {
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getenv("PULLMAN_TEST_DB_URL"));
+        registry.add("spring.datasource.username", () -> env("PULLMAN_TEST_DB_USER", "pullman_user"));
+        registry.add("spring.datasource.password", () -> env("PULLMAN_TEST_DB_PASSWORD", "pullman_pass"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("pullman.normalized-keys.backfill", () -> "false");
+    }
+
+    @Autowired
+    private TripService tripService;
+    @Autowired
+    private TripRepository tripRepository;
+    @Autowired
+    private RouteService routeService;
+    @Autowired
+    private ZoneService zoneService;
+    @Autowired
+    private ProductionAggregateService productionAggregateService;
+    @Autowired
+    private ZoneRecalculationService zoneRecalculationService;
+    @Autowired
+    private ZoneSimulationService zoneSimulationService;
+    @Autowired
+    private DecenaSnapshotCache decenaSnapshotCache;
+    @Autowired
+    private ProductionService productionService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String suffix;
+    private final List<String> companies = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        suffix = Long.toString(System.nanoTime(), 36).toUpperCase();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (String company : companies) {
+            jdbcTemplate.update("DELETE FROM trips WHERE company_name = ?", company);
+            jdbcTemplate.update("DELETE FROM production_aggregates WHERE company_name = ?", company);
+            jdbcTemplate.update("DELETE FROM productions WHERE entrepreneur_id IN (SELECT id FROM entrepreneurs WHERE nombre = ?)", company);
+            jdbcTemplate.update("DELETE FROM entrepreneurs WHERE nombre = ?", company);
+        }
+        jdbcTemplate.update("DELETE FROM routes WHERE origen LIKE ?", "%" + suffix);
+        jdbcTemplate.update("DELETE FROM zones WHERE nombre LIKE ?", "%" + suffix);
+    }
+
+    @Test
+    void deltaTotalsEqualFullRebuildAfterInsertUpdateAndDelete() {
+        Zone zone = zone("ZONA", 12.5);
+        route("ORIGEN", "DESTINO", zone);
+        String empresaA = company("EMPRESA A");
+        String empresaB = company("EMPRESA B");
+
+        // Tramo con zona, el mismo en sentido inverso y un tramo sin ruta (sin ganancia)
+        Trip t1 = tripService.save(trip(empresaA, LocalDate.of(2031, 7, 3), "ORIGEN", "DESTINO", "1000.50", "200", "$ 1.300"));
+        Trip t2 = tripService.save(trip(empresaA, LocalDate.of(2031, 7, 4), "OTRO", "DESTINO", "500", null, null));
+        Trip t3 = tripService.save(trip(empresaB, LocalDate.of(2031, 7, 15), "DESTINO", "ORIGEN", "700.10", "0.90", ""));
+        assertFalse(aggregates().isEmpty());
+        assertSameAsRebuild();
+
+        // Cambia de empresa e ingreso; otro pasa a la decena siguiente y a un tramo con zona
+        Trip edited = tripRepository.findById(t1.getId()).orElseThrow();
+        edited.setCompanyName(empresaB);
+        edited.setBranchRevenue(new BigDecimal("800"));
+        tripService.save(edited);
+        Trip moved = tripRepository.findById(t2.getId()).orElseThrow();
+        moved.setTravelDate(LocalDate.of(2031, 7, 25));
+        moved.setOrigin("ORIGEN " + suffix);
+        tripService.save(moved);
+        assertSameAsRebuild();
+
+        tripService.deleteById(t3.getId());
+        tripService.deleteById(t2.getId());
+        assertSameAsRebuild();
+    }
+
+    @Test
+    void zoneChangeOnlyTouchesKeysOnItsRoutesAndSkipsValidatedProductions() throws InterruptedException {
+        // Totales completos: las escrituras de viajes ya crean y actualizan las producciones
+        productionAggregateService.rebuildAll();
+        Zone cambiada = zone("ZONA CAMBIADA", 10);
+        Zone otra = zone("ZONA OTRA", 20);
+        route("NORTE", "SUR", cambiada);
+        route("ESTE", "OESTE", otra);
+        String validada = company("VALIDADA");
+        String pendiente = company("PENDIENTE");
+        String fuera = company("FUERA");
+        String decena = "1082031";
+        tripService.save(trip(validada, LocalDate.of(2031, 8, 2), "NORTE", "SUR", "1000", null, null));
+        tripService.save(trip(pendiente, LocalDate.of(2031, 8, 3), "SUR", "NORTE", "2000", null, null));
+        tripService.save(trip(fuera, LocalDate.of(2031, 8, 3), "ESTE", "OESTE", "3000", null, null));
+        jdbcTemplate.update("UPDATE productions SET validado = true WHERE decena = ? AND entrepreneur_id = " +
+            "(SELECT id FROM entrepreneurs WHERE nombre = ?)", decena, validada);
+        Map<String, String> aggregatesBefore = aggregatesWithUpdatedAt();
+        Map<String, Double> totalsBefore = productionTotals(decena);
+        assertEquals(Map.of(validada, 100.0, pendiente, 200.0, fuera, 600.0), totalsBefore);
+
+        assertEquals(Set.of(new ProductionAggregateService.Key(validada, decena), new ProductionAggregateService.Key(pendiente, decena)),
+            productionAggregateService.keysOnZoneRoutes(cambiada.getId()));
+
+        cambiada.setPorcentaje(25);
+        ZoneRecalculationJob job = zoneRecalculationService.submit(zoneService.save(cambiada), 10);
+        for (int i = 0; i < 300 && !job.isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(ZoneRecalculationJob.Status.COMPLETED, job.getStatus());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = (Map<String, Object>) job.toMap().get("result");
+        assertEquals(2, result.get("affectedAggregates"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> changes = (List<Map<String, Object>>) result.get("changes");
+        Map<String, String> actions = new TreeMap<>();
+        for (Map<String, Object> change : changes) {
+            actions.put((String) change.get("companyName"), (String) change.get("action"));
+        }
+        assertEquals(Map.of(validada, "VALIDATED_SKIPPED", pendiente, "UPDATED"), actions);
+
+        // La producción validada conserva su total aunque su total por empresa y decena cambie
+        assertEquals(Map.of(validada, 100.0, pendiente, 500.0, fuera, 600.0), productionTotals(decena));
+        Map<String, String> aggregatesAfter = aggregatesWithUpdatedAt();
+        String fueraKey = fuera + "@" + decena;
+        assertEquals(aggregatesBefore.get(fueraKey), aggregatesAfter.get(fueraKey));
+        assertTrue(aggregatesAfter.get(validada + "@" + decena).startsWith("1 / 1000 / 250 / "));
+        assertSameAsRebuild();
+    }
+
+    @Test
+    void simulationLeavesDatabaseUnchanged() {
+        productionAggregateService.rebuildAll();
+        Zone zone = zone("ZONA SIMULADA", 10);
+        route("ALTO", "BAJO", zone);
+        String empresa = company("SIMULADA");
+        String decena = "2092031";
+        tripService.save(trip(empresa, LocalDate.of(2031, 9, 12), "ALTO", "BAJO", "4000", null, null));
+        Map<String, String> aggregatesBefore = aggregatesWithUpdatedAt();
+        Map<String, Double> totalsBefore = productionTotals(decena);
+
+        Map<String, Object> result = zoneSimulationService.simulate(decena, Map.of(zone.getId(), 35.0));
+        assertEquals(1000.0, (double) result.get("difference"), 1e-9);
+
+        assertEquals(aggregatesBefore, aggregatesWithUpdatedAt());
+        assertEquals(totalsBefore, productionTotals(decena));
+        assertEquals(10.0, jdbcTemplate.queryForObject("SELECT porcentaje FROM zones WHERE id = ?", Double.class, zone.getId()));
+    }
+
+    @Test
+    void snapshotSeesTripWritesOnceCommitted() {
+        String empresa = company("SNAPSHOT");
+        String decena = "3102031";
+        Trip first = tripService.save(trip(empresa, LocalDate.of(2031, 10, 22), "PUERTO", "VALLE", "100", null, null));
+        int before = decenaSnapshotCache.get(decena).size();
+
+        tripService.save(trip(empresa, LocalDate.of(2031, 10, 23), "PUERTO", "VALLE", "200", null, null));
+        assertEquals(before + 1, decenaSnapshotCache.get(decena).size());
+
+        Trip edited = tripRepository.findById(first.getId()).orElseThrow();
+        edited.setBranchRevenue(new BigDecimal("150"));
+        tripService.save(edited);
+        DecenaSnapshot afterEdit = decenaSnapshotCache.get(decena);
+        int company = -1;
+        for (int i = 0; i < afterEdit.companyCount(); i++) {
+            if (empresa.equals(afterEdit.companyName(i))) {
+                company = i;
+            }
+        }
+        assertEquals(35_000L, afterEdit.revenueCentsByCompany()[company]);
+
+        tripService.deleteById(first.getId());
+        assertEquals(before, decenaSnapshotCache.get(decena).size());
+    }
+
+    @Test
+    void everyGenerationModeGivesTheSameGananciaAsTheAggregates() {
+        Zone norte = zone("ZONA NORTE", 12.5);
+        Zone este = zone("ZONA ESTE", 20);
+        Zone oeste = zone("ZONA OESTE", 30);
+        route("NORTE", "SUR", norte);
+        // El mismo tramo con una ruta en cada sentido: cada viaje toma la de su sentido
+        route("ESTE", "OESTE", este);
+        route("OESTE", "ESTE", oeste);
+        String empresaA = company("PARIDAD A");
+        String empresaB = company("PARIDAD B");
+        String empresaC = company("PARIDAD C");
+        String decena = "1042033";
+        // Ingreso manual con formato de moneda (queda 1.3), tramo inverso sin ruta propia, tramo sin ruta,
+        // ingreso manual no numérico y uno negativo
+        tripService.save(trip(empresaA, LocalDate.of(2033, 4, 2), "NORTE", "SUR", "1000.50", "200", "$ 1.300"));
+        tripService.save(trip(empresaA, LocalDate.of(2033, 4, 3), "SUR", "NORTE", "400", null, "250"));
+        tripService.save(trip(empresaB, LocalDate.of(2033, 4, 4), "ESTE", "OESTE", "1000", null, "abc"));
+        tripService.save(trip(empresaB, LocalDate.of(2033, 4, 5), "OESTE", "ESTE", "1000", "10", ""));
+        tripService.save(trip(empresaB, LocalDate.of(2033, 4, 6), "LEJOS", "OESTE", "500", null, null));
+        tripService.save(trip(empresaC, LocalDate.of(2033, 4, 9), "SUR", "NORTE", "100", null, "-50"));
+        Map<String, Double> expected = Map.of(empresaA, 231.475, empresaB, 503.0, empresaC, 6.25);
+
+        assertGanancia(expected, productionService.gananciaFromAggregates(decena, companies), "AGGREGATES");
+        ProductionGenerationMode configured = productionService.getGenerationMode();
+        try {
+            for (ProductionGenerationMode mode : ProductionGenerationMode.values()) {
+                ReflectionTestUtils.setField(productionService, "generationMode", mode);
+                assertGanancia(expected, productionService.gananciaForDecena(decena), mode.name());
+            }
+        } finally {
+            ReflectionTestUtils.setField(productionService, "generationMode", configured);
+        }
+        assertSameAsRebuild();
+        assertGanancia(expected, productionService.gananciaFromAggregates(decena, companies), "AGGREGATES tras recalcular");
+    }
+
+    // Solo las empresas de la prueba: la decena puede tener viajes de otras
+    private void assertGanancia(Map<String, Double> expected, Map<String, Double> actual, String mode) {
+        for (String company : companies) {
+            assertEquals(expected.get(company), actual.getOrDefault(company, 0.0), 1e-6, mode + " " + company);
+        }
+    }
+
+    // Totales de las empresas de la prueba, tal como están y tal como quedan al recalcular todo desde los viajes
+    private void assertSameAsRebuild() {
+        Map<String, String> incremental = aggregates();
+        productionAggregateService.rebuildAll();
+        assertEquals(aggregates(), incremental);
+    }
+
+    // Clave -> "viajes / ingresos / ganancia", sin ceros de escala para comparar valores numeric
+    private Map<String, String> aggregates() {
+        Map<String, String> result = new TreeMap<>();
+        for (String company : companies) {
+            jdbcTemplate.query("SELECT company_name, decena, trip_count, revenue, ganancia FROM production_aggregates WHERE company_name = ?",
+                rs -> {
+                    result.put(rs.getString(1) + "@" + rs.getString(2), rs.getLong(3) + " / "
+                        + rs.getBigDecimal(4).stripTrailingZeros().toPlainString() + " / "
+                        + rs.getBigDecimal(5).stripTrailingZeros().toPlainString());
+                }, company);
+        }
+        return result;
+    }
+
+    // Igual que aggregates(), con la fecha de la última escritura de cada fila
+    private Map<String, String> aggregatesWithUpdatedAt() {
+        Map<String, String> result = new TreeMap<>(aggregates());
+        for (String company : companies) {
+            jdbcTemplate.query("SELECT company_name, decena, updated_at FROM production_aggregates WHERE company_name = ?",
+                rs -> {
+                    result.merge(rs.getString(1) + "@" + rs.getString(2), rs.getTimestamp(3).toString(), (a, b) -> a + " / " + b);
+                }, company);
+        }
+        return result;
+    }
+
+    // Empresa -> total de su producción en la decena
+    private Map<String, Double> productionTotals(String decena) {
+        Map<String, Double> result = new TreeMap<>();
+        for (String company : new TreeSet<>(companies)) {
+            jdbcTemplate.query("SELECT e.nombre, p.total FROM productions p JOIN entrepreneurs e ON e.id = p.entrepreneur_id " +
+                "WHERE p.decena = ? AND e.nombre = ?", rs -> {
+                    result.put(rs.getString(1), rs.getDouble(2));
+                }, decena, company);
+        }
+        return result;
+    }
+
+    private Zone zone(String nombre, double porcentaje) {
+        Zone zone = new Zone();
+        zone.setNombre(nombre + " " + suffix);
+        zone.setPorcentaje(porcentaje);
+        return zoneService.save(zone);
+    }
+
+    private Route route(String origen, String destino, Zone zone) {
+        Route route = new Route();
+        route.setOrigen(origen + " " + suffix);
+        route.setDestino(destino + " " + suffix);
+        route.setZona(zone);
+        route.setEditable(true);
+        return routeService.save(route);
+    }
+
+    private String company(String name) {
+        String company = name + " " + suffix;
+        companies.add(company);
+        return company;
+    }
+
+    private Trip trip(String company, LocalDate travelDate, String origin, String destination,
+                      String branchRevenue, String roadRevenue, String manualIncome) {
+        Trip trip = new Trip();
+        trip.setTravelDate(travelDate);
+        trip.setDepartureTime(LocalTime.of(8, 0).plusMinutes(companies.size() * 7L + travelDate.getDayOfMonth()));
+        trip.setOrigin(origin + " " + suffix);
+        trip.setDestination(destination + " " + suffix);
+        trip.setRouteName(origin + " - " + destination);
+        trip.setServiceCode("TEST");
+        trip.setBusNumber(Long.toString(System.nanoTime() % 100_000));
+        trip.setCompanyName(company);
+        trip.setBranchRevenue(branchRevenue != null ? new BigDecimal(branchRevenue) : null);
+        trip.setRoadRevenue(roadRevenue != null ? new BigDecimal(roadRevenue) : null);
+        trip.setManualIncome(manualIncome);
+        return trip;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+}
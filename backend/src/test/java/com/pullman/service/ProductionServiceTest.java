@@ -0,0 +1,129 @@
+package com.pullman.service;
+
+import com.pullman.domain.Entrepreneur;
+import com.pullman.domain.Production;
+import com.pullman.domain.ProductionAggregate;
+import com.pullman.repository.EntrepreneurRepository;
+import com.pullman.repository.ProductionAggregateRepository;
+import com.pullman.repository.ProductionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Producciones que siguen a los totales de production_aggregates (escrituras de viajes, rutas y recálculo por zona)
+@ExtendWith(MockitoExtension.class)
+class ProductionServiceTest {
+
+    private static final String DECENA = "1072025";
+
+    @Mock
+    private ProductionRepository productionRepository;
+    @Mock
+    private EntrepreneurRepository entrepreneurRepository;
+    @Mock
+    private ProductionAggregateRepository productionAggregateRepository;
+
+    @InjectMocks
+    private ProductionService productionService;
+
+    @Test
+    void validatedProductionIsReportedButNotChanged() {
+        Entrepreneur validada = entrepreneur(1L, "VALIDADA");
+        Entrepreneur pendiente = entrepreneur(2L, "PENDIENTE");
+        Entrepreneur nueva = entrepreneur(3L, "NUEVA");
+        when(entrepreneurRepository.findByNombreIn(anyCollection())).thenReturn(List.of(validada, pendiente, nueva));
+        when(productionAggregateRepository.findByDecenaAndCompanyNames(eq(DECENA), anyCollection())).thenReturn(List.of(
+            aggregate("VALIDADA", "150"), aggregate("PENDIENTE", "80"), aggregate("NUEVA", "20")));
+        Production validated = production(validada, 100.0, true);
+        Production pending = production(pendiente, 50.0, false);
+        when(productionRepository.findByEntrepreneurAndDecena(1L, DECENA)).thenReturn(Optional.of(validated));
+        when(productionRepository.findByEntrepreneurAndDecena(2L, DECENA)).thenReturn(Optional.of(pending));
+        when(productionRepository.findByEntrepreneurAndDecena(3L, DECENA)).thenReturn(Optional.empty());
+
+        List<Map<String, Object>> changes = new ArrayList<>();
+        Map<String, Object> result = productionService.upsertFromAggregates(Set.of(
+            new ProductionAggregateService.Key("VALIDADA", DECENA),
+            new ProductionAggregateService.Key("PENDIENTE", DECENA),
+            new ProductionAggregateService.Key("NUEVA", DECENA)), changes);
+
+        assertEquals(1, result.get("created"));
+        assertEquals(1, result.get("updated"));
+        assertEquals(1, result.get("validatedSkipped"));
+        assertEquals(100.0, validated.getTotal());
+        assertEquals(80.0, pending.getTotal());
+
+        ArgumentCaptor<Production> saved = ArgumentCaptor.forClass(Production.class);
+        verify(productionRepository, times(2)).save(saved.capture());
+        // La pendiente y la nueva; la validada no se guarda
+        assertTrue(saved.getAllValues().contains(pending));
+        Production created = saved.getAllValues().stream().filter(p -> p != pending).findFirst().orElseThrow();
+        assertEquals(nueva, created.getEntrepreneur());
+        assertEquals(20.0, created.getTotal());
+
+        Map<String, String> actions = new HashMap<>();
+        for (Map<String, Object> change : changes) {
+            actions.put((String) change.get("companyName"), (String) change.get("action"));
+        }
+        assertEquals(Map.of("VALIDADA", "VALIDATED_SKIPPED", "PENDIENTE", "UPDATED", "NUEVA", "CREATED"), actions);
+    }
+
+    @Test
+    void companyWithoutAggregateGoesToZero() {
+        Entrepreneur sinViajes = entrepreneur(4L, "SIN VIAJES");
+        when(entrepreneurRepository.findByNombreIn(anyCollection())).thenReturn(List.of(sinViajes));
+        when(productionAggregateRepository.findByDecenaAndCompanyNames(eq(DECENA), anyCollection())).thenReturn(List.of());
+        Production pending = production(sinViajes, 35.5, false);
+        when(productionRepository.findByEntrepreneurAndDecena(4L, DECENA)).thenReturn(Optional.of(pending));
+
+        Map<String, Object> result = productionService.upsertFromAggregates(
+            Set.of(new ProductionAggregateService.Key("SIN VIAJES", DECENA)));
+
+        assertEquals(1, result.get("updated"));
+        assertEquals(0.0, pending.getTotal());
+        verify(productionRepository).save(any(Production.class));
+    }
+
+    private static Entrepreneur entrepreneur(Long id, String nombre) {
+        Entrepreneur entrepreneur = new Entrepreneur();
+        entrepreneur.setId(id);
+        entrepreneur.setNombre(nombre);
+        return entrepreneur;
+    }
+
+    private static ProductionAggregate aggregate(String companyName, String ganancia) {
+        ProductionAggregate aggregate = new ProductionAggregate();
+        aggregate.setCompanyName(companyName);
+        aggregate.setDecena(DECENA);
+        aggregate.setGanancia(new BigDecimal(ganancia));
+        return aggregate;
+    }
+
+    private static Production production(Entrepreneur entrepreneur, double total, boolean validado) {
+        Production production = new Production();
+        production.setEntrepreneur(entrepreneur);
+        production.setDecena(DECENA);
+        production.setTotal(total);
+        production.setValidado(validado);
+        return production;
+    }
+}
@@ -0,0 +1,157 @@
+package com.pullman.service;
+
+import com.pullman.domain.Trip;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// El lector por tramos en paralelo debe entregar los mismos viajes, en el mismo orden y con los mismos números de línea,
+// que el lector secuencial; con tramos de pocos bytes los bordes caen dentro de campos entre comillas
+class TripRowReadersTest {
+
+    private static final int ROWS = 300;
+
+    @TempDir
+    Path dir;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void chunkedMatchesStreamWithLf() throws IOException {
+        assertSameRows(write(csv("\n"), "lf.csv"), 2);
+    }
+
+    @Test
+    void chunkedMatchesStreamWithCrLf() throws IOException {
+        assertSameRows(write(csv("\r\n"), "crlf.csv"), 2);
+    }
+
+    @Test
+    void blankLinesAndMultiLineHeader() throws IOException {
+        String header = "\n\n\"fecha\nviaje\",hora,origen,destino,\"ruta\r\n(tramo)\",bus,razon social,recaudacion sucursal\n";
+        String csv = header + csv("\n").substring(csv("\n").indexOf('\n') + 1);
+        // Dos líneas vacías y un encabezado de tres líneas físicas
+        assertSameRows(write(csv, "header.csv"), 6);
+    }
+
+    @Test
+    void oversizedRecordIsAnErrorRowInBothReaders() throws IOException {
+        StringBuilder csv = new StringBuilder(csv("\n"));
+        csv.append("01/07/2025,08:00 AM,\"SIN CERRAR,DESTINO,RUTA,1,EMPRESA,100\n");
+        // Filas sin comillas: nada cierra la comilla y el registro pasa del máximo
+        int after = CsvTokenizer.MAX_RECORD_CHARS / 40 + 10;
+        for (int i = 0; i < after; i++) {
+            csv.append(String.format("%02d/07/2025,10:%02d AM,ORIGEN,DESTINO,RUTA,%d,EMPRESA,100\n", i % 28 + 1, i % 60, i));
+        }
+        Path file = write(csv.toString(), "oversized.csv");
+        List<String> stream = read(new StreamTripRowReader(Files.newInputStream(file), StandardCharsets.UTF_8, TripBindingPlan::compile));
+        List<String> chunked = read(ChunkedTripRowReader.open(file, StandardCharsets.UTF_8, pool, 4096, TripBindingPlan::compile));
+        assertEquals(stream, chunked);
+        assertEquals(ROWS + 1 + after, stream.size());
+        // La lectura sigue en la línea física siguiente a la del registro descartado
+        assertTrue(stream.get(ROWS).contains(" ERROR "), stream.get(ROWS));
+        assertEquals(lineOf(stream.get(ROWS)) + 1, lineOf(stream.get(ROWS + 1)));
+        assertFalse(stream.get(ROWS + 1).contains(" ERROR "), stream.get(ROWS + 1));
+
+        try (TripRowReader rows = new StreamTripRowReader(Files.newInputStream(file), StandardCharsets.UTF_8, TripBindingPlan::compile)) {
+            for (int i = 0; i <= ROWS; i++) {
+                assertTrue(rows.next());
+            }
+            assertThrows(IllegalArgumentException.class, rows::trip);
+        }
+    }
+
+    @Test
+    void configuredCharsetIsUsedByBothReaders() throws IOException {
+        Path file = dir.resolve("latin1.csv");
+        Files.writeString(file, "fecha,hora,origen,destino,bus\n01/07/2025,08:00 AM,CONCEPCIÓN,\"ÑUBLE\nSUR\",1\n",
+            StandardCharsets.ISO_8859_1);
+        List<String> stream = read(new StreamTripRowReader(Files.newInputStream(file), StandardCharsets.ISO_8859_1, TripBindingPlan::compile));
+        List<String> chunked = read(ChunkedTripRowReader.open(file, StandardCharsets.ISO_8859_1, pool, 7, TripBindingPlan::compile));
+        assertEquals(stream, chunked);
+        assertTrue(stream.get(0).contains("| CONCEPCIÓN | ÑUBLE\nSUR |"), stream.get(0));
+    }
+
+    private void assertSameRows(Path file, long firstDataLine) throws IOException {
+        List<String> stream = read(new StreamTripRowReader(Files.newInputStream(file), StandardCharsets.UTF_8, TripBindingPlan::compile));
+        assertEquals(ROWS, stream.size());
+        assertTrue(stream.get(0).startsWith(firstDataLine + " "), stream.get(0));
+        for (int chunkBytes : new int[] {7, 64, 1000, 1 << 20}) {
+            List<String> chunked = read(ChunkedTripRowReader.open(file, StandardCharsets.UTF_8, pool, chunkBytes, TripBindingPlan::compile));
+            assertEquals(stream, chunked, "parseChunkBytes " + chunkBytes);
+        }
+    }
+
+    // Una fila de cada cinco con un salto de línea dentro de la ruta, comillas escapadas y una comilla suelta en el origen
+    private static String csv(String newline) {
+        StringBuilder csv = new StringBuilder("fecha,hora,origen,destino,ruta,bus,razon social,recaudacion sucursal").append(newline);
+        for (int i = 0; i < ROWS; i++) {
+            csv.append(row(i, newline));
+        }
+        return csv.toString();
+    }
+
+    private static String row(int i, String newline) {
+        String route;
+        switch (i % 5) {
+            case 0: route = "\"RUTA " + i + newline + "POR LA COSTA\""; break;
+            case 1: route = "\"EL \"\"RAPIDO\"\" " + i + "\""; break;
+            case 2: route = "\"" + newline + newline + "\""; break;
+            default: route = "RUTA " + i;
+        }
+        String origin = i % 7 == 0 ? "PUERTO 5\" NORTE" : "ORIGEN " + (i % 3);
+        return String.format("%02d/07/2025,%d:%02d AM,%s,DESTINO %d,%s,%d,EMPRESA %d,%d%s",
+            i % 28 + 1, i % 12 + 1, i % 60, origin, i % 4, route, 100 + i, i % 6, 1000 + i, newline);
+    }
+
+    private static long lineOf(String row) {
+        return Long.parseLong(row.substring(0, row.indexOf(' ')));
+    }
+
+    private Path write(String csv, String name) throws IOException {
+        return Files.writeString(dir.resolve(name), csv, StandardCharsets.UTF_8);
+    }
+
+    // "línea fecha hora origen destino ruta bus empresa recaudación", "línea INVALID" o "línea ERROR mensaje"
+    private static List<String> read(TripRowReader rows) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (rows) {
+            while (rows.next()) {
+                Trip trip;
+                try {
+                    trip = rows.trip();
+                } catch (IllegalArgumentException e) {
+                    result.add(rows.lineNumber() + " ERROR " + e.getMessage());
+                    continue;
+                }
+                if (trip == null) {
+                    result.add(rows.lineNumber() + " INVALID");
+                    continue;
+                }
+                result.add(rows.lineNumber() + " " + String.format("%1$td/%1$tm/%1$tY", trip.getTravelDate()) + " " +
+                    trip.getDepartureTime() + " | " + trip.getOrigin() + " | " + trip.getDestination() + " | " +
+                    trip.getRouteName() + " | " + trip.getBusNumber() + " | " + trip.getCompanyName() + " | " +
+                    trip.getBranchRevenue());
+            }
+        }
+        return result;
+    }
+}
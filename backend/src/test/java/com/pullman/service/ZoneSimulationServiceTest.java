@@ -0,0 +1,92 @@
+package com.pullman.service;
+
+import com.pullman.domain.Zone;
+import com.pullman.repository.ZoneRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+// La simulación calcula sobre el snapshot de la decena sin guardar nada: ni zonas, ni producciones, ni snapshots
+@ExtendWith(MockitoExtension.class)
+class ZoneSimulationServiceTest {
+
+    private static final String DECENA = "1072025";
+
+    @Mock
+    private ZoneRepository zoneRepository;
+    @Mock
+    private DecenaSnapshotCache decenaSnapshotCache;
+
+    @InjectMocks
+    private ZoneSimulationService zoneSimulationService;
+
+    @Test
+    void simulatedPercentagesAreNotSaved() {
+        Zone norte = zone(10L, 10.0);
+        Zone sur = zone(20L, 20.0);
+        when(zoneRepository.findAll()).thenReturn(List.of(norte, sur));
+        when(decenaSnapshotCache.get(DECENA)).thenReturn(snapshot());
+
+        Map<String, Object> result = zoneSimulationService.simulate(DECENA, Map.of(10L, 15.0, 99L, 5.0));
+
+        assertEquals(140.0, result.get("totalCurrent"));
+        assertEquals(190.0, result.get("totalSimulated"));
+        assertEquals(50.0, result.get("difference"));
+        assertEquals(Set.of(99L), result.get("unknownZones"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> entrepreneurs = (List<Map<String, Object>>) result.get("entrepreneurs");
+        assertEquals("EMPRESA A", entrepreneurs.get(0).get("companyName"));
+        assertEquals(1500.0, entrepreneurs.get(0).get("revenue"));
+        assertEquals(100.0, entrepreneurs.get(0).get("currentTotal"));
+        assertEquals(150.0, entrepreneurs.get(0).get("simulatedTotal"));
+        assertEquals("EMPRESA B", entrepreneurs.get(1).get("companyName"));
+        assertEquals(0.0, entrepreneurs.get(1).get("difference"));
+
+        // Las zonas (entidades administradas en una transacción abierta) conservan su porcentaje
+        assertEquals(10.0, norte.getPorcentaje());
+        assertEquals(20.0, sur.getPorcentaje());
+        verify(zoneRepository).findAll();
+        verifyNoMoreInteractions(zoneRepository);
+        verify(decenaSnapshotCache).get(DECENA);
+        verifyNoMoreInteractions(decenaSnapshotCache);
+    }
+
+    @Test
+    void invalidInputReadsNothing() {
+        assertThrows(IllegalArgumentException.class, () -> zoneSimulationService.simulate("4072025", Map.of(10L, 15.0)));
+        assertThrows(IllegalArgumentException.class, () -> zoneSimulationService.simulate(DECENA, Map.of(10L, -1.0)));
+        verifyNoInteractions(zoneRepository, decenaSnapshotCache);
+    }
+
+    private static Zone zone(Long id, double porcentaje) {
+        Zone zone = new Zone();
+        zone.setId(id);
+        zone.setNombre("ZONA " + id);
+        zone.setPorcentaje(porcentaje);
+        return zone;
+    }
+
+    // Empresa A: $1.000 en la zona 10 y $500 en un tramo sin zona; empresa B: $200 en la zona 20
+    private static DecenaSnapshot snapshot() {
+        return new DecenaSnapshot(DECENA, LocalDate.of(2025, 7, 1), 0, 3,
+            new byte[] {0, 1, 2}, new short[] {480, 540, -1}, new int[] {0, 1, 2}, new int[] {0, 0, 1},
+            new int[] {1, DecenaSnapshot.NO_ZONE, 2}, new long[] {100_000, 50_000, 20_000},
+            new String[] {"NORTE", "OTRO", "SUR"}, new String[] {"CENTRO", "CENTRO", "CENTRO"},
+            new String[] {"EMPRESA A", "EMPRESA B"}, new String[] {"empresa a", "empresa b"},
+            new long[] {0, 10, 20}, new String[] {null, "ZONA 10", "ZONA 20"});
+    }
+}
@@ -36,6 +36,9 @@ DELETE FROM productions;
 -- Paso 5: BORRAR TODOS LOS VIAJES
 DELETE FROM trips;
 
+-- Los totales por empresa y decena se calculan desde los viajes
+DELETE FROM production_aggregates;
+
 -- Paso 6: Verificar que se borraron correctamente
 SELECT 
     'Viajes restantes' as tipo,
@@ -12,6 +12,9 @@ DELETE FROM productions;
 -- BORRAR TODOS LOS VIAJES  
 DELETE FROM trips;
 
+-- Los totales por empresa y decena se calculan desde los viajes
+DELETE FROM production_aggregates;
+
 -- Verificar que se borraron correctamente
 SELECT 'DESPUÉS DE LIMPIAR:' as estado;
 SELECT COUNT(*) as viajes_restantes FROM trips;
@@ -30,6 +30,9 @@ WHERE decena IN ('01/07', '02/07', '03/07', '04/07', '05/07', '06/07', '07/07',
 DELETE FROM trips 
 WHERE travel_date >= '2024-07-01' AND travel_date <= '2024-07-10';
 
+-- Los totales por empresa de esa decena (1.ª de julio de 2024) ya no tienen viajes
+DELETE FROM production_aggregates WHERE decena = '1072024';
+
 -- Paso 5: Verificar que se borraron correctamente
 SELECT 
     COUNT(*) as viajes_restantes_en_periodo
@@ -0,0 +1,36 @@
+-- ÍNDICE ÚNICO DE VIAJES (fecha, hora, origen, destino, bus)
+-- Lo usa la importación por COPY (INSERT ... ON CONFLICT). Hibernate lo crea al arrancar, pero no puede
+-- hacerlo si la base ya tiene viajes repetidos por esa clave: este script los deja en uno y crea el índice.
+-- ⚠️ ADVERTENCIA: borra los viajes repetidos; de cada clave se conserva el último guardado (id mayor),
+-- igual que en la importación, donde gana la última ocurrencia
+
+BEGIN;
+
+-- Sin escrituras de viajes mientras se limpia
+LOCK TABLE trips IN SHARE ROW EXCLUSIVE MODE;
+
+SELECT 'VIAJES REPETIDOS A BORRAR:' as estado;
+SELECT COUNT(*) as viajes_repetidos FROM trips t
+WHERE EXISTS (
+    SELECT 1 FROM trips newer
+    WHERE newer.travel_date = t.travel_date AND newer.departure_time = t.departure_time
+      AND newer.origin = t.origin AND newer.destination = t.destination
+      AND newer.bus_number = t.bus_number AND newer.id > t.id
+);
+
+DELETE FROM trips t
+USING trips newer
+WHERE newer.travel_date = t.travel_date AND newer.departure_time = t.departure_time
+  AND newer.origin = t.origin AND newer.destination = t.destination
+  AND newer.bus_number = t.bus_number AND newer.id > t.id;
+
+-- Los viajes sin alguno de los cinco campos no tienen clave y pueden repetirse
+CREATE UNIQUE INDEX IF NOT EXISTS ux_trips_unique_key
+    ON trips (travel_date, departure_time, origin, destination, bus_number);
+
+-- Los totales por empresa y decena incluían los viajes borrados: con la tabla vacía se recalculan al arrancar
+DELETE FROM production_aggregates;
+
+COMMIT;
+
+SELECT 'ÍNDICE ÚNICO CREADO - reinicia la aplicación para recalcular los totales por empresa y decena' as resultado;
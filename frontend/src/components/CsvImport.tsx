@@ -3,7 +3,7 @@ import { tripsApi } from '../services/api';
 import Modal from './Modal';
 
 interface CsvImportProps {
-  onImportSuccess?: (data: any[]) => void;
+  onImportSuccess?: (result: any) => void;
   onImportError?: (error: string) => void;
   onClose?: () => void;
 }
@@ -14,6 +14,7 @@ interface ImportStats {
   invalidLines: number;
   fileSize: number;
   fileName: string;
+  uploadToken?: string;
 }
 
 const CsvImport: React.FC<CsvImportProps> = ({ onImportSuccess, onImportError, onClose }) => {
@@ -29,12 +30,13 @@ const CsvImport: React.FC<CsvImportProps> = ({ onImportSuccess, onImportError, o
 
   const handleFileChange = (event: React.ChangeEvent<HTMLInputElement>) => {
     const selectedFile = event.target.files?.[0];
-    if (selectedFile && selectedFile.type === 'text/csv') {
+    const name = selectedFile?.name.toLowerCase() ?? '';
+    if (selectedFile && (selectedFile.type === 'text/csv' || name.endsWith('.csv') || name.endsWith('.xlsx'))) {
       setFile(selectedFile);
       setImportStats(null);
       setShowStats(false);
     } else {
-      alert('Por favor selecciona un archivo CSV válido.');
+      alert('Por favor selecciona un archivo CSV o XLSX válido.');
     }
   };
 
@@ -86,11 +88,17 @@ const CsvImport: React.FC<CsvImportProps> = ({ onImportSuccess, onImportError, o
 
     try {
       console.log('Iniciando importación de archivo:', file.name, 'Tamaño:', file.size);
-      const result = await tripsApi.importCsv(file);
+      // Si el archivo ya se verificó, se importa lo que quedó parseado en el servidor sin volver a subirlo
+      const committed = importStats?.uploadToken ? await tripsApi.commitCsvImport(importStats.uploadToken) : null;
+      const result = committed ?? await tripsApi.importCsv(file);
       setUploadProgress(100);
-      const importedData = result.importedTrips || [];
       const unconfigured = result.unconfiguredCities || [];
-      let message = `Importación exitosa: ${importedData.length} viajes importados.`;
+      let message = result.unchangedFile
+        ? 'El archivo ya había sido importado; no hay cambios.'
+        : `Importación exitosa: ${result.totalImported ?? 0} viajes importados (${result.inserted ?? 0} nuevos, ${result.updated ?? 0} actualizados, ${result.unchanged ?? 0} sin cambios).`;
+      if (result.skipped || result.errors) {
+        message += `\nOmitidas: ${result.skipped ?? 0} - Con error: ${result.errors ?? 0}`;
+      }
       if (importStats) {
         message += `\n\nEstadísticas del archivo:\n- Total de líneas: ${importStats.totalLines}\n- Líneas válidas: ${importStats.validLines}\n- Líneas inválidas: ${importStats.invalidLines}`;
       }
@@ -100,7 +108,7 @@ const CsvImport: React.FC<CsvImportProps> = ({ onImportSuccess, onImportError, o
       } else {
       alert(message);
       }
-      onImportSuccess?.(importedData);
+      onImportSuccess?.(result);
       setFile(null);
       setImportStats(null);
       setShowStats(false);
@@ -135,7 +143,7 @@ const CsvImport: React.FC<CsvImportProps> = ({ onImportSuccess, onImportError, o
         <input
           id="csv-file"
           type="file"
-          accept=".csv"
+          accept=".csv,.xlsx"
           onChange={handleFileChange}
           className="block w-full text-sm text-gray-500 file:mr-4 file:py-2 file:px-4 file:rounded-md file:border-0 file:text-sm file:font-semibold file:bg-blue-50 file:text-blue-700 hover:file:bg-blue-100 border border-gray-300 rounded-md"
           disabled={isUploading || isAnalyzing}
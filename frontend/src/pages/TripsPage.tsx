@@ -173,10 +173,11 @@ const TripsPage: React.FC = () => {
     ? 'La fecha "Hasta" debe ser mayor o igual que la fecha "Desde"'
     : '';
 
-  const handleImportSuccess = (importedTrips: Trip[]) => {
-    setTrips(importedTrips);
+  // La importación devuelve solo un resumen; la lista se vuelve a cargar desde el backend
+  const handleImportSuccess = (result: any) => {
     setShowImportModal(false);
-    alert(`Importación exitosa: ${importedTrips.length} viajes importados.`);
+    fetchTrips();
+    alert(`Importación exitosa: ${result.totalImported ?? 0} viajes importados.`);
   };
 
   const handleImportError = (errorMessage: string) => {
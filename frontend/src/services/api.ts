@@ -127,6 +127,25 @@ export const uploadCsvFile = async (file: File) => {
   return response.json();
 };
 
+// Importa un archivo ya verificado con el token de /trips/import-csv/stats, sin volver a subirlo.
+// Devuelve null si el token expiró (hay que subir el archivo de nuevo)
+export const commitCsvImport = async (token: string) => {
+  const response = await fetch(`${API_BASE_URL}/trips/import-csv/commit?token=${encodeURIComponent(token)}`, {
+    method: 'POST',
+    headers: getFileAuthHeaders(),
+  });
+
+  if (response.status === 404) {
+    return null;
+  }
+  if (!response.ok) {
+    const errorText = await response.text();
+    throw new Error(`Error ${response.status} - ${errorText}`);
+  }
+
+  return response.json();
+};
+
 // Funciones específicas para viajes
 export const tripsApi = {
   getAll: async () => {
@@ -166,6 +185,7 @@ export const tripsApi = {
   getRevenueByRoute: (date: string) => apiGet(`/trips/revenue/route/${date}`),
   getStats: () => apiGet('/trips/stats'),
   importCsv: uploadCsvFile,
+  commitCsvImport,
 };
 
 export const productionsApi = {